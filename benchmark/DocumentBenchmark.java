@@ -0,0 +1,105 @@
+// Latency of re-parsing a large Lox source file after single-character edits
+//
+// Usage: java -cp build/classes/java/main benchmark/DocumentBenchmark.java [file]
+//
+// Without a file, a source of about 50,000 lines is generated. Each edit types a character somewhere in the file and
+// deletes it again through an incrementally updated Document, which is compared against parsing the whole file.
+
+import com.khl.lox.Document;
+import com.khl.lox.Parser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+public class DocumentBenchmark {
+    private static final int WARMUP_EDITS = 2000;
+    private static final int EDITS = 2000;
+    private static final int LINE_EDITS = 200;
+    private static final int FULL_PARSES = 20;
+
+    public static void main(String[] args) throws IOException {
+        var source = args.length > 0 ? Files.readString(Path.of(args[0]), StandardCharsets.UTF_8) : generate(50_000);
+        var lines = source.lines().count();
+
+        var document = new Document(source);
+        var random = new Random(42);
+
+        for (var i = 0; i < WARMUP_EDITS; i++) {
+            edit(document, random, "x1 (;\n");
+        }
+
+        // Typing a newline moves every token after it to another line, so it is measured apart from other characters
+
+        report("edits within a line", measure(document, random, EDITS, "x1 (;"));
+        report("newlines", measure(document, random, LINE_EDITS, "\n"));
+
+        var best = Long.MAX_VALUE;
+        for (var i = 0; i < FULL_PARSES; i++) {
+            var start = System.nanoTime();
+            Parser.parse(source);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        System.out.printf("%d lines, full parse, best of %d: %.3f ms%n", lines, FULL_PARSES, best / 1e6);
+    }
+
+    private static long[] measure(Document document, Random random, int edits, String typed) {
+        var times = new long[edits];
+        for (var i = 0; i < edits; i++) {
+            times[i] = edit(document, random, typed);
+        }
+        Arrays.sort(times);
+        return times;
+    }
+
+    private static void report(String kind, long[] times) {
+        System.out.printf("%d %s: median %.3f ms, 90th percentile %.3f ms, 99th percentile %.3f ms%n",
+                times.length, kind, percentile(times, 50), percentile(times, 90), percentile(times, 99));
+    }
+
+    /**
+     * Types one of the given characters at a random offset and deletes it again, returning the average time of both.
+     */
+    private static long edit(Document document, Random random, String typed) {
+        var offset = random.nextInt(document.source().length() + 1);
+        var text = String.valueOf(typed.charAt(random.nextInt(typed.length())));
+
+        var start = System.nanoTime();
+        document.edit(offset, 0, text);
+        document.edit(offset, 1, "");
+        return (System.nanoTime() - start) / 2;
+    }
+
+    private static double percentile(long[] sorted, int percentile) {
+        return sorted[(sorted.length - 1) * percentile / 100] / 1e6;
+    }
+
+    private static String generate(int lines) {
+        var text = new StringBuilder();
+
+        // Every round adds 13 lines
+        for (var i = 0; i * 13 < lines; i++) {
+            text.append("// Helpers for record number ").append(i).append('\n')
+                    .append("class Record").append(i).append(" {\n")
+                    .append("  init(name, weight) { this.name = name; this.weight = weight * ")
+                    .append(i % 13).append(".5; }\n")
+                    .append("  describe() { return \"record \" + this.name; }\n")
+                    .append("}\n")
+                    .append("fun process").append(i).append("(items, limit) {\n")
+                    .append("  var total = 0;\n")
+                    .append("  for (var index = 0; index < limit and index < 4096; index = index + 1) {\n")
+                    .append("    if (items[index] != nil or false) { total = total + items[index]; }")
+                    .append(" else { print \"skip\"; }\n")
+                    .append("  }\n")
+                    .append("  while (total >= 1000000) total = total / 2;\n")
+                    .append("  return total;\n")
+                    .append("}\n");
+        }
+
+        return text.toString();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,98 @@
+// Line iteration throughput of readLines on a multi-gigabyte file, against reading the whole file with Files.readString
+//
+// Usage: java -cp build/classes/java/main benchmark/LinesBenchmark.java [file]
+//
+// Without a file, a log of about 3 GB is generated in the temporary directory and deleted afterwards. A Lox script
+// counts the lines and characters of the file through readLines and nextLine, and the same counts are then taken in
+// Java from the string returned by Files.readString, which has to hold the whole file in memory at once and cannot
+// read a file at all once its text takes 2 GB or more (1 GB for text beyond Latin-1).
+
+import com.khl.lox.Interpreter;
+import com.khl.lox.Parser;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class LinesBenchmark {
+    private static final int ROUNDS = 3;
+
+    private static final String SCRIPT = """
+            var lines = readLines("%s");
+            var count = 0;
+            var length = 0;
+            for (var line = nextLine(lines); line != nil; line = nextLine(lines)) {
+              count = count + 1;
+              length = length + len(line);
+            }
+            print count;
+            print length;
+            """;
+
+    public static void main(String[] args) throws IOException {
+        var generated = args.length == 0;
+        var file = generated ? generate(3L << 30) : Path.of(args[0]);
+
+        try {
+            var gigabytes = Files.size(file) / (1024.0 * 1024.0 * 1024.0);
+            var script = Parser.parse(SCRIPT.formatted(file.toString().replace("\\", "/")));
+
+            for (var i = 0; i < ROUNDS; i++) {
+                var output = new ByteArrayOutputStream();
+                var start = System.nanoTime();
+                new Interpreter(output).interpret(script);
+                var counts = output.toString().lines().mapToDouble(Double::parseDouble).toArray();
+                report("readLines", gigabytes, System.nanoTime() - start, (long) counts[0], (long) counts[1]);
+            }
+
+            for (var i = 0; i < ROUNDS; i++) {
+                var start = System.nanoTime();
+                String text;
+                try {
+                    text = Files.readString(file, StandardCharsets.UTF_8);
+                } catch (OutOfMemoryError | NegativeArraySizeException tooLarge) {
+                    System.out.printf("Files.readString: %s%n", tooLarge);
+                    break;
+                }
+
+                var count = 0L;
+                var length = 0L;
+                for (var line : (Iterable<String>) text.lines()::iterator) {
+                    count++;
+                    length += line.length();
+                }
+                report("Files.readString", gigabytes, System.nanoTime() - start, count, length);
+            }
+        } finally {
+            if (generated) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private static void report(String kind, double gigabytes, long nanos, long lines, long characters) {
+        var seconds = nanos / 1e9;
+        System.out.printf("%s: %d lines, %d characters in %.2f s (%.0f MB/s, %.2f million lines/s)%n", kind, lines,
+                characters, seconds, gigabytes * 1024 / seconds, lines / seconds / 1e6);
+    }
+
+    private static Path generate(long bytes) throws IOException {
+        var file = Files.createTempFile("lines", ".log");
+        var written = 0L;
+
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (var i = 0L; written < bytes; i++) {
+                var line = "2024-05-%02d 12:%02d:%02d INFO request %d from 10.0.%d.%d took %d ms — ok"
+                        .formatted(1 + i % 28, i / 60 % 60, i % 60, i, i / 256 % 256, i % 256, i % 997);
+                writer.write(line);
+                writer.write('\n');
+                written += line.length() + 3;
+            }
+        }
+
+        return file;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,62 @@
+// Scanner throughput on a multi-megabyte Lox source file
+//
+// Usage: java -cp build/classes/java/main benchmark/ScannerBenchmark.java [file]
+//
+// Without a file, a source of about 8 MB is generated from a mix of declarations, keywords, identifiers, numbers,
+// strings and comments.
+
+import com.khl.lox.Scanner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class ScannerBenchmark {
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) throws IOException {
+        var source = args.length > 0 ? Files.readString(Path.of(args[0]), StandardCharsets.UTF_8) : generate(8 << 20);
+        var megabytes = source.getBytes(StandardCharsets.UTF_8).length / (1024.0 * 1024.0);
+
+        var tokens = 0;
+        for (var i = 0; i < WARMUP_ROUNDS; i++) {
+            tokens = Scanner.scanTokens(source).size();
+        }
+
+        var best = Long.MAX_VALUE;
+        for (var i = 0; i < ROUNDS; i++) {
+            var start = System.nanoTime();
+            Scanner.scanTokens(source);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        System.out.printf("%.1f MB, %d tokens, best of %d: %.1f ms, %.1f MB/s%n",
+                megabytes, tokens, ROUNDS, best / 1e6, megabytes / (best / 1e9));
+    }
+
+    private static String generate(int size) {
+        var text = new StringBuilder(size + 256);
+
+        for (var i = 0; text.length() < size; i++) {
+            text.append("// Helpers for record number ").append(i).append('\n')
+                    .append("class Record").append(i % 97).append(" < Base {\n")
+                    .append("  init(name, weight) { this.name = name; this.weight = weight * ")
+                    .append(i % 13).append(".5; }\n")
+                    .append("  describe() { return \"record \" + this.name; }\n")
+                    .append("}\n")
+                    .append("fun process_").append(i % 1013).append("(items, limit) {\n")
+                    .append("  var total = 0;\n")
+                    .append("  for (var index = 0; index < limit and index < 4096; index = index + 1) {\n")
+                    .append("    if (items[index] != nil or false) { total = total + items[index]; }")
+                    .append(" else { print \"skip\"; }\n")
+                    .append("  }\n")
+                    .append("  while (total >= 1000000) total = total / 2;\n")
+                    .append("  return total;\n")
+                    .append("}\n");
+        }
+
+        return text.toString();
+    }
+}
\ No newline at end of file
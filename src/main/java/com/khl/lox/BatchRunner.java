@@ -0,0 +1,174 @@
+package com.khl.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Executes many Lox scripts inside a single process across a pool of workers.
+ *
+ * <p>
+ * Every script runs in its own {@link com.khl.lox.Session} with captured output, so scripts cannot observe each
+ * other's global state. Once all scripts have finished, a summary report containing the exit status and running time
+ * of each script is written out.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+class BatchRunner {
+    /**
+     * The outcome of running a single script.
+     *
+     * @param script the script path
+     * @param status the exit status, with the same meaning as the exit status of {@code jlox <script>}
+     * @param nanos  the time spent reading and executing the script
+     * @param stdout the captured standard output
+     * @param stderr the captured standard error
+     */
+    record Outcome(Path script, int status, long nanos, byte[] stdout, byte[] stderr) {
+        // This is a data class
+    }
+
+    BatchRunner(int jobs, Path outputDirectory, Limits limits) {
+        this.jobs = jobs;
+        this.outputDirectory = outputDirectory;
+        this.limits = limits;
+    }
+
+    /**
+     * Collects the scripts to run.
+     *
+     * @param source either a directory, in which case every {@code .lox} file beneath it is collected, or a list file
+     *               containing one script path per line (relative paths are resolved against the list file)
+     * @return the script paths
+     * @throws IOException if the directory or list file cannot be read
+     */
+    static List<Path> collectScripts(Path source) throws IOException {
+        if (Files.isDirectory(source)) {
+            try (Stream<Path> paths = Files.walk(source)) {
+                return paths.filter(path -> path.toString().endsWith(".lox"))
+                        .filter(Files::isRegularFile)
+                        .sorted()
+                        .toList();
+            }
+        }
+
+        var base = source.toAbsolutePath().getParent();
+        var scripts = new ArrayList<Path>();
+
+        for (var line : Files.readAllLines(source, StandardCharsets.UTF_8)) {
+            var entry = line.strip();
+            if (!entry.isEmpty() && !entry.startsWith("#")) {
+                scripts.add(base.resolve(entry));
+            }
+        }
+
+        return scripts;
+    }
+
+    /**
+     * Runs every script and writes a summary report.
+     *
+     * @param scripts the scripts to run
+     * @param report  the stream to write the summary report to
+     * @return the highest exit status among all scripts
+     * @throws IOException if the captured output of a script cannot be saved
+     */
+    int run(List<Path> scripts, PrintStream report) throws IOException {
+        var start = System.nanoTime();
+        var outcomes = execute(scripts);
+        var elapsed = System.nanoTime() - start;
+
+        var status = Session.EXIT_OK;
+        var failed = 0;
+
+        for (var i = 0; i < outcomes.size(); i++) {
+            var outcome = outcomes.get(i);
+            if (outputDirectory != null) {
+                save(i, outcome);
+            }
+
+            report.printf("%d\t%.3f ms\t%s%n", outcome.status(), outcome.nanos() / 1e6, outcome.script());
+
+            if (outcome.status() != Session.EXIT_OK) {
+                failed++;
+            }
+            status = Math.max(status, outcome.status());
+        }
+
+        report.printf("%d scripts, %d failed, %d jobs, %.3f ms total%n",
+                outcomes.size(), failed, jobs, elapsed / 1e6);
+        return status;
+    }
+
+    private final int jobs;
+    private final Path outputDirectory;
+    private final Limits limits;
+
+    private List<Outcome> execute(List<Path> scripts) {
+        var executor = Executors.newFixedThreadPool(jobs);
+
+        try {
+            var futures = new ArrayList<Future<Outcome>>(scripts.size());
+            for (var script : scripts) {
+                futures.add(executor.submit(() -> runScript(script, limits)));
+            }
+
+            var outcomes = new ArrayList<Outcome>(scripts.size());
+            for (var future : futures) {
+                try {
+                    outcomes.add(future.get());
+                } catch (ExecutionException executionException) {
+                    throw new IllegalStateException(executionException.getCause());
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(interruptedException);
+                }
+            }
+            return outcomes;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Outcome runScript(Path script, Limits limits) {
+        var stdout = new ByteArrayOutputStream();
+        var stderr = new ByteArrayOutputStream();
+        var start = System.nanoTime();
+
+        int status;
+        try (var err = new PrintStream(stderr, false, StandardCharsets.UTF_8)) {
+            try {
+                var source = Files.readString(script, StandardCharsets.UTF_8);
+                var out = new Output(stdout, Output.Policy.FULL, false);
+                var directory = script.toAbsolutePath().getParent();
+                status = new Session(out, err, false, false, false, limits).run(source, directory);
+            } catch (IOException ioException) {
+                err.printf("Could not read '%s': %s%n", script, ioException.getMessage());
+                status = Session.EXIT_IO_ERROR;
+            } catch (StackOverflowError stackOverflowError) {
+                err.println("Stack overflow.");
+                status = Session.EXIT_RUNTIME_ERROR;
+            }
+        }
+
+        return new Outcome(script, status, System.nanoTime() - start, stdout.toByteArray(), stderr.toByteArray());
+    }
+
+    private void save(int index, Outcome outcome) throws IOException {
+        var name = "%04d-%s".formatted(index, outcome.script().getFileName());
+
+        Files.createDirectories(outputDirectory);
+        Files.write(outputDirectory.resolve(name + ".out"), outcome.stdout());
+        Files.write(outputDirectory.resolve(name + ".err"), outcome.stderr());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,89 @@
+package com.khl.lox;
+
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The resources used so far by a single execution of a Lox script, shared by every interpreter forked from the one
+ * running the script.
+ *
+ * <p>
+ * Interpreters do not report every step as it happens. Instead, each of them counts down a slice of steps locally and
+ * only charges the budget once the slice is used up, so that a safepoint normally costs a single decrement.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+final class Budget {
+    /**
+     * The number of steps an interpreter takes between charges, which bounds how far a limit can be overrun.
+     */
+    static final int SLICE = 1024;
+
+    Budget(Limits limits) {
+        this.limits = limits;
+        this.start = System.nanoTime();
+        this.nanos = limits.millis() >= Long.MAX_VALUE / 1_000_000 ? Long.MAX_VALUE : limits.millis() * 1_000_000;
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread so far, or zero if the JVM cannot tell.
+     *
+     * @return the number of bytes allocated
+     */
+    static long allocatedBytes() {
+        return Math.max(0, Allocations.THREADS.getCurrentThreadAllocatedBytes());
+    }
+
+    Limits limits() {
+        return limits;
+    }
+
+    /**
+     * Returns the number of steps in the next slice of an interpreter.
+     *
+     * @return the slice size
+     */
+    int slice() {
+        return (int) Math.min(SLICE, limits.steps());
+    }
+
+    /**
+     * Charges the budget for a used up slice of steps and the bytes allocated along the way, and checks that the
+     * execution is still within its limits.
+     *
+     * @param token     the location of the safepoint
+     * @param steps     the number of steps taken
+     * @param allocated the number of bytes allocated
+     * @throws LimitError if a limit was exceeded or the thread was interrupted
+     */
+    void charge(Token token, long steps, long allocated) {
+        if (this.steps.addAndGet(steps) > limits.steps()) {
+            throw new LimitError(token, "Step limit of %d exceeded".formatted(limits.steps()));
+        }
+        if (nanos != Long.MAX_VALUE && System.nanoTime() - start > nanos) {
+            throw new LimitError(token, "Time limit of %d ms exceeded".formatted(limits.millis()));
+        }
+        if (allocated != 0 && bytes.addAndGet(allocated) > limits.bytes()) {
+            throw new LimitError(token, "Memory limit of %d bytes exceeded".formatted(limits.bytes()));
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new LimitError(token, "Execution cancelled");
+        }
+    }
+
+    private final Limits limits;
+    private final long start;
+    private final long nanos;
+    private final AtomicLong steps = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * Holds the thread management bean, which is only loaded once a memory limit is in place.
+     */
+    private static final class Allocations {
+        static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    }
+}
\ No newline at end of file
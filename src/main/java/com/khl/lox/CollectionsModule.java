@@ -0,0 +1,59 @@
+package com.khl.lox;
+
+/**
+ * Native functions for working with lists and maps.
+ *
+ * @author Kevin Lee
+ */
+final class CollectionsModule {
+    @LoxNative(pure = true)
+    static double len(Object value) {
+        if (value instanceof LoxList list) {
+            return list.size();
+        }
+        if (value instanceof LoxMap map) {
+            return map.size();
+        }
+        if (value instanceof String string) {
+            return string.length();
+        }
+        throw new NativeError("Expected a list, map or string as argument 1 to 'len'");
+    }
+
+    @LoxNative
+    static void append(LoxList list, Object value) {
+        list.add(value);
+    }
+
+    @LoxNative
+    static Object pop(LoxList list) {
+        if (list.size() == 0) {
+            throw new NativeError("Can't pop from an empty list");
+        }
+        return list.removeLast();
+    }
+
+    @LoxNative
+    static LoxMap map() {
+        return new LoxMap();
+    }
+
+    @LoxNative
+    static LoxList keys(LoxMap map) {
+        return map.keys();
+    }
+
+    @LoxNative
+    static boolean has(LoxMap map, Object key) {
+        return map.has(key);
+    }
+
+    @LoxNative
+    static Object remove(LoxMap map, Object key) {
+        return map.remove(key);
+    }
+
+    private CollectionsModule() {
+        // This is a utility class
+    }
+}
\ No newline at end of file
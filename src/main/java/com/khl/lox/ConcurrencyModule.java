@@ -0,0 +1,67 @@
+package com.khl.lox;
+
+/**
+ * Native functions for running Lox functions concurrently on virtual threads.
+ *
+ * <p>
+ * Tasks share globals and captured variables with the code that spawned them, and the interpreter does not lock
+ * either. Only the following orderings are guaranteed:
+ * </p>
+ *
+ * <ul>
+ *     <li>Everything written before {@code spawn(fn)} is visible to {@code fn}.</li>
+ *     <li>Everything a task wrote is visible after {@code await} on that task returns.</li>
+ *     <li>Everything written before {@code send(channel, value)} is visible after the {@code receive} that returns the
+ *     value.</li>
+ * </ul>
+ *
+ * <p>
+ * Each of these is a happens-before edge and nothing more. Any other concurrent access where at least one side writes
+ * is a race, about which nothing is guaranteed: a reader may see a stale value, a list, map or instance that another
+ * task is still changing may be seen partly changed, and read-modify-write sequences such as
+ * {@code count = count + 1} may lose updates.
+ * </p>
+ *
+ * <p>
+ * An error that ended a task is raised by every {@code await} on it as a new error with the same message, reported
+ * at that {@code await}, so that tasks awaited more than once never share the traceback of one error.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+final class ConcurrencyModule {
+    @LoxNative
+    static LoxTask spawn(Interpreter interpreter, LoxCallable function) {
+        if (function.arity() != 0) {
+            throw new NativeError("Expected a function without parameters as argument 1 to 'spawn'");
+        }
+        return LoxTask.start(interpreter, LoxInvocable.adapt(function));
+    }
+
+    @LoxNative
+    static Object await(LoxTask task) {
+        return task.await();
+    }
+
+    @LoxNative
+    static LoxChannel channel(int capacity) {
+        if (capacity < 0) {
+            throw new NativeError("Expected a non-negative capacity as argument 1 to 'channel'");
+        }
+        return new LoxChannel(capacity);
+    }
+
+    @LoxNative
+    static void send(LoxChannel channel, Object value) {
+        channel.send(value);
+    }
+
+    @LoxNative
+    static Object receive(LoxChannel channel) {
+        return channel.receive();
+    }
+
+    private ConcurrencyModule() {
+        // This is a utility class
+    }
+}
\ No newline at end of file
@@ -0,0 +1,22 @@
+package com.khl.lox;
+
+/**
+ * Native functions that are always available.
+ *
+ * @author Kevin Lee
+ */
+final class CoreModule {
+    @LoxNative
+    static double clock() {
+        return (double) System.currentTimeMillis() / 1000.0;
+    }
+
+    @LoxNative
+    static LoxInvocable memoize(Interpreter interpreter, LoxCallable function) {
+        return interpreter.memoizer().memoize(LoxInvocable.adapt(function));
+    }
+
+    private CoreModule() {
+        // This is a utility class
+    }
+}
\ No newline at end of file
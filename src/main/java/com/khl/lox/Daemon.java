@@ -0,0 +1,369 @@
+package com.khl.lox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.Executors;
+
+/**
+ * A long-lived Lox interpreter process that executes scripts on behalf of clients.
+ *
+ * <p>
+ * The daemon listens on a Unix domain socket (or a loopback TCP port) and runs every request in a fresh
+ * {@link com.khl.lox.Session} on its own virtual thread, so a warmed-up JVM is shared by all clients while each script
+ * still sees isolated global state. Every script is subject to the same {@link com.khl.lox.Limits}.
+ * </p>
+ *
+ * <p>
+ * The protocol is line-oriented so that it can be spoken by a shell client. A request is a single line, either
+ * {@code RUN <path>} to execute a script file or {@code EVAL <n>} followed by {@code n} bytes of UTF-8 source code. It
+ * may be preceded by {@code CWD <directory>} with the absolute current directory of the client, which relative paths
+ * in the request and the files that the script accesses are resolved against, so that a script sees the same files
+ * as when it is run directly; without it, they are resolved against the current directory of the daemon. The
+ * response is a sequence of lines: {@code 1 <text>} for standard output, {@code 2 <text>} for standard error, and a
+ * final {@code x <status>} carrying the exit status of the script.
+ * </p>
+ *
+ * <p>
+ * Scripts run with every permission of the user running the daemon, so anyone who can connect to the daemon can act
+ * as that user, and only that user may connect. The socket is created inside a directory that only the user can
+ * enter, {@code jlox-<user>} in the temporary directory, and the socket itself is only readable and writable by the
+ * user. A socket given with {@code --socket} is restricted the same way, but its directory is left as it is, so it
+ * should be private as well. Any local user can connect to a TCP port, so a TCP client first has to send
+ * {@code TOKEN <token>} with a random token that the daemon writes to {@code port-<n>.token} in the private
+ * directory, readable only by the user; a connection without the right token is refused before anything is run.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+class Daemon {
+    /**
+     * Returns the default socket path, which can be overridden with the {@code JLOX_SOCKET} environment variable.
+     *
+     * @return the default socket path
+     */
+    static Path defaultSocket() {
+        var socket = System.getenv("JLOX_SOCKET");
+        if (socket != null && !socket.isEmpty()) {
+            return Paths.get(socket);
+        }
+        return DIRECTORY.resolve("daemon.sock");
+    }
+
+    /**
+     * Creates a daemon listening on a Unix domain socket.
+     *
+     * @param socket the socket path
+     * @return the daemon
+     */
+    static Daemon unix(Path socket) {
+        return new Daemon(UnixDomainSocketAddress.of(socket), StandardProtocolFamily.UNIX);
+    }
+
+    /**
+     * Creates a daemon listening on a loopback TCP port.
+     *
+     * @param port the port number
+     * @return the daemon
+     */
+    static Daemon tcp(int port) {
+        return new Daemon(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), StandardProtocolFamily.INET);
+    }
+
+    /**
+     * Accepts and serves clients until the process is terminated.
+     *
+     * @param limits the limits that every script is subject to
+     * @throws IOException if the socket cannot be bound
+     */
+    void serve(Limits limits) throws IOException {
+        if (address instanceof UnixDomainSocketAddress unixAddress
+                && DIRECTORY.equals(unixAddress.getPath().toAbsolutePath().getParent())) {
+            createPrivateDirectory();
+        }
+
+        // The JVM does not track allocations of virtual threads, so scripts with a memory limit need platform threads
+
+        var threads = limits.isMemoryLimited() ? Thread.ofPlatform().factory() : Thread.ofVirtual().factory();
+
+        try (var server = ServerSocketChannel.open(family);
+             var executor = Executors.newThreadPerTaskExecutor(threads)) {
+            String token = null;
+            if (address instanceof UnixDomainSocketAddress unixAddress) {
+                var socket = unixAddress.getPath();
+                Files.deleteIfExists(socket);
+                deleteOnExit(socket);
+                server.bind(address);
+                // The socket is created with the permissions of the umask, but nobody can reach it through the private
+                // directory before it is restricted
+                if (IS_POSIX) {
+                    Files.setPosixFilePermissions(socket, PRIVATE_FILE);
+                }
+            } else {
+                server.bind(address);
+                var port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+                token = writeToken(DIRECTORY.resolve("port-%d.token".formatted(port)));
+            }
+            System.err.printf("jlox daemon listening on %s%n", server.getLocalAddress());
+
+            while (true) {
+                var client = server.accept();
+                var expected = token;
+                executor.submit(() -> serve(client, expected, limits));
+            }
+        }
+    }
+
+    private static final int MAX_REQUEST_LINE = 64 * 1024;
+    private static final int TOKEN_BYTES = 32;
+
+    private static final Path DIRECTORY = Paths.get(System.getProperty("java.io.tmpdir"),
+            "jlox-%s".formatted(System.getProperty("user.name"))).toAbsolutePath();
+    private static final boolean IS_POSIX = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+    private static final Set<PosixFilePermission> PRIVATE_DIRECTORY = PosixFilePermissions.fromString("rwx------");
+    private static final Set<PosixFilePermission> PRIVATE_FILE = PosixFilePermissions.fromString("rw-------");
+
+    private final SocketAddress address;
+    private final StandardProtocolFamily family;
+
+    private Daemon(SocketAddress address, StandardProtocolFamily family) {
+        this.address = address;
+        this.family = family;
+    }
+
+    /**
+     * Creates the directory of the default socket and of tokens, or checks that an existing one is still private.
+     */
+    private static void createPrivateDirectory() throws IOException {
+        if (!IS_POSIX) {
+            Files.createDirectories(DIRECTORY);
+            return;
+        }
+
+        try {
+            Files.createDirectory(DIRECTORY, PosixFilePermissions.asFileAttribute(PRIVATE_DIRECTORY));
+        } catch (FileAlreadyExistsException ignored) {
+            // Left behind by an earlier daemon, or planted by another user, which is checked below
+        }
+
+        var attributes = Files.readAttributes(DIRECTORY, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (!attributes.isDirectory() || !attributes.owner().getName().equals(System.getProperty("user.name"))
+                || !attributes.permissions().equals(PRIVATE_DIRECTORY)) {
+            throw new IOException("'%s' is not a directory that only %s can access"
+                    .formatted(DIRECTORY, System.getProperty("user.name")));
+        }
+    }
+
+    /**
+     * Writes a new random token to a file that only the user can read.
+     */
+    private static String writeToken(Path file) throws IOException {
+        createPrivateDirectory();
+
+        var bytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(bytes);
+        var token = HexFormat.of().formatHex(bytes);
+
+        Files.deleteIfExists(file);
+        deleteOnExit(file);
+        if (IS_POSIX) {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PRIVATE_FILE));
+        }
+        Files.writeString(file, token + "\n", StandardCharsets.UTF_8);
+        System.err.printf("jlox daemon token written to %s%n", file);
+        return token;
+    }
+
+    private static void deleteOnExit(Path file) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+                // The daemon is being torn down anyway
+            }
+        }));
+    }
+
+    private static void serve(SocketChannel client, String token, Limits limits) {
+        try (client;
+             var input = new BufferedInputStream(Channels.newInputStream(client));
+             var output = new BufferedOutputStream(Channels.newOutputStream(client))) {
+            var response = new Response(output);
+
+            int status;
+            // Program output is flushed line by line, so that clients see it as it is printed
+            try (var stdout = response.channel('1');
+                 var stderr = new PrintStream(response.channel('2'), true, StandardCharsets.UTF_8)) {
+                status = authenticate(input, token, stderr)
+                        ? execute(input, new Output(stdout, Output.Policy.LINE, false), stderr, limits)
+                        : Session.EXIT_USAGE;
+            }
+
+            response.finish(status);
+        } catch (IOException ignored) {
+            // The client went away, there is nobody left to report to
+        }
+    }
+
+    /**
+     * Reads the token that a client has to send first when a token is expected.
+     */
+    private static boolean authenticate(InputStream input, String token, PrintStream stderr) throws IOException {
+        if (token == null) {
+            return true;
+        }
+
+        var request = readLine(input);
+        // Comparing in constant time does not tell a client how much of its token was right
+        if (request.startsWith("TOKEN ") && MessageDigest.isEqual(request.substring(6).getBytes(StandardCharsets.UTF_8),
+                token.getBytes(StandardCharsets.UTF_8))) {
+            return true;
+        }
+        stderr.println("Invalid token");
+        return false;
+    }
+
+    private static int execute(InputStream input, Output stdout, PrintStream stderr, Limits limits)
+            throws IOException {
+        var request = readLine(input);
+
+        var workingDirectory = Paths.get("").toAbsolutePath();
+        if (request.startsWith("CWD ")) {
+            var client = resolve(workingDirectory, request.substring(4));
+            if (client == null || !Paths.get(request.substring(4)).isAbsolute()) {
+                stderr.printf("Invalid working directory '%s'%n", request.substring(4));
+                return Session.EXIT_USAGE;
+            }
+            workingDirectory = client;
+            request = readLine(input);
+        }
+
+        String source;
+        var directory = workingDirectory;
+        if (request.startsWith("RUN ")) {
+            var path = resolve(workingDirectory, request.substring(4));
+            if (path == null) {
+                stderr.printf("Invalid path '%s'%n", request.substring(4));
+                return Session.EXIT_USAGE;
+            }
+            directory = path.getParent();
+            try {
+                source = Files.readString(path, StandardCharsets.UTF_8);
+            } catch (IOException ioException) {
+                stderr.printf("Could not read '%s': %s%n", path, ioException.getMessage());
+                return Session.EXIT_IO_ERROR;
+            }
+        } else if (request.startsWith("EVAL ") && request.substring(5).matches("\\d{1,9}")) {
+            var length = Integer.parseInt(request.substring(5));
+            source = new String(input.readNBytes(length), StandardCharsets.UTF_8);
+        } else {
+            stderr.printf("Unknown request '%s'%n", request);
+            return Session.EXIT_USAGE;
+        }
+
+        try {
+            return new Session(stdout, stderr, false, false, false, limits, workingDirectory).run(source, directory);
+        } catch (StackOverflowError stackOverflowError) {
+            stderr.println("Stack overflow.");
+            return Session.EXIT_RUNTIME_ERROR;
+        }
+    }
+
+    /**
+     * Resolves a path sent by a client, or returns {@code null} if it is not valid.
+     */
+    private static Path resolve(Path directory, String path) {
+        try {
+            return directory.resolve(path);
+        } catch (InvalidPathException invalidPathException) {
+            return null;
+        }
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+        var line = new ByteArrayOutputStream();
+
+        for (var ch = input.read(); ch != -1 && ch != '\n'; ch = input.read()) {
+            if (line.size() >= MAX_REQUEST_LINE) {
+                throw new IOException("Request line too long");
+            }
+            line.write(ch);
+        }
+
+        return line.toString(StandardCharsets.UTF_8).strip();
+    }
+
+    /**
+     * Multiplexes the output channels of a request onto the client connection, one tagged line at a time.
+     */
+    private static class Response {
+        Response(OutputStream output) {
+            this.output = output;
+        }
+
+        OutputStream channel(char tag) {
+            return new OutputStream() {
+                private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+                @Override
+                public void write(int b) throws IOException {
+                    if (b == '\n') {
+                        send(tag, line);
+                    } else {
+                        line.write(b);
+                    }
+                }
+
+                @Override
+                public void close() throws IOException {
+                    if (line.size() > 0) {
+                        send(tag, line);
+                    }
+                }
+            };
+        }
+
+        synchronized void finish(int status) throws IOException {
+            output.write("x %d\n".formatted(status).getBytes(StandardCharsets.UTF_8));
+            output.flush();
+        }
+
+        private final OutputStream output;
+
+        private synchronized void send(char tag, ByteArrayOutputStream line) throws IOException {
+            output.write(tag);
+            output.write(' ');
+            line.writeTo(output);
+            output.write('\n');
+            output.flush();
+            line.reset();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,515 @@
+package com.khl.lox;
+
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Lox source code that is being edited, such as a file open in an editor or the input of the REPL, whose parser
+ * results are kept up to date as it changes.
+ *
+ * <p>
+ * The source is split into top-level declarations. After an edit, scanning starts again at the declaration that the
+ * edit falls into and stops as soon as it reaches the start of a declaration after the edit, since the rest of the
+ * source scans the same as before. Parsing likewise starts at that declaration and stops at the start of the first
+ * declaration that it has not changed, and only the new declarations are resolved. Everything else, including the
+ * AST nodes of unchanged declarations, is reused.
+ * </p>
+ *
+ * <p>
+ * Tokens carry their line numbers, so an edit that adds or removes lines changes every token after it. The following
+ * declarations are not scanned again in that case, but they are parsed again to get AST nodes with the right lines.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+public final class Document {
+    /**
+     * Creates a document, resolving imported modules against the current directory.
+     *
+     * @param source the source code
+     */
+    public Document(String source) {
+        this(source, Path.of("").toAbsolutePath());
+    }
+
+    /**
+     * Creates a document.
+     *
+     * @param source    the source code
+     * @param directory the directory of the source file, which imported modules are resolved against
+     */
+    public Document(String source, Path directory) {
+        this.directory = directory;
+        this.source = "";
+        this.tokens.add(new Token(TokenType.EOF, "", null, 1));
+        this.offsets = new int[] {0};
+        edit(0, 0, source);
+    }
+
+    /**
+     * Returns the current source code.
+     *
+     * @return the source code
+     */
+    public String source() {
+        return source;
+    }
+
+    /**
+     * Returns the parser results for the current source code.
+     *
+     * @return the parser results
+     */
+    public Parser.Result result() {
+        return result;
+    }
+
+    /**
+     * Replaces part of the source code.
+     *
+     * @param offset the offset of the replaced text
+     * @param length the length of the replaced text
+     * @param text   the text to replace it with
+     * @return the parser results for the new source code
+     * @throws IndexOutOfBoundsException if the replaced text is not within the source code
+     */
+    public Parser.Result edit(int offset, int length, String text) {
+        Objects.checkFromIndexSize(offset, length, source.length());
+
+        var end = offset + length;
+        var delta = text.length() - length;
+        var lineDelta = countLines(text, 0, text.length()) - countLines(source, offset, end);
+        var edited = new StringBuilder(source.length() + delta)
+                .append(source, 0, offset)
+                .append(text)
+                .append(source, end, source.length())
+                .toString();
+
+        // The last token before the edit may be extended by it, and the declaration that ends right before that
+        // token has looked at it to decide where to end, so both have to be parsed again
+
+        var before = lastTokenBefore(offset);
+        var first = 0;
+        var firstToken = 0;
+        while (first < segments.size() && firstToken + segments.get(first).length <= before) {
+            firstToken += segments.get(first++).length;
+        }
+        if (first > 0 && firstToken == before) {
+            firstToken -= segments.get(--first).length;
+        }
+
+        // Scanning can stop at the start of any declaration after the edit
+
+        var stops = new int[segments.size() - first];
+        var stopTokens = new int[stops.length];
+        var stopCount = 0;
+        for (int i = first, index = firstToken; i < segments.size(); index += segments.get(i++).length) {
+            if (offsets[index] >= end) {
+                stops[stopCount] = offsets[index] + delta;
+                stopTokens[stopCount++] = index;
+            }
+        }
+
+        // Tokens are on the line that they end on, which is not the line they start on for multi-line strings
+
+        var from = firstToken > 0 ? offsets[firstToken] : 0;
+        var line = 1;
+        if (firstToken > 0) {
+            var lexeme = tokens.get(firstToken).lexeme();
+            line = tokens.get(firstToken).line() + segments.get(first).lines - countLines(lexeme, 0, lexeme.length());
+        }
+        var rescan = Scanner.rescan(edited, from, line, Arrays.copyOf(stops, stopCount));
+
+        // Splice the new tokens in place of the old ones. Scanning errors are kept apart, like the parser does.
+
+        var oldCount = tokens.size();
+        var oldResume = rescan.stop() >= 0 ? stopTokens[rescan.stop()] : oldCount;
+        var oldResumeOffset = oldResume < oldCount ? offsets[oldResume] : source.length() + 1;
+
+        var scanned = new ArrayList<Token>(rescan.tokens().size());
+        var scannedOffsets = new int[rescan.tokens().size()];
+        var newErrors = new ArrayList<Scanned>();
+        for (var error : errors) {
+            if (error.offset() < from) {
+                newErrors.add(error);
+            }
+        }
+        for (var i = 0; i < rescan.tokens().size(); i++) {
+            var token = rescan.tokens().get(i);
+            if (token.type() == TokenType.ERROR) {
+                newErrors.add(new Scanned(new Parser.Error(token, token.lexeme()), rescan.offsets()[i]));
+            } else {
+                scannedOffsets[scanned.size()] = rescan.offsets()[i];
+                scanned.add(token);
+            }
+        }
+        for (var error : errors) {
+            if (error.offset() >= oldResumeOffset) {
+                newErrors.add(new Scanned(shift(error.error(), lineDelta), error.offset() + delta));
+            }
+        }
+
+        var resume = firstToken + scanned.size();
+        var count = resume + oldCount - oldResume;
+        var newOffsets = count <= offsets.length ? offsets : Arrays.copyOf(offsets, count + count / 2);
+        System.arraycopy(offsets, oldResume, newOffsets, resume, oldCount - oldResume);
+        System.arraycopy(scannedOffsets, 0, newOffsets, firstToken, scanned.size());
+        for (var i = resume; i < count; i++) {
+            newOffsets[i] += delta;
+        }
+
+        var replaced = tokens.subList(firstToken, oldResume);
+        replaced.clear();
+        replaced.addAll(scanned);
+        tokens.set(count - 1, shift(tokens.get(count - 1), resume < count ? lineDelta : 0));
+
+        // The declarations after the rescanned tokens are moved to their new lines without touching their tokens,
+        // and parsing can stop at the start of any of them
+
+        var reusable = new int[segments.size() - first];
+        var reusableSegments = new int[reusable.length];
+        var reusableCount = 0;
+        for (int i = first, index = firstToken; i < segments.size(); index += segments.get(i++).length) {
+            if (index >= oldResume) {
+                segments.get(i).lines += lineDelta;
+                reusable[reusableCount] = index - oldResume + resume;
+                reusableSegments[reusableCount++] = i;
+            }
+        }
+
+        var boundaries = Arrays.copyOf(reusable, reusableCount);
+        var view = new TokenView(resume, boundaries, reusableSegments);
+        var declarations = Parser.parseDeclarations(view, firstToken, directory,
+                index -> Arrays.binarySearch(boundaries, index) >= 0);
+
+        var stop = firstToken;
+        for (var declaration : declarations) {
+            stop += declaration.length();
+        }
+        var boundary = Arrays.binarySearch(boundaries, stop);
+        var last = boundary >= 0 ? reusableSegments[boundary] : segments.size();
+
+        // Tokens of moved declarations that have been parsed again now belong to new declarations
+        for (var i = resume; i < stop; i++) {
+            tokens.set(i, view.get(i));
+        }
+
+        var parsed = segments.subList(first, last);
+        parsed.clear();
+        for (var declaration : declarations) {
+            parsed.add(new Segment(declaration));
+        }
+
+        source = edited;
+        offsets = newOffsets;
+        errors = newErrors;
+        result = collect();
+        return result;
+    }
+
+    private final Path directory;
+    private final List<Segment> segments = new ArrayList<>();
+    private String source;
+    private final List<Token> tokens = new ArrayList<>();
+    private int[] offsets;
+    private List<Scanned> errors = List.of();
+    private Parser.Result result;
+
+    /**
+     * A scanning error, which is not part of the tokens given to the parser.
+     *
+     * @param error  the error
+     * @param offset the offset in the source that the erroneous token starts at
+     */
+    private record Scanned(Parser.Error error, int offset) {
+        // This is a data class
+    }
+
+    /**
+     * A top-level declaration, along with its resolution once it has been resolved.
+     *
+     * <p>
+     * When an edit adds or removes lines before a declaration, the declaration is not parsed again. It only records
+     * how many lines it has moved, and its AST nodes are copied with their tokens on the new lines when they are
+     * needed.
+     * </p>
+     */
+    private static final class Segment {
+        Segment(Parser.Declaration declaration) {
+            this.statement = declaration.statement();
+            this.length = declaration.length();
+            this.errors = declaration.errors();
+        }
+
+        void resolve() {
+            resolution = new ArrayList<>();
+            frameSize = Resolver.resolve(statement, resolution);
+        }
+
+        /**
+         * Returns the AST node of the declaration, moved by a number of lines.
+         */
+        Stmt statement(int moved) {
+            if (moved == 0) {
+                return statement;
+            }
+            if (relocated == null || relocatedLines != moved) {
+                relocated = relocate(statement, moved);
+                relocatedLines = moved;
+            }
+            return relocated;
+        }
+
+        final Stmt statement;
+        final int length;
+        final List<Parser.Error> errors;
+        List<Parser.Error> resolution;
+        int frameSize;
+
+        /**
+         * The number of lines that the declaration has moved since it was parsed, which applies to its tokens as well.
+         */
+        int lines;
+
+        private Stmt relocated;
+        private int relocatedLines;
+    }
+
+    /**
+     * The tokens as the parser sees them, with the tokens of moved declarations on their new lines.
+     */
+    private final class TokenView extends AbstractList<Token> implements RandomAccess {
+        TokenView(int moved, int[] starts, int[] owners) {
+            this.moved = moved;
+            this.starts = starts;
+            this.owners = owners;
+        }
+
+        @Override
+        public Token get(int index) {
+            var token = tokens.get(index);
+            if (index < moved || index == tokens.size() - 1) {
+                return token;
+            }
+
+            var start = Arrays.binarySearch(starts, index);
+            var owner = owners[start >= 0 ? start : -start - 2];
+            return shift(token, segments.get(owner).lines);
+        }
+
+        @Override
+        public int size() {
+            return tokens.size();
+        }
+
+        private final int moved;
+        private final int[] starts;
+        private final int[] owners;
+    }
+
+    /**
+     * The top-level statements of a result, which are only moved to their new lines once they are looked at.
+     */
+    private static final class Statements extends AbstractList<Stmt> implements RandomAccess {
+        Statements(Segment[] segments, int[] lines) {
+            this.segments = segments;
+            this.lines = lines;
+        }
+
+        @Override
+        public Stmt get(int index) {
+            return segments[index].statement(lines[index]);
+        }
+
+        @Override
+        public int size() {
+            return segments.length;
+        }
+
+        private final Segment[] segments;
+        private final int[] lines;
+    }
+
+    private Parser.Result collect() {
+        var declared = new Segment[segments.size()];
+        var lines = new int[segments.size()];
+        var count = 0;
+        var allErrors = new ArrayList<Parser.Error>();
+
+        for (var error : errors) {
+            allErrors.add(error.error());
+        }
+        for (var segment : segments) {
+            if (segment.statement != null) {
+                declared[count] = segment;
+                lines[count++] = segment.lines;
+            }
+            for (var error : segment.errors) {
+                allErrors.add(shift(error, segment.lines));
+            }
+        }
+
+        // Variables can only be resolved in a syntactically correct program, as in Parser.parse
+
+        var layout = new Layout();
+        if (allErrors.isEmpty()) {
+            for (var segment : segments) {
+                if (segment.resolution == null) {
+                    segment.resolve();
+                }
+                for (var error : segment.resolution) {
+                    allErrors.add(shift(error, segment.lines));
+                }
+                layout.size = Math.max(layout.size, segment.frameSize);
+            }
+        }
+
+        var statements = new Statements(Arrays.copyOf(declared, count), Arrays.copyOf(lines, count));
+        return new Parser.Result(statements, layout, Collections.unmodifiableList(allErrors));
+    }
+
+    /**
+     * Returns the index of the last token that starts before an offset, or {@code -1} if there is none.
+     */
+    private int lastTokenBefore(int offset) {
+        var low = 0;
+        var high = tokens.size() - 2;
+
+        while (low <= high) {
+            var middle = (low + high) >>> 1;
+            if (offsets[middle] < offset) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    private static int countLines(String text, int from, int to) {
+        var lines = 0;
+        for (var i = from; i < to; i++) {
+            if (text.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private static Token shift(Token token, int lines) {
+        if (lines == 0) {
+            return token;
+        }
+        return new Token(token.type(), token.lexeme(), token.literal(), token.line() + lines);
+    }
+
+    private static Parser.Error shift(Parser.Error error, int lines) {
+        if (lines == 0) {
+            return error;
+        }
+        return new Parser.Error(shift(error.token(), lines), error.message());
+    }
+
+    //
+    // Relocation
+    //
+
+    // Copies of AST nodes with their tokens moved by a number of lines. The copies share their slots, layouts and
+    // inline caches with the original nodes, so they do not have to be resolved or analyzed again.
+
+    private static Stmt relocate(Stmt stmt, int lines) {
+        return switch (stmt) {
+            case null -> null;
+            case Stmt.Block block -> new Stmt.Block(relocateStatements(block.body(), lines), block.cells());
+            case Stmt.Class klass -> {
+                var methods = new ArrayList<Stmt.Function>(klass.methods().size());
+                for (var method : klass.methods()) {
+                    methods.add(relocate(method, lines));
+                }
+                var superclass = (Expr.Variable) relocateExpression(klass.superclass(), lines);
+                yield new Stmt.Class(shift(klass.name(), lines), superclass, Collections.unmodifiableList(methods),
+                        klass.slot(), klass.superSlot());
+            }
+            case Stmt.Expression expression -> new Stmt.Expression(
+                    relocateExpression(expression.expression(), lines));
+            case Stmt.Function function -> relocate(function, lines);
+            case Stmt.If branch -> new Stmt.If(relocateExpression(branch.condition(), lines),
+                    relocate(branch.thenBranch(), lines), relocate(branch.elseBranch(), lines));
+            case Stmt.Import module -> new Stmt.Import(shift(module.keyword(), lines), shift(module.path(), lines),
+                    module.file());
+            case Stmt.Print print -> new Stmt.Print(relocateExpression(print.value(), lines));
+            case Stmt.Return ret -> new Stmt.Return(shift(ret.keyword(), lines),
+                    relocateExpression(ret.value(), lines));
+            case Stmt.Var var -> new Stmt.Var(shift(var.name(), lines), relocateExpression(var.initializer(), lines),
+                    var.slot());
+            case Stmt.While loop -> new Stmt.While(shift(loop.keyword(), lines),
+                    relocateExpression(loop.condition(), lines), relocate(loop.body(), lines));
+            default -> throw new IllegalArgumentException(stmt.toString());
+        };
+    }
+
+    private static Stmt.Function relocate(Stmt.Function function, int lines) {
+        var parameters = new ArrayList<Token>(function.parameters().size());
+        for (var parameter : function.parameters()) {
+            parameters.add(shift(parameter, lines));
+        }
+        return new Stmt.Function(shift(function.name(), lines), Collections.unmodifiableList(parameters),
+                relocateStatements(function.body(), lines), function.slot(), function.layout());
+    }
+
+    private static List<Stmt> relocateStatements(List<Stmt> statements, int lines) {
+        var relocated = new ArrayList<Stmt>(statements.size());
+        for (var statement : statements) {
+            relocated.add(relocate(statement, lines));
+        }
+        return Collections.unmodifiableList(relocated);
+    }
+
+    private static Expr relocateExpression(Expr expr, int lines) {
+        return switch (expr) {
+            case null -> null;
+            case Expr.Assign assign -> new Expr.Assign(shift(assign.name(), lines),
+                    relocateExpression(assign.value(), lines), assign.slot());
+            case Expr.Binary binary -> new Expr.Binary(relocateExpression(binary.left(), lines),
+                    shift(binary.operator(), lines), relocateExpression(binary.right(), lines), binary.operands());
+            case Expr.Call call -> new Expr.Call(relocateExpression(call.callee(), lines), shift(call.paren(), lines),
+                    relocateExpressions(call.arguments(), lines));
+            case Expr.Get get -> new Expr.Get(relocateExpression(get.object(), lines), shift(get.name(), lines),
+                    get.cache());
+            case Expr.Grouping grouping -> new Expr.Grouping(relocateExpression(grouping.expression(), lines));
+            case Expr.Index index -> new Expr.Index(relocateExpression(index.object(), lines),
+                    shift(index.bracket(), lines), relocateExpression(index.index(), lines));
+            case Expr.ListLiteral list -> new Expr.ListLiteral(shift(list.bracket(), lines),
+                    relocateExpressions(list.elements(), lines));
+            case Expr.Literal literal -> literal;
+            case Expr.Logical logical -> new Expr.Logical(relocateExpression(logical.left(), lines),
+                    shift(logical.operator(), lines), relocateExpression(logical.right(), lines));
+            case Expr.Set set -> new Expr.Set(relocateExpression(set.object(), lines), shift(set.name(), lines),
+                    relocateExpression(set.value(), lines), set.cache());
+            case Expr.SetIndex set -> new Expr.SetIndex(relocateExpression(set.object(), lines),
+                    shift(set.bracket(), lines), relocateExpression(set.index(), lines),
+                    relocateExpression(set.value(), lines));
+            case Expr.Super method -> new Expr.Super(shift(method.keyword(), lines), shift(method.method(), lines),
+                    method.superclass(), method.instance());
+            case Expr.This self -> new Expr.This(shift(self.keyword(), lines), self.slot());
+            case Expr.Unary unary -> new Expr.Unary(shift(unary.operator(), lines),
+                    relocateExpression(unary.right(), lines), unary.operands());
+            case Expr.Variable variable -> new Expr.Variable(shift(variable.name(), lines), variable.slot());
+            default -> throw new IllegalArgumentException(expr.toString());
+        };
+    }
+
+    private static List<Expr> relocateExpressions(List<Expr> expressions, int lines) {
+        var relocated = new ArrayList<Expr>(expressions.size());
+        for (var expression : expressions) {
+            relocated.add(relocateExpression(expression, lines));
+        }
+        return Collections.unmodifiableList(relocated);
+    }
+}
\ No newline at end of file
@@ -17,12 +17,26 @@ public interface Expr {
 
         R visitCall(Call expr);
 
+        R visitGet(Get expr);
+
         R visitGrouping(Grouping expr);
 
+        R visitIndex(Index expr);
+
+        R visitListLiteral(ListLiteral expr);
+
         R visitLiteral(Literal expr);
 
         R visitLogical(Logical expr);
 
+        R visitSet(Set expr);
+
+        R visitSetIndex(SetIndex expr);
+
+        R visitSuper(Super expr);
+
+        R visitThis(This expr);
+
         R visitUnary(Unary expr);
 
         R visitVariable(Variable expr);
@@ -32,14 +46,14 @@ public interface Expr {
     // Classes
     //
 
-    record Assign(Token name, Expr value) implements Expr {
+    record Assign(Token name, Expr value, Slot slot) implements Expr {
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitAssign(this);
         }
     }
 
-    record Binary(Expr left, Token operator, Expr right) implements Expr {
+    record Binary(Expr left, Token operator, Expr right, Operands operands) implements Expr {
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitBinary(this);
@@ -53,6 +67,13 @@ public interface Expr {
         }
     }
 
+    record Get(Expr object, Token name, InlineCache cache) implements Expr {
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitGet(this);
+        }
+    }
+
     record Grouping(Expr expression) implements Expr {
         @Override
         public <R> R accept(Visitor<R> visitor) {
@@ -60,6 +81,20 @@ public interface Expr {
         }
     }
 
+    record Index(Expr object, Token bracket, Expr index) implements Expr {
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitIndex(this);
+        }
+    }
+
+    record ListLiteral(Token bracket, List<Expr> elements) implements Expr {
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitListLiteral(this);
+        }
+    }
+
     record Literal(Object value) implements Expr {
         @Override
         public <R> R accept(Visitor<R> visitor) {
@@ -74,14 +109,42 @@ public interface Expr {
         }
     }
 
-    record Unary(Token operator, Expr right) implements Expr {
+    record Set(Expr object, Token name, Expr value, InlineCache cache) implements Expr {
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitSet(this);
+        }
+    }
+
+    record SetIndex(Expr object, Token bracket, Expr index, Expr value) implements Expr {
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitSetIndex(this);
+        }
+    }
+
+    record Super(Token keyword, Token method, Slot superclass, Slot instance) implements Expr {
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitSuper(this);
+        }
+    }
+
+    record This(Token keyword, Slot slot) implements Expr {
+        @Override
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitThis(this);
+        }
+    }
+
+    record Unary(Token operator, Expr right, Operands operands) implements Expr {
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitUnary(this);
         }
     }
 
-    record Variable(Token name) implements Expr {
+    record Variable(Token name, Slot slot) implements Expr {
         @Override
         public <R> R accept(Visitor<R> visitor) {
             return visitor.visitVariable(this);
@@ -0,0 +1,108 @@
+package com.khl.lox;
+
+import java.io.IOException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+/**
+ * Native functions for reading and writing files, whose paths are relative to the working directory of the script,
+ * see {@link com.khl.lox.OpenFiles}. Files are always read and written as UTF-8.
+ *
+ * <p>
+ * {@code readLines(path)} returns a reader over a memory-mapped file and {@code nextLine(lines)} returns its next
+ * line, or {@code nil} at the end, so a file of any size can be processed line by line:
+ * </p>
+ *
+ * <pre>{@code
+ * var lines = readLines("access.log");
+ * for (var line = nextLine(lines); line != nil; line = nextLine(lines)) {
+ *   print line;
+ * }
+ * }</pre>
+ *
+ * <p>
+ * {@code readFile(path)} returns a whole file as a string, {@code writeFile(path, text)} replaces a file with a string
+ * and {@code appendLine(path, line)} adds a line to the end of a file through a buffer that is written out when the
+ * script finishes, see {@link com.khl.lox.OpenFiles}.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+final class FileModule {
+    @LoxNative
+    static LoxLines readLines(Interpreter interpreter, String path) {
+        try {
+            return interpreter.files().readLines(path(interpreter, path));
+        } catch (IOException ioException) {
+            throw error("read", path, ioException);
+        }
+    }
+
+    @LoxNative
+    static String nextLine(LoxLines lines) {
+        return lines.next();
+    }
+
+    @LoxNative
+    static String readFile(Interpreter interpreter, String path) {
+        try {
+            var file = path(interpreter, path);
+            interpreter.files().close(file);
+            return Files.readString(file, StandardCharsets.UTF_8);
+        } catch (IOException ioException) {
+            throw error("read", path, ioException);
+        }
+    }
+
+    @LoxNative
+    static void writeFile(Interpreter interpreter, String path, String text) {
+        try {
+            var file = path(interpreter, path);
+            interpreter.files().close(file);
+            interpreter.files().invalidate(file);
+            Files.writeString(file, text, StandardCharsets.UTF_8);
+        } catch (IOException ioException) {
+            throw error("write", path, ioException);
+        }
+    }
+
+    @LoxNative
+    static void appendLine(Interpreter interpreter, String path, String line) {
+        try {
+            interpreter.files().append(path(interpreter, path), line);
+        } catch (IOException ioException) {
+            throw error("write", path, ioException);
+        }
+    }
+
+    private FileModule() {
+        // This is a utility class
+    }
+
+    private static Path path(Interpreter interpreter, String path) {
+        try {
+            return interpreter.files().resolve(path);
+        } catch (InvalidPathException invalidPathException) {
+            throw new NativeError("Invalid path '%s'".formatted(path));
+        }
+    }
+
+    private static NativeError error(String action, String path, IOException ioException) {
+        String reason;
+        if (ioException instanceof NoSuchFileException) {
+            reason = "No such file";
+        } else if (ioException instanceof AccessDeniedException) {
+            reason = "Permission denied";
+        } else if (ioException instanceof CharacterCodingException) {
+            reason = "Not valid UTF-8";
+        } else {
+            reason = ioException.getMessage();
+        }
+        return new NativeError("Cannot %s '%s': %s".formatted(action, path, reason));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,106 @@
+package com.khl.lox;
+
+/**
+ * A monomorphic inline cache for a property access site.
+ *
+ * <p>
+ * The cache remembers the outcome of the last property lookup at a site, keyed on the {@link com.khl.lox.Shape} of the
+ * instance: where the field is stored, or which method the name refers to. As long as the site keeps seeing instances
+ * of that shape, properties are accessed without any name lookup.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+final class InlineCache {
+    /**
+     * The outcome of a lookup. Entries are immutable so that they can be replaced safely while other threads are
+     * reading the cache.
+     *
+     * @param shape    the shape the entry is valid for
+     * @param index    the index of the field, or {@code -1} for a method
+     * @param newShape the shape after storing the field
+     * @param method   the method, for a method lookup
+     */
+    private record Entry(Shape shape, int index, Shape newShape, LoxFunction method) {
+        // This is a data class
+    }
+
+    /**
+     * Reads a property, binding the method to the instance if the property is a method.
+     *
+     * @param instance the instance
+     * @param name     the name of the property
+     * @return the property value
+     * @throws RuntimeError if the instance has no such property
+     */
+    Object get(LoxInstance instance, Token name) throws RuntimeError {
+        var entry = lookup(instance, name);
+        if (entry.method != null) {
+            return entry.method.bind(instance);
+        }
+        return instance.field(entry.index);
+    }
+
+    /**
+     * Looks up a property that is about to be called.
+     *
+     * @param instance the instance
+     * @param name     the name of the property
+     * @return the unbound method, or {@code null} if the property is a field
+     * @throws RuntimeError if the instance has no such property
+     */
+    LoxFunction method(LoxInstance instance, Token name) throws RuntimeError {
+        return lookup(instance, name).method;
+    }
+
+    /**
+     * Writes a field, adding it to the instance if needed.
+     *
+     * @param instance the instance
+     * @param name     the name of the field
+     * @param value    the field value
+     */
+    void set(LoxInstance instance, Token name, Object value) {
+        var entry = this.entry;
+        var shape = instance.shape();
+
+        if (entry == null || entry.shape != shape) {
+            var index = shape.indexOf(name.lexeme());
+            if (index >= 0) {
+                entry = new Entry(shape, index, shape, null);
+            } else {
+                entry = new Entry(shape, shape.size(), shape.with(name.lexeme()), null);
+            }
+            this.entry = entry;
+        }
+
+        instance.store(entry.newShape, entry.index, value);
+    }
+
+    private Entry entry;
+
+    private Entry lookup(LoxInstance instance, Token name) {
+        var entry = this.entry;
+        var shape = instance.shape();
+
+        if (entry != null && entry.shape == shape) {
+            return entry;
+        }
+
+        // Fields shadow methods
+
+        var index = shape.indexOf(name.lexeme());
+        if (index >= 0) {
+            entry = new Entry(shape, index, shape, null);
+        } else {
+            var method = shape.owner().findMethod(name.lexeme());
+            if (method == null) {
+                throw new RuntimeError(name, "Undefined property '%s'".formatted(name.lexeme()));
+            }
+            entry = new Entry(shape, -1, shape, method);
+        }
+
+        this.entry = entry;
+        return entry;
+    }
+}
\ No newline at end of file
@@ -1,11 +1,15 @@
 package com.khl.lox;
 
-import java.io.PrintStream;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Lox interpreter instance.
@@ -13,125 +17,548 @@ import java.util.Objects;
  * @author Kevin Lee
  */
 public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
-    public Interpreter(PrintStream stdout) {
-        this.stdout = stdout;
+    public Interpreter(OutputStream stdout) {
+        this(new Output(stdout, Output.Policy.LINE, false), new Memoizer(false));
+    }
 
-        // Define some native functions
+    Interpreter(Output stdout, Memoizer memoizer) {
+        this(stdout, memoizer, Path.of("").toAbsolutePath());
+    }
 
-        this.environment.define("clock", new LoxCallable() {
-            @Override
-            public int arity() {
-                return 0;
-            }
+    Interpreter(Output stdout, Memoizer memoizer, Path directory) {
+        this(new Environment(), memoizer, stdout, new OpenFiles(directory));
+    }
 
-            @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
-                return (double) System.currentTimeMillis() / 1000.0;
-            }
+    /**
+     * Creates an interpreter for running Lox code on another thread.
+     *
+     * <p>
+     * The new interpreter shares the global environment, standard output, open files and execution budget with this
+     * one, but has a frame stack of its own, so both can execute at the same time. It starts at the call depth of this
+     * one, so that the call depth limit also covers recursion through tasks.
+     * </p>
+     *
+     * @return the forked interpreter
+     */
+    Interpreter fork() {
+        var interpreter = new Interpreter(globals, memoizer, stdout, files);
+        interpreter.start(budget);
+        interpreter.depth = depth;
+        interpreter.rootDepth = depth;
+        return interpreter;
+    }
 
-            @Override
-            public String toString() {
-                return "<native fn>";
-            }
-        });
+    Memoizer memoizer() {
+        return memoizer;
+    }
+
+    Environment globals() {
+        return globals;
+    }
+
+    OpenFiles files() {
+        return files;
     }
 
     /**
-     * Executes Lox AST statements.
+     * Executes a resolved Lox script.
      *
-     * @param statements AST statement nodes
+     * @param script the parser results of the script
      * @throws RuntimeError An error that occurs during interpreter runtime
      */
-    public void interpret(List<Stmt> statements) throws RuntimeError {
-        for (var statement : statements) {
-            execute(statement);
+    public void interpret(Parser.Result script) throws RuntimeError {
+        interpret(script, new Budget(Limits.NONE));
+    }
+
+    /**
+     * Executes a resolved Lox script within an execution budget.
+     *
+     * @param script the parser results of the script
+     * @param budget the execution budget
+     * @throws RuntimeError An error that occurs during interpreter runtime, including a {@link com.khl.lox.LimitError}
+     *                      once the budget is exhausted
+     */
+    void interpret(Parser.Result script, Budget budget) throws RuntimeError {
+        interpret(script, budget, false);
+    }
+
+    /**
+     * Executes a resolved Lox script within an execution budget, optionally on a heap-managed call stack.
+     *
+     * <p>
+     * On the heap-managed stack, calls of Lox functions do not nest Java calls, so the depth of recursion is only
+     * bounded by {@link com.khl.lox.Limits#stack()} rather than by the size of the thread stack.
+     * </p>
+     *
+     * @param script    the parser results of the script
+     * @param budget    the execution budget
+     * @param heapStack whether to run the script on a {@link com.khl.lox.StackMachine}
+     * @throws RuntimeError An error that occurs during interpreter runtime
+     */
+    void interpret(Parser.Result script, Budget budget, boolean heapStack) throws RuntimeError {
+        start(budget);
+
+        var size = script.layout().size;
+        try {
+            var frameBase = reserveFrame(size);
+            if (heapStack) {
+                enterFrame(frameBase, size, NO_CELLS);
+                new StackMachine(this, budget.limits().stack()).run(script.statements());
+            } else {
+                executeFrame(frameBase, size, NO_CELLS, script.statements());
+            }
+        } finally {
+            // A stack overflow can cut short the bookkeeping of the calls and frames it unwinds, so the next script
+            // starts from an empty stack no matter how this one ended
+            Arrays.fill(stack, null);
+            base = 0;
+            top = 0;
+            upvalues = NO_CELLS;
+            depth = 0;
+            overflowDepth = 0;
+        }
+    }
+
+    /**
+     * Reserves stack space for a new frame on top of the current one.
+     *
+     * <p>
+     * The frame does not become active until {@link #executeFrame} is called, so arguments can be stored into it with
+     * {@link #initialize} beforehand.
+     * </p>
+     *
+     * @param size the number of slots in the frame
+     * @return the base index of the new frame
+     */
+    protected int reserveFrame(int size) {
+        if (top + size > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + size));
         }
+        return top;
+    }
+
+    protected void initialize(int frameBase, Slot slot, Object value) {
+        stack[frameBase + slot.index] = slot.kind == Slot.Kind.CELL ? new Cell(value) : value;
     }
 
-    protected void executeBlock(Environment newEnvironment, List<Stmt> body) {
-        var previous = environment;
+    protected void executeFrame(int frameBase, int size, Cell[] closure, List<Stmt> body) {
+        var previousBase = base;
+        var previousTop = top;
+        var previousUpvalues = upvalues;
+
+        if (Stats.ENABLED) {
+            Stats.frames++;
+        }
 
         try {
-            environment = newEnvironment;
+            base = frameBase;
+            top = frameBase + size;
+            upvalues = closure;
 
             for (var stmt : body) {
                 execute(stmt);
             }
         } finally {
-            environment = previous;
+            // Release the values held by the frame so they can be collected
+            Arrays.fill(stack, frameBase, frameBase + size, null);
+
+            base = previousBase;
+            top = previousTop;
+            upvalues = previousUpvalues;
+        }
+    }
+
+    /**
+     * The registers of a suspended frame, saved while a callee runs on the heap-managed stack.
+     *
+     * @param base     the base index of the frame
+     * @param top      the top index of the frame, which is also the base index of the callee
+     * @param upvalues the cells captured by the function running in the frame
+     */
+    record Registers(int base, int top, Cell[] upvalues) {
+        // This is a data class
+    }
+
+    /**
+     * Makes a frame reserved with {@link #reserveFrame} the current one, without executing anything in it.
+     *
+     * @param frameBase the base index of the new frame
+     * @param size      the number of slots in the new frame
+     * @param closure   the cells captured by the function running in the new frame
+     * @return the registers of the previous frame, to be restored by {@link #exitFrame}
+     */
+    Registers enterFrame(int frameBase, int size, Cell[] closure) {
+        if (Stats.ENABLED) {
+            Stats.frames++;
+        }
+
+        var caller = new Registers(base, top, upvalues);
+        base = frameBase;
+        top = frameBase + size;
+        upvalues = closure;
+        return caller;
+    }
+
+    void exitFrame(Registers caller) {
+        Arrays.fill(stack, caller.top, top, null);
+
+        base = caller.base;
+        top = caller.top;
+        upvalues = caller.upvalues;
+    }
+
+    int stackCapacity() {
+        return stack.length;
+    }
+
+    private static final int INITIAL_STACK_SIZE = 256;
+    private static final Cell[] NO_CELLS = new Cell[0];
+    private static final int OVERFLOW_HEADROOM = 128;
+
+    private final Environment globals;
+    private final Memoizer memoizer;
+    private final Output stdout;
+    private final OpenFiles files;
+
+    // Frames of active calls are laid out contiguously in a single stack that is reused from call to call. The
+    // current frame occupies the slots between 'base' (inclusive) and 'top' (exclusive).
+
+    private Object[] stack = new Object[INITIAL_STACK_SIZE];
+    private int base;
+    private int top;
+    private Cell[] upvalues = NO_CELLS;
+
+    // Loops and calls are safepoints that count down 'fuel' and only charge the budget once it runs out
+
+    private Budget budget;
+    private int fuel;
+    private int depth;
+    private int rootDepth;
+    private int maxDepth;
+    private int overflowDepth;
+    private long allocationMark;
+
+    private Interpreter(Environment globals, Memoizer memoizer, Output stdout, OpenFiles files) {
+        this.globals = globals;
+        this.memoizer = memoizer;
+        this.stdout = stdout;
+        this.files = files;
+    }
+
+    private void start(Budget budget) {
+        this.budget = budget;
+        this.fuel = budget.slice();
+        this.maxDepth = budget.limits().depth();
+        this.allocationMark = budget.limits().isMemoryLimited() ? Budget.allocatedBytes() : 0;
+    }
+
+    void safepoint(Token token) {
+        if (--fuel <= 0) {
+            charge(token);
+        }
+    }
+
+    private void charge(Token token) {
+        long allocated = 0;
+        if (budget.limits().isMemoryLimited()) {
+            var mark = Budget.allocatedBytes();
+            allocated = mark - allocationMark;
+            allocationMark = mark;
+        }
+
+        fuel = budget.slice();
+        budget.charge(token, fuel, allocated);
+    }
+
+    /**
+     * Counts a call at a safepoint and checks that it does not exceed the call depth limit.
+     *
+     * @param paren the location of the call
+     */
+    void enterCall(Token paren) {
+        safepoint(paren);
+        if (depth >= maxDepth) {
+            throw new LimitError(paren, "Call depth limit of %d exceeded".formatted(maxDepth));
+        }
+        depth++;
+
+        if (Stats.ENABLED) {
+            Stats.call(depth);
         }
     }
 
-    private Environment environment = new Environment(null);
-    private final PrintStream stdout;
+    void exitCall() {
+        depth--;
+    }
 
-    private void execute(Stmt stmt) {
+    void execute(Stmt stmt) {
+        if (Stats.ENABLED) {
+            Stats.node(stmt);
+        }
         stmt.accept(this);
     }
 
-    private Object evaluate(Expr expr) {
+    Object evaluate(Expr expr) {
+        if (Stats.ENABLED) {
+            Stats.node(expr);
+        }
         return expr.accept(this);
     }
 
-    private static boolean isTruthy(Object value) {
+    void print(Object value) {
+        stdout.println(value);
+    }
+
+    static boolean isTruthy(Object value) {
         if (value instanceof Boolean b) {
             return b;
         }
         return value != null;
     }
 
-    private static String stringify(Object object) {
+    /**
+     * Checks whether two values are equal according to the {@code ==} operator.
+     *
+     * <p>
+     * String literals are interned by the {@link com.khl.lox.Scanner}, so equal strings are usually the same object.
+     * Strings built at runtime have no hash code yet, so they are compared by {@link String#equals}, which tells
+     * strings of different lengths apart right away, rather than by hashing both first.
+     * </p>
+     *
+     * @param left  the left operand
+     * @param right the right operand
+     * @return whether the values are equal
+     */
+    static boolean isEqual(Object left, Object right) {
+        if (left == right) {
+            return true;
+        }
+        return left != null && left.equals(right);
+    }
+
+    static String stringify(Object object) {
+        if (object instanceof Double number) {
+            return stringify(number.doubleValue());
+        }
         if (object == null) {
             return "nil";
         }
+        return object.toString();
+    }
 
-        var text = String.valueOf(object);
-        if (object instanceof Double && text.endsWith(".0")) {
-            text = text.substring(0, text.length() - 2);
+    /**
+     * Formats a number the way Lox prints it, which is {@link Double#toString(double)} without a trailing {@code .0}.
+     *
+     * <p>
+     * Integers that {@code Double.toString} would print in plain notation are formatted directly as longs, so that
+     * printing one allocates a single string. Other numbers keep the shortest representation that round-trips.
+     * </p>
+     *
+     * @param number the number
+     * @return the text of the number
+     */
+    static String stringify(double number) {
+        if (isPlainInteger(number)) {
+            return Long.toString((long) number);
         }
-        return text;
+        return number == 0 ? "-0" : Double.toString(number);
     }
 
     /**
-     * A class that represents a lexical scope and all values contained within it.
+     * Appends the text of a value to a buffer, formatting numbers without allocating intermediate strings.
+     *
+     * @param text  the buffer
+     * @param value the value
      */
-    protected static class Environment {
-        protected Environment(Environment parent) {
-            this.parent = parent;
+    static void stringify(StringBuilder text, Object value) {
+        stringify(text, value, null);
+    }
+
+    /**
+     * Appends the text of a value that is nested in lists or maps being printed.
+     *
+     * <p>
+     * A list or map that is already being printed further out is printed as {@code [...]} or {@code {...}}, so that
+     * one that contains itself does not recurse forever.
+     * </p>
+     *
+     * @param text      the buffer
+     * @param value     the value
+     * @param enclosing the lists and maps being printed, compared by identity, or {@code null} if there are none
+     */
+    static void stringify(StringBuilder text, Object value, Set<Object> enclosing) {
+        switch (value) {
+            case Double number -> stringify(text, number.doubleValue());
+            case LoxList list -> list.stringify(text, enclosing);
+            case LoxMap map -> map.stringify(text, enclosing);
+            case null, default -> text.append(stringify(value));
+        }
+    }
+
+    static void stringify(StringBuilder text, double number) {
+        if (isPlainInteger(number)) {
+            text.append((long) number);
+        } else if (number == 0) {
+            text.append("-0");
+        } else {
+            text.append(number);
+        }
+    }
+
+    private static final long NEGATIVE_ZERO = Double.doubleToRawLongBits(-0.0);
+
+    /**
+     * Checks whether a number is an integer that {@code Double.toString} prints in plain notation, which it does below
+     * 10<sup>7</sup>. Negative zero keeps its sign, so it is not considered one.
+     */
+    private static boolean isPlainInteger(double number) {
+        return number == (long) number && Math.abs(number) < 1e7 && Double.doubleToRawLongBits(number) != NEGATIVE_ZERO;
+    }
+
+    Object load(Slot slot, Token name) {
+        if (Stats.ENABLED) {
+            Stats.access(slot);
+        }
+
+        return switch (slot.kind) {
+            case LOCAL -> stack[base + slot.index];
+            case CELL -> ((Cell) stack[base + slot.index]).value;
+            case UPVALUE -> upvalues[slot.index].value;
+            case GLOBAL -> globals.get(name);
+        };
+    }
+
+    void store(Slot slot, Token name, Object value) {
+        if (Stats.ENABLED) {
+            Stats.access(slot);
+        }
+
+        switch (slot.kind) {
+            case LOCAL -> stack[base + slot.index] = value;
+            case CELL -> ((Cell) stack[base + slot.index]).value = value;
+            case UPVALUE -> upvalues[slot.index].value = value;
+            case GLOBAL -> globals.assign(name, value);
         }
+    }
 
+    /**
+     * Creates the cells of the captured local functions that a block declares.
+     *
+     * @param block the block being entered
+     */
+    void enterBlock(Stmt.Block block) {
+        for (var cell : block.cells()) {
+            stack[base + cell.index] = new Cell(null);
+        }
+    }
+
+    void define(Slot slot, Token name, Object value) {
+        switch (slot.kind) {
+            case LOCAL -> stack[base + slot.index] = value;
+            case CELL -> stack[base + slot.index] = new Cell(value);
+            default -> globals.define(name.lexeme(), value);
+        }
+    }
+
+    /**
+     * A class that represents the global scope and all values contained within it.
+     *
+     * <p>
+     * Local variables do not live in an environment; the {@link com.khl.lox.Resolver} assigns them slots in the frame
+     * of the function that declares them instead.
+     * </p>
+     *
+     * <p>
+     * The environment is shared by forked interpreters running on other threads, so it is backed by a concurrent map.
+     * Since such a map cannot hold {@code null}, a global holding {@code nil} is stored as a sentinel instead.
+     * </p>
+     */
+    protected static class Environment {
         protected void define(String name, Object value) {
-            values.put(name, value);
+            values.put(name, value == null ? NIL : value);
         }
 
         protected void assign(Token name, Object value) {
-            if (values.containsKey(name.lexeme())) {
-                values.put(name.lexeme(), value);
+            if (isDefined(name.lexeme())) {
+                values.put(name.lexeme(), value == null ? NIL : value);
                 return;
             }
 
-            if (parent != null) {
-                parent.assign(name, value);
-                return;
+            throw new RuntimeError(name, String.format("Undefined variable '%s'", name.lexeme()));
+        }
+
+        protected Object get(Token name) {
+            var value = values.get(name.lexeme());
+            if (value == null && isDefined(name.lexeme())) {
+                value = values.get(name.lexeme());
+            }
+            if (value != null) {
+                return value == NIL ? null : value;
             }
 
             throw new RuntimeError(name, String.format("Undefined variable '%s'", name.lexeme()));
         }
 
-        protected Object get(Token name) {
-            if (values.containsKey(name.lexeme())) {
-                return values.get(name.lexeme());
+        /**
+         * Checks whether a global is defined, binding it to a native function on first use if one exists.
+         */
+        private boolean isDefined(String name) {
+            if (values.containsKey(name)) {
+                return true;
             }
 
-            if (parent != null) {
-                return parent.get(name);
+            var function = NativeRegistry.lookup(name);
+            if (function == null) {
+                return false;
             }
 
-            throw new RuntimeError(name, String.format("Undefined variable '%s'", name.lexeme()));
+            values.putIfAbsent(name, function);
+            return true;
         }
 
-        private final Environment parent;
-        private final Map<String, Object> values = new HashMap<>();
+        /**
+         * Records that a module has been imported, returning whether it is the first time.
+         */
+        protected boolean markImported(Path module) {
+            return modules.add(module);
+        }
+
+        /**
+         * Returns a copy of the globals defined so far, sorted by name, including the natives that have been bound.
+         */
+        protected Map<String, Object> values() {
+            var copy = new TreeMap<String, Object>();
+            values.forEach((name, value) -> copy.put(name, value == NIL ? null : value));
+            return copy;
+        }
+
+        /**
+         * Returns the modules imported so far.
+         */
+        protected Set<Path> modules() {
+            return Set.copyOf(modules);
+        }
+
+        private static final Object NIL = new Object();
+
+        private final Map<String, Object> values = new ConcurrentHashMap<>();
+        private final Set<Path> modules = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * A box holding a local variable that is captured by a closure.
+     *
+     * <p>
+     * The cell is shared by the frame that declares the variable and every closure that captures it, so assignments
+     * made by either side are visible to the other.
+     * </p>
+     */
+    protected static final class Cell {
+        protected Cell(Object value) {
+            this.value = value;
+        }
+
+        protected Object value;
     }
 
     //
@@ -140,7 +567,37 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
 
     @Override
     public void visitBlock(Stmt.Block stmt) {
-        executeBlock(new Environment(environment), stmt.body());
+        // Block locals live in slots of the enclosing frame, so entering a block only allocates the cells of its
+        // captured functions
+        enterBlock(stmt);
+        for (var statement : stmt.body()) {
+            execute(statement);
+        }
+    }
+
+    @Override
+    public void visitClass(Stmt.Class stmt) {
+        LoxClass superclass = null;
+        if (stmt.superclass() != null) {
+            if (!(evaluate(stmt.superclass()) instanceof LoxClass klass)) {
+                throw new RuntimeError(stmt.superclass().name(), "Superclass must be a class");
+            }
+            superclass = klass;
+        }
+
+        // Methods may capture the class itself or 'super', so both have to exist before the methods are created
+
+        define(stmt.slot(), stmt.name(), null);
+        if (superclass != null) {
+            define(stmt.superSlot(), stmt.name(), superclass);
+        }
+
+        var methods = new HashMap<String, LoxFunction>();
+        for (var method : stmt.methods()) {
+            methods.put(method.name().lexeme(), new LoxFunction(capture(method.layout()), method, null));
+        }
+
+        store(stmt.slot(), stmt.name(), new LoxClass(stmt.name().lexeme(), superclass, methods));
     }
 
     @Override
@@ -150,7 +607,31 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
 
     @Override
     public void visitFunction(Stmt.Function stmt) {
-        environment.define(stmt.name().lexeme(), new LoxFunction(environment, stmt));
+        var slot = stmt.slot();
+
+        // The cell of a captured local function was created on entering its block, since closures created earlier in the
+        // block, and the function itself if it is recursive, may have captured it already
+
+        if (slot.kind == Slot.Kind.CELL) {
+            ((Cell) stack[base + slot.index]).value = new LoxFunction(capture(stmt.layout()), stmt, null);
+        } else if (stmt.layout().pure && memoizer.isAutomatic()) {
+            define(slot, stmt.name(), memoizer.memoize(new LoxFunction(capture(stmt.layout()), stmt, null)));
+        } else {
+            define(slot, stmt.name(), new LoxFunction(capture(stmt.layout()), stmt, null));
+        }
+    }
+
+    private Cell[] capture(Layout layout) {
+        if (layout.captures.length == 0) {
+            return NO_CELLS;
+        }
+
+        var cells = new Cell[layout.captures.length];
+        for (var i = 0; i < cells.length; i++) {
+            var source = layout.captures[i];
+            cells[i] = source.kind == Slot.Kind.CELL ? (Cell) stack[base + source.index] : upvalues[source.index];
+        }
+        return cells;
     }
 
     @Override
@@ -162,9 +643,28 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
         }
     }
 
+    @Override
+    public void visitImport(Stmt.Import stmt) {
+        ModuleLoader.Script module;
+        try {
+            module = ModuleLoader.load(stmt.file());
+        } catch (IOException exception) {
+            throw new RuntimeError(stmt.path(), "Cannot read module '%s'".formatted(stmt.file()));
+        }
+        if (!module.result().errors().isEmpty()) {
+            throw new RuntimeError(stmt.path(), "Module '%s' has errors".formatted(module.path()));
+        }
+
+        // Modules run once, so a cyclic import finds the module it is already running and moves on
+        if (globals.markImported(module.path())) {
+            var size = module.result().layout().size;
+            executeFrame(reserveFrame(size), size, NO_CELLS, module.result().statements());
+        }
+    }
+
     @Override
     public void visitPrint(Stmt.Print stmt) {
-        stdout.println(stringify(evaluate(stmt.value())));
+        print(evaluate(stmt.value()));
     }
 
     @Override
@@ -173,18 +673,22 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
         if (stmt.value() != null) {
             value = evaluate(stmt.value());
         }
+        if (Stats.ENABLED) {
+            Stats.returns++;
+        }
         throw new LoxReturn(value);
     }
 
     @Override
     public void visitVar(Stmt.Var stmt) {
-        environment.define(stmt.name().lexeme(), evaluate(stmt.initializer()));
+        define(stmt.slot(), stmt.name(), evaluate(stmt.initializer()));
     }
 
     @Override
     public void visitWhile(Stmt.While stmt) {
         while (isTruthy(evaluate(stmt.condition()))) {
             execute(stmt.body());
+            safepoint(stmt.keyword());
         }
     }
 
@@ -195,7 +699,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
     @Override
     public Object visitAssign(Expr.Assign expr) {
         var value = evaluate(expr.value());
-        environment.assign(expr.name(), value);
+        store(expr.slot(), expr.name(), value);
         return value;
     }
 
@@ -203,58 +707,243 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
     public Object visitBinary(Expr.Binary expr) {
         var left = evaluate(expr.left());
         var right = evaluate(expr.right());
+        return binary(expr, left, right);
+    }
+
+    /**
+     * Applies a binary operator, skipping the operand type checks that {@link com.khl.lox.TypeInference} has proven
+     * unnecessary.
+     *
+     * @param expr  the AST node of the operator
+     * @param left  the left operand
+     * @param right the right operand
+     * @return the result
+     */
+    static Object binary(Expr.Binary expr, Object left, Object right) {
+        return switch (expr.operands().kind) {
+            case NUMBERS -> arithmetic(expr.operator(), (Double) left, (Double) right);
+            case STRINGS -> (String) left + (String) right;
+            case UNKNOWN -> binary(expr.operator(), left, right);
+        };
+    }
 
-        switch (expr.operator().type()) {
+    static Object binary(Token operator, Object left, Object right) {
+        switch (operator.type()) {
             case PLUS:
                 if (left instanceof Double lhs && right instanceof Double rhs) {
-                    return lhs + rhs;
+                    return box(lhs + rhs);
                 }
                 if (left instanceof String lhs && right instanceof String rhs) {
                     return lhs + rhs;
                 }
-                throw new RuntimeError(expr.operator(), "Operands must be two numbers or two strings");
+                throw new RuntimeError(operator, "Operands must be two numbers or two strings");
             case BANG_EQUAL:
-                return !Objects.equals(left, right);
+                return !isEqual(left, right);
             case EQUAL_EQUAL:
-                return Objects.equals(left, right);
+                return isEqual(left, right);
         }
 
         if (left instanceof Double lhs && right instanceof Double rhs) {
-            return switch (expr.operator().type()) {
-                case MINUS -> lhs - rhs;
-                case STAR -> lhs * rhs;
-                case SLASH -> lhs / rhs;
-                case GREATER -> lhs > rhs;
-                case GREATER_EQUAL -> lhs >= rhs;
-                case LESS -> lhs < rhs;
-                case LESS_EQUAL -> lhs <= rhs;
-                // Unreachable
-                default -> null;
-            };
+            return arithmetic(operator, lhs, rhs);
         }
 
-        throw new RuntimeError(expr.operator(), "Operands must be numbers");
+        throw new RuntimeError(operator, "Operands must be numbers");
+    }
+
+    private static Object arithmetic(Token operator, double lhs, double rhs) {
+        return switch (operator.type()) {
+            case PLUS -> box(lhs + rhs);
+            case MINUS -> box(lhs - rhs);
+            case STAR -> box(lhs * rhs);
+            case SLASH -> box(lhs / rhs);
+            case GREATER -> lhs > rhs;
+            case GREATER_EQUAL -> lhs >= rhs;
+            case LESS -> lhs < rhs;
+            case LESS_EQUAL -> lhs <= rhs;
+            // Unreachable
+            default -> null;
+        };
+    }
+
+    /**
+     * Boxes the result of an arithmetic operator, which allocates a new {@link Double} every time.
+     */
+    private static Double box(double number) {
+        if (Stats.ENABLED) {
+            Stats.boxedNumbers++;
+        }
+        return number;
     }
 
     @Override
     public Object visitCall(Expr.Call expr) {
-        var callee = evaluate(expr.callee());
+        enterCall(expr.paren());
+        try {
+            // Every Java frame that a Lox call nests shortens the recursion that fits on the thread stack, so Lox
+            // functions are invoked right here, and only the operands are evaluated by methods that return first
+
+            Object callee;
+            LoxInstance self = null;
+            if (expr.callee() instanceof Expr.Get get) {
+                var instance = receiver(get);
 
-        if (callee instanceof LoxCallable callable) {
-            var arguments = new ArrayList<>();
-            for (var argument : expr.arguments()) {
-                arguments.add(evaluate(argument));
+                // Calling a method through an inline cache avoids binding it to the instance first
+                var method = get.cache().method(instance, get.name());
+                callee = method != null ? method : get.cache().get(instance, get.name());
+                self = method != null ? instance : null;
+            } else {
+                callee = evaluate(expr.callee());
+            }
+
+            if (!(callee instanceof LoxFunction function)) {
+                return call(expr, callee);
+            }
+            if (self == null) {
+                self = function.receiver();
             }
 
-            if (arguments.size() != callable.arity()) {
-                throw new RuntimeError(
-                        expr.paren(), "Expected %d arguments but got %d".formatted(callable.arity(), arguments.size()));
+            // Arguments are passed directly to the fixed-arity entry points, so common calls allocate no argument list
+
+            var arguments = expr.arguments();
+            switch (arguments.size()) {
+                case 0 -> {
+                    checkArity(expr, function, 0);
+                    return function.invoke0(this, self);
+                }
+                case 1 -> {
+                    var a = evaluate(arguments.get(0));
+                    checkArity(expr, function, 1);
+                    return function.invoke1(this, self, a);
+                }
+                case 2 -> {
+                    var a = evaluate(arguments.get(0));
+                    var b = evaluate(arguments.get(1));
+                    checkArity(expr, function, 2);
+                    return function.invoke2(this, self, a, b);
+                }
+                case 3 -> {
+                    var a = evaluate(arguments.get(0));
+                    var b = evaluate(arguments.get(1));
+                    var c = evaluate(arguments.get(2));
+                    checkArity(expr, function, 3);
+                    return function.invoke3(this, self, a, b, c);
+                }
+                case 4 -> {
+                    var a = evaluate(arguments.get(0));
+                    var b = evaluate(arguments.get(1));
+                    var c = evaluate(arguments.get(2));
+                    var d = evaluate(arguments.get(3));
+                    checkArity(expr, function, 4);
+                    return function.invoke4(this, self, a, b, c, d);
+                }
+                default -> {
+                    return function.invokeN(this, self, evaluateArguments(expr, function));
+                }
+            }
+        } catch (RuntimeError runtimeError) {
+            runtimeError.call(expr.paren());
+            throw runtimeError;
+        } catch (StackOverflowError stackOverflowError) {
+            // Recording the traceback this close to the end of the thread stack would overflow it again, so the error
+            // unwinds untouched until enough calls have returned to make room, or until it reaches the outermost call,
+            // and only then becomes a runtime error. The calls it unwound until then are counted but not named.
+            if (overflowDepth == 0) {
+                overflowDepth = depth;
+            }
+            if (depth > overflowDepth - OVERFLOW_HEADROOM && depth > rootDepth + 1) {
+                throw stackOverflowError;
             }
 
-            return callable.call(this, arguments);
+            var runtimeError = new RuntimeError(expr.paren(), "Stack overflow");
+            runtimeError.omit(overflowDepth - depth + 1);
+            overflowDepth = 0;
+            throw runtimeError;
+        } finally {
+            exitCall();
+        }
+    }
+
+    private LoxInstance receiver(Expr.Get get) {
+        if (!(evaluate(get.object()) instanceof LoxInstance instance)) {
+            throw new RuntimeError(get.name(), "Only instances have properties");
+        }
+        return instance;
+    }
+
+    /**
+     * Calls anything but a Lox function, such as a native function or a class.
+     */
+    private Object call(Expr.Call expr, Object callee) {
+        if (!(callee instanceof LoxCallable callable)) {
+            throw new RuntimeError(expr.paren(), "Can only call functions and classes");
         }
 
-        throw new RuntimeError(expr.paren(), "Can only call functions and classes");
+        var function = LoxInvocable.adapt(callable);
+        var arguments = expr.arguments();
+
+        try {
+            return switch (arguments.size()) {
+                case 0 -> {
+                    checkArity(expr, function, 0);
+                    yield function.call0(this);
+                }
+                case 1 -> {
+                    var a = evaluate(arguments.get(0));
+                    checkArity(expr, function, 1);
+                    yield function.call1(this, a);
+                }
+                case 2 -> {
+                    var a = evaluate(arguments.get(0));
+                    var b = evaluate(arguments.get(1));
+                    checkArity(expr, function, 2);
+                    yield function.call2(this, a, b);
+                }
+                case 3 -> {
+                    var a = evaluate(arguments.get(0));
+                    var b = evaluate(arguments.get(1));
+                    var c = evaluate(arguments.get(2));
+                    checkArity(expr, function, 3);
+                    yield function.call3(this, a, b, c);
+                }
+                case 4 -> {
+                    var a = evaluate(arguments.get(0));
+                    var b = evaluate(arguments.get(1));
+                    var c = evaluate(arguments.get(2));
+                    var d = evaluate(arguments.get(3));
+                    checkArity(expr, function, 4);
+                    yield function.call4(this, a, b, c, d);
+                }
+                default -> function.callN(this, evaluateArguments(expr, function));
+            };
+        } catch (NativeError nativeError) {
+            throw new RuntimeError(expr.paren(), nativeError.getMessage(), nativeError.getCause());
+        }
+    }
+
+    private Object[] evaluateArguments(Expr.Call expr, LoxCallable callable) {
+        var arguments = expr.arguments();
+        var values = new Object[arguments.size()];
+        for (var i = 0; i < values.length; i++) {
+            values[i] = evaluate(arguments.get(i));
+        }
+        checkArity(expr, callable, values.length);
+        return values;
+    }
+
+    static void checkArity(Expr.Call expr, LoxCallable callable, int count) {
+        if (count != callable.arity()) {
+            throw new RuntimeError(
+                    expr.paren(), "Expected %d arguments but got %d".formatted(callable.arity(), count));
+        }
+    }
+
+    @Override
+    public Object visitGet(Expr.Get expr) {
+        if (evaluate(expr.object()) instanceof LoxInstance instance) {
+            return expr.cache().get(instance, expr.name());
+        }
+
+        throw new RuntimeError(expr.name(), "Only instances have properties");
     }
 
     @Override
@@ -262,6 +951,43 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
         return evaluate(expr.expression());
     }
 
+    @Override
+    public Object visitIndex(Expr.Index expr) {
+        var object = evaluate(expr.object());
+        var index = evaluate(expr.index());
+        return index(expr.bracket(), object, index);
+    }
+
+    static Object index(Token bracket, Object object, Object index) {
+        if (object instanceof LoxList list) {
+            return list.get(checkIndex(bracket, list, index));
+        }
+        if (object instanceof LoxMap map) {
+            return map.get(index);
+        }
+
+        throw new RuntimeError(bracket, "Only lists and maps can be indexed");
+    }
+
+    @Override
+    public Object visitListLiteral(Expr.ListLiteral expr) {
+        var list = new LoxList(expr.elements().size());
+        for (var element : expr.elements()) {
+            list.add(evaluate(element));
+        }
+        return list;
+    }
+
+    private static int checkIndex(Token bracket, LoxList list, Object index) {
+        if (!(index instanceof Double number) || number != Math.rint(number)) {
+            throw new RuntimeError(bracket, "List index must be an integer");
+        }
+        if (number < 0 || number >= list.size()) {
+            throw new RuntimeError(bracket, "List index out of range");
+        }
+        return number.intValue();
+    }
+
     @Override
     public Object visitLiteral(Expr.Literal expr) {
         return expr.value();
@@ -284,17 +1010,84 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
         return evaluate(expr.right());
     }
 
+    @Override
+    public Object visitSet(Expr.Set expr) {
+        if (!(evaluate(expr.object()) instanceof LoxInstance instance)) {
+            throw new RuntimeError(expr.name(), "Only instances have fields");
+        }
+
+        var value = evaluate(expr.value());
+        expr.cache().set(instance, expr.name(), value);
+        return value;
+    }
+
+    @Override
+    public Object visitSetIndex(Expr.SetIndex expr) {
+        var object = evaluate(expr.object());
+        var index = evaluate(expr.index());
+        var value = evaluate(expr.value());
+        return setIndex(expr.bracket(), object, index, value);
+    }
+
+    static Object setIndex(Token bracket, Object object, Object index, Object value) {
+        if (object instanceof LoxList list) {
+            list.set(checkIndex(bracket, list, index), value);
+            return value;
+        }
+        if (object instanceof LoxMap map) {
+            map.put(index, value);
+            return value;
+        }
+
+        throw new RuntimeError(bracket, "Only lists and maps can be indexed");
+    }
+
+    @Override
+    public Object visitSuper(Expr.Super expr) {
+        var superclass = (LoxClass) load(expr.superclass(), expr.keyword());
+        var instance = (LoxInstance) load(expr.instance(), expr.keyword());
+
+        var method = superclass.findMethod(expr.method().lexeme());
+        if (method == null) {
+            throw new RuntimeError(expr.method(), "Undefined property '%s'".formatted(expr.method().lexeme()));
+        }
+
+        return method.bind(instance);
+    }
+
+    @Override
+    public Object visitThis(Expr.This expr) {
+        return load(expr.slot(), expr.keyword());
+    }
+
     @Override
     public Object visitUnary(Expr.Unary expr) {
-        var right = evaluate(expr.right());
+        return unary(expr, evaluate(expr.right()));
+    }
+
+    /**
+     * Applies a unary operator, skipping the operand type check that {@link com.khl.lox.TypeInference} has proven
+     * unnecessary.
+     *
+     * @param expr  the AST node of the operator
+     * @param right the operand
+     * @return the result
+     */
+    static Object unary(Expr.Unary expr, Object right) {
+        if (expr.operands().kind == Operands.Kind.NUMBERS) {
+            return box(-(Double) right);
+        }
+        return unary(expr.operator(), right);
+    }
 
-        return switch (expr.operator().type()) {
+    static Object unary(Token operator, Object right) {
+        return switch (operator.type()) {
             case BANG -> !isTruthy(right);
             case MINUS -> {
                 if (right instanceof Double rhs) {
-                    yield -rhs;
+                    yield box(-rhs);
                 }
-                throw new RuntimeError(expr.operator(), "Operand must be a number");
+                throw new RuntimeError(operator, "Operand must be a number");
             }
             // Unreachable
             default -> null;
@@ -303,6 +1096,6 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor {
 
     @Override
     public Object visitVariable(Expr.Variable expr) {
-        return environment.get(expr.name());
+        return load(expr.slot(), expr.name());
     }
 }
\ No newline at end of file
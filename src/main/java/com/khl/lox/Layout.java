@@ -0,0 +1,47 @@
+package com.khl.lox;
+
+/**
+ * The frame layout of a Lox function (or of a top-level script), as determined by the {@link com.khl.lox.Resolver}.
+ *
+ * @author Kevin Lee
+ */
+final class Layout {
+    private static final Slot[] NO_SLOTS = new Slot[0];
+
+    /**
+     * The number of local variable slots in a frame.
+     */
+    int size;
+
+    /**
+     * The slots that the parameters are stored in when the function is called.
+     */
+    Slot[] parameters = NO_SLOTS;
+
+    /**
+     * The variables captured by a closure, described by their slot in the frame that creates the closure (either a
+     * {@link com.khl.lox.Slot.Kind#CELL} or an {@link com.khl.lox.Slot.Kind#UPVALUE}).
+     */
+    Slot[] captures = NO_SLOTS;
+
+    /**
+     * The slot that {@code this} is stored in when a method is called, or {@code null} if this is not a method.
+     */
+    Slot receiver;
+
+    /**
+     * The slots of the captured local functions declared directly in the body, whose cells are created when the frame
+     * is entered so that closures created before a declaration can already capture them.
+     */
+    Slot[] cells = NO_SLOTS;
+
+    /**
+     * Whether this is a class initializer, which always returns its receiver.
+     */
+    boolean initializer;
+
+    /**
+     * Whether the result of the function only depends on its arguments, as determined by {@link com.khl.lox.Purity}.
+     */
+    boolean pure;
+}
\ No newline at end of file
@@ -0,0 +1,12 @@
+package com.khl.lox;
+
+/**
+ * A runtime error raised when a script exceeds one of its {@link com.khl.lox.Limits} or is cancelled.
+ *
+ * @author Kevin Lee
+ */
+public class LimitError extends RuntimeError {
+    public LimitError(Token token, String message) {
+        super(token, message);
+    }
+}
\ No newline at end of file
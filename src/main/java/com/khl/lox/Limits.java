@@ -0,0 +1,64 @@
+package com.khl.lox;
+
+/**
+ * The resource limits of a single execution of a Lox script.
+ *
+ * <p>
+ * Steps are counted at safepoints, which are loop iterations and calls. Allocated bytes are measured per thread by the
+ * JVM and are only approximate; allocations made on virtual threads, such as by tasks started with {@code spawn}, are
+ * not measured at all. The stack limit only applies to scripts that run on the heap-managed call stack of a
+ * {@link com.khl.lox.StackMachine}, where it is also capped by the size of the heap. Any limit can be left at its
+ * maximum value to disable it.
+ * </p>
+ *
+ * @param steps  the maximum number of steps
+ * @param millis the maximum wall-clock time in milliseconds
+ * @param depth  the maximum call depth
+ * @param bytes  the maximum number of bytes allocated
+ * @param stack  the maximum number of bytes taken by the heap-managed call stack
+ * @author Kevin Lee
+ */
+record Limits(long steps, long millis, int depth, long bytes, long stack) {
+    static final Limits NONE =
+            new Limits(Long.MAX_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+
+    /**
+     * Checks whether a command-line option sets a limit.
+     *
+     * @param option the option
+     * @return whether {@link #with} accepts the option
+     */
+    static boolean isOption(String option) {
+        return switch (option) {
+            case "--max-steps", "--max-time", "--max-depth", "--max-memory", "--max-stack" -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Returns these limits with one of them changed by a command-line option.
+     *
+     * @param option the option
+     * @param value  the value of the option
+     * @return the new limits
+     */
+    Limits with(String option, String value) {
+        var limit = Long.parseLong(value);
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit '%s' must be positive".formatted(option));
+        }
+
+        return switch (option) {
+            case "--max-steps" -> new Limits(limit, millis, depth, bytes, stack);
+            case "--max-time" -> new Limits(steps, limit, depth, bytes, stack);
+            case "--max-depth" -> new Limits(steps, millis, (int) Math.min(limit, Integer.MAX_VALUE), bytes, stack);
+            case "--max-memory" -> new Limits(steps, millis, depth, limit, stack);
+            case "--max-stack" -> new Limits(steps, millis, depth, bytes, limit);
+            default -> throw new IllegalArgumentException("Unknown limit '%s'".formatted(option));
+        };
+    }
+
+    boolean isMemoryLimited() {
+        return bytes != Long.MAX_VALUE;
+    }
+}
\ No newline at end of file
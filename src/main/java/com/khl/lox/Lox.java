@@ -1,6 +1,7 @@
 package com.khl.lox;
 
 import org.jline.reader.EndOfFileException;
+import org.jline.reader.LineReader;
 import org.jline.reader.LineReaderBuilder;
 import org.jline.reader.UserInterruptException;
 import org.jline.terminal.TerminalBuilder;
@@ -8,6 +9,8 @@ import org.jline.terminal.TerminalBuilder;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 
 /**
@@ -16,86 +19,219 @@ import java.nio.file.Paths;
  * @author Kevin Lee
  */
 public class Lox {
-    private static final Interpreter interpreter = new Interpreter(System.out);
-    private static boolean hadCompileError;
-    private static boolean hadRuntimeError;
+    private static final String USAGE = """
+            Usage: jlox [--memoize] [--deep] [--async-output] [--infer-types] [--snapshot file] [--save-snapshot file]
+                        [--stats] [limits] [script]
+                   jlox --batch <directory|list> [--jobs n] [--output directory] [limits]
+                   jlox --server [--socket path | --port n] [limits]
+
+            Limits: --max-steps n, --max-time ms, --max-depth n, --max-memory bytes, --max-stack bytes""";
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.err.println("Usage: jlox [script]");
-            System.exit(64);
+        if (args.length > 0 && args[0].equals("--batch")) {
+            runBatch(args);
+            return;
         }
 
-        if (args.length == 0) {
-            runREPL();
-        } else {
-            runFile(args[0]);
+        if (args.length > 0 && args[0].equals("--server")) {
+            runServer(args);
+            return;
         }
-    }
 
-    private static void runFile(String filename) throws IOException {
-        runInterpreter(Files.readString(Paths.get(filename), StandardCharsets.UTF_8));
+        var memoize = false;
+        var heapStack = false;
+        var async = false;
+        var inferTypes = false;
+        var limits = Limits.NONE;
+        Path snapshot = null;
+        Path savedSnapshot = null;
+
+        var i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i++) {
+            if (args[i].equals("--memoize")) {
+                memoize = true;
+            } else if (args[i].equals("--deep")) {
+                heapStack = true;
+            } else if (args[i].equals("--async-output")) {
+                async = true;
+            } else if (args[i].equals("--infer-types")) {
+                inferTypes = true;
+            } else if (args[i].equals("--stats")) {
+                // Counters are switched on for good when they are first used, so this has to happen before then
+                System.setProperty("lox.stats", "true");
+            } else if (args[i].equals("--snapshot") && i + 1 < args.length) {
+                snapshot = Paths.get(args[++i]);
+            } else if (args[i].equals("--save-snapshot") && i + 1 < args.length) {
+                savedSnapshot = Paths.get(args[++i]);
+            } else if (Limits.isOption(args[i]) && i + 1 < args.length) {
+                limits = withLimit(limits, args[i], args[++i]);
+            } else {
+                System.err.println(USAGE);
+                System.exit(Session.EXIT_USAGE);
+            }
+        }
 
-        if (hadCompileError) {
-            System.exit(65);
+        if (args.length - i > 1) {
+            System.err.println(USAGE);
+            System.exit(Session.EXIT_USAGE);
         }
-        if (hadRuntimeError) {
-            System.exit(70);
+
+        // Any later line of the REPL could redefine the globals that the purity of a function relies on
+        var automatic = memoize && i < args.length;
+
+        var session = new Session(Output.standard(async), System.err, automatic, heapStack, inferTypes, limits);
+        if (snapshot != null) {
+            restoreSnapshot(session, snapshot);
         }
-    }
 
-    private static void runREPL() throws IOException {
-        try (var terminal = TerminalBuilder.builder().build()) {
-            var lineReader = LineReaderBuilder.builder()
-                    .terminal(terminal)
-                    .build();
+        if (i == args.length) {
+            runREPL(session);
+        } else {
+            runFile(session, args[i]);
+        }
 
-            while (true) {
-                try {
-                    runInterpreter(lineReader.readLine(">>> "));
+        if (savedSnapshot != null) {
+            saveSnapshot(session, savedSnapshot);
+        }
+    }
 
-                    hadCompileError = false;
-                    hadRuntimeError = false;
-                } catch (EndOfFileException endOfFileException) {
-                    break;
-                } catch (UserInterruptException userInterruptException) {
-                    System.exit(1);
+    private static void runBatch(String[] args) throws IOException {
+        if (args.length < 2 || args.length % 2 != 0) {
+            System.err.println(USAGE);
+            System.exit(Session.EXIT_USAGE);
+        }
+
+        var jobs = Runtime.getRuntime().availableProcessors();
+        Path outputDirectory = null;
+        var limits = Limits.NONE;
+
+        for (var i = 2; i < args.length; i += 2) {
+            switch (args[i]) {
+                case "--jobs" -> jobs = intOption(args[i], args[i + 1], 1, Integer.MAX_VALUE);
+                case "--output" -> outputDirectory = Paths.get(args[i + 1]);
+                default -> {
+                    if (!Limits.isOption(args[i])) {
+                        System.err.println(USAGE);
+                        System.exit(Session.EXIT_USAGE);
+                    }
+                    limits = withLimit(limits, args[i], args[i + 1]);
                 }
             }
         }
+
+        var scripts = BatchRunner.collectScripts(Paths.get(args[1]));
+        var status = new BatchRunner(jobs, outputDirectory, limits).run(scripts, System.out);
+
+        System.exit(status);
     }
 
-    private static void runInterpreter(String source) {
-        var result = Parser.parse(source);
+    private static void runServer(String[] args) {
+        if (args.length % 2 != 1) {
+            System.err.println(USAGE);
+            System.exit(Session.EXIT_USAGE);
+        }
 
-        for (var error : result.errors()) {
-            var token = error.token();
+        var daemon = Daemon.unix(Daemon.defaultSocket());
+        var limits = Limits.NONE;
+
+        for (var i = 1; i < args.length; i += 2) {
+            switch (args[i]) {
+                case "--socket" -> daemon = Daemon.unix(Paths.get(args[i + 1]));
+                case "--port" -> daemon = Daemon.tcp(intOption(args[i], args[i + 1], 0, 65535));
+                default -> {
+                    if (!Limits.isOption(args[i])) {
+                        System.err.println(USAGE);
+                        System.exit(Session.EXIT_USAGE);
+                    }
+                    limits = withLimit(limits, args[i], args[i + 1]);
+                }
+            }
+        }
 
-            switch (token.type()) {
-                case EOF -> reportCompileError(token.line(), " at end", error.message());
-                case ERROR -> reportCompileError(token.line(), "", error.message());
-                default -> reportCompileError(token.line(), String.format(" at '%s'", token.lexeme()), error.message());
+        try {
+            daemon.serve(limits);
+        } catch (IOException ioException) {
+            System.err.printf("Cannot start daemon: %s%n", ioException.getMessage());
+            System.exit(Session.EXIT_IO_ERROR);
+        }
+    }
+
+    private static Limits withLimit(Limits limits, String option, String value) {
+        try {
+            return limits.with(option, value);
+        } catch (IllegalArgumentException illegalArgumentException) {
+            System.err.printf("Invalid value '%s' for %s%n", value, option);
+            System.err.println(USAGE);
+            System.exit(Session.EXIT_USAGE);
+            return limits;
+        }
+    }
+
+    private static int intOption(String option, String value, int min, int max) {
+        try {
+            var number = Integer.parseInt(value);
+            if (number >= min && number <= max) {
+                return number;
             }
+        } catch (NumberFormatException numberFormatException) {
+            // Reported the same way as a number out of range
         }
 
-        if (hadCompileError) {
-            return;
+        System.err.printf("Invalid value '%s' for %s%n", value, option);
+        System.err.println(USAGE);
+        System.exit(Session.EXIT_USAGE);
+        return min;
+    }
+
+    private static void restoreSnapshot(Session session, Path snapshot) {
+        try {
+            session.restore(snapshot);
+        } catch (IOException ioException) {
+            var reason = ioException instanceof NoSuchFileException ? "No such file" : ioException.getMessage();
+            System.err.printf("Cannot restore snapshot '%s': %s%n", snapshot, reason);
+            System.exit(Session.EXIT_IO_ERROR);
         }
+    }
 
+    private static void saveSnapshot(Session session, Path snapshot) {
         try {
-            interpreter.interpret(result.statements());
-        } catch (RuntimeError runtimeError) {
-            reportRuntimeError(runtimeError.getLine(), runtimeError.getMessage());
+            session.save(snapshot);
+        } catch (IOException ioException) {
+            System.err.printf("Cannot save snapshot '%s': %s%n", snapshot, ioException.getMessage());
+            System.exit(Session.EXIT_IO_ERROR);
         }
     }
 
-    private static void reportCompileError(int line, String where, String message) {
-        hadCompileError = true;
-        System.err.printf("[line %d] Error%s: %s.\n", line, where, message);
+    private static void runFile(Session session, String filename) throws IOException {
+        var path = Paths.get(filename).toAbsolutePath();
+        var status = session.run(Files.readString(path, StandardCharsets.UTF_8), path.getParent());
+        session.reportStatistics();
+
+        if (status != Session.EXIT_OK) {
+            System.exit(status);
+        }
     }
 
-    private static void reportRuntimeError(int line, String message) {
-        hadRuntimeError = true;
-        System.err.printf("%s.%n[line %d]%n", message, line);
+    private static void runREPL(Session session) throws IOException {
+        try (var terminal = TerminalBuilder.builder().build()) {
+            var lineReader = LineReaderBuilder.builder()
+                    .terminal(terminal)
+                    .parser(new ReplParser())
+                    .variable(LineReader.SECONDARY_PROMPT_PATTERN, "... ")
+                    .build();
+
+            while (true) {
+                try {
+                    session.run(lineReader.readLine(">>> "));
+                } catch (EndOfFileException endOfFileException) {
+                    break;
+                } catch (UserInterruptException userInterruptException) {
+                    session.reportStatistics();
+                    System.exit(1);
+                }
+            }
+        }
+
+        session.reportStatistics();
     }
 }
\ No newline at end of file
@@ -0,0 +1,51 @@
+package com.khl.lox;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+
+/**
+ * A bounded channel for passing values between Lox tasks.
+ *
+ * <p>
+ * Sending blocks while the channel is full and receiving blocks while it is empty. A channel with a capacity of zero
+ * has no buffer at all, so every send waits for a matching receive.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+final class LoxChannel {
+    LoxChannel(int capacity) {
+        this.queue = capacity == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(capacity);
+    }
+
+    void send(Object value) {
+        try {
+            queue.put(value == null ? NIL : value);
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw new NativeError("Interrupted while sending to a channel");
+        }
+    }
+
+    Object receive() {
+        try {
+            var value = queue.take();
+            return value == NIL ? null : value;
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw new NativeError("Interrupted while receiving from a channel");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<channel>";
+    }
+
+    // Blocking queues cannot hold null, so nil travels through the channel as a sentinel
+
+    private static final Object NIL = new Object();
+
+    private final BlockingQueue<Object> queue;
+}
\ No newline at end of file
@@ -0,0 +1,148 @@
+package com.khl.lox;
+
+import java.util.Map;
+
+/**
+ * A Lox class object.
+ *
+ * @author Kevin Lee
+ */
+final class LoxClass implements LoxInvocable {
+    LoxClass(String name, LoxClass superclass, Map<String, LoxFunction> methods) {
+        this.name = name;
+        this.superclass = superclass;
+        this.methods = Map.copyOf(methods);
+        this.shape = new Shape(this);
+        this.initializer = findMethod("init");
+    }
+
+    String name() {
+        return name;
+    }
+
+    LoxClass superclass() {
+        return superclass;
+    }
+
+    /**
+     * Returns the methods declared by this class itself, not including those it inherits.
+     *
+     * @return the methods by name
+     */
+    Map<String, LoxFunction> methods() {
+        return methods;
+    }
+
+    /**
+     * Returns the root shape shared by every new instance of this class.
+     *
+     * @return the root shape
+     */
+    Shape shape() {
+        return shape;
+    }
+
+    /**
+     * Returns the {@code init} method of this class or of its superclasses.
+     *
+     * @return the initializer, or {@code null} if there is none
+     */
+    LoxFunction initializer() {
+        return initializer;
+    }
+
+    /**
+     * Looks up a method of this class or of its superclasses.
+     *
+     * @param name the name of the method
+     * @return the method, or {@code null} if there is no such method
+     */
+    LoxFunction findMethod(String name) {
+        for (var klass = this; klass != null; klass = klass.superclass) {
+            var method = klass.methods.get(name);
+            if (method != null) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of field slots to preallocate for a new instance, which follows the largest instance seen so
+     * far so that instances of a class typically never have to grow.
+     *
+     * @return the number of field slots
+     */
+    int fieldCapacity() {
+        return fieldCapacity;
+    }
+
+    void growFieldCapacity(int capacity) {
+        if (capacity > fieldCapacity) {
+            fieldCapacity = capacity;
+        }
+    }
+
+    @Override
+    public int arity() {
+        return initializer == null ? 0 : initializer.arity();
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        var instance = new LoxInstance(this);
+        if (initializer != null) {
+            initializer.invoke0(interpreter, instance);
+        }
+        return instance;
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        var instance = new LoxInstance(this);
+        initializer.invoke1(interpreter, instance, a);
+        return instance;
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        var instance = new LoxInstance(this);
+        initializer.invoke2(interpreter, instance, a, b);
+        return instance;
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        var instance = new LoxInstance(this);
+        initializer.invoke3(interpreter, instance, a, b, c);
+        return instance;
+    }
+
+    @Override
+    public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        var instance = new LoxInstance(this);
+        initializer.invoke4(interpreter, instance, a, b, c, d);
+        return instance;
+    }
+
+    @Override
+    public Object callN(Interpreter interpreter, Object[] arguments) {
+        var instance = new LoxInstance(this);
+        if (initializer != null) {
+            initializer.invokeN(interpreter, instance, arguments);
+        }
+        return instance;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private final String name;
+    private final LoxClass superclass;
+    private final Map<String, LoxFunction> methods;
+    private final Shape shape;
+    private final LoxFunction initializer;
+    private int fieldCapacity;
+}
\ No newline at end of file
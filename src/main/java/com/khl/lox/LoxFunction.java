@@ -1,36 +1,147 @@
 package com.khl.lox;
 
-import java.util.List;
-
 /**
  * A Lox function object.
  *
+ * <p>
+ * The closure only holds the cells of the variables that the function body references from enclosing functions, as
+ * determined by the {@link com.khl.lox.Resolver}.
+ * </p>
+ *
  * @author Kevin Lee
  */
-record LoxFunction(Interpreter.Environment closure, Stmt.Function declaration) implements LoxCallable {
+record LoxFunction(Interpreter.Cell[] closure, Stmt.Function declaration, LoxInstance receiver)
+        implements LoxInvocable {
+    /**
+     * Binds this method to an instance.
+     *
+     * @param instance the instance that {@code this} refers to
+     * @return the bound method
+     */
+    LoxFunction bind(LoxInstance instance) {
+        return new LoxFunction(closure, declaration, instance);
+    }
+
     @Override
     public int arity() {
         return declaration.parameters().size();
     }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments) {
-        var environment = new Interpreter.Environment(closure);
+    public Object call0(Interpreter interpreter) {
+        return invoke0(interpreter, receiver);
+    }
 
-        for (var i = 0; i < declaration.parameters().size(); i++) {
-            environment.define(declaration.parameters().get(i).lexeme(), arguments.get(i));
-        }
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        return invoke1(interpreter, receiver, a);
+    }
 
-        try {
-            interpreter.executeBlock(environment, declaration.body());
-            return null;
-        } catch (LoxReturn loxReturn) {
-            return loxReturn.getValue();
-        }
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        return invoke2(interpreter, receiver, a, b);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return invoke3(interpreter, receiver, a, b, c);
+    }
+
+    @Override
+    public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        return invoke4(interpreter, receiver, a, b, c, d);
+    }
+
+    @Override
+    public Object callN(Interpreter interpreter, Object[] arguments) {
+        return invokeN(interpreter, receiver, arguments);
     }
 
     @Override
     public String toString() {
         return "<fn %s>".formatted(declaration.name().lexeme());
     }
+
+    //
+    // Calls with an explicit receiver, which let method calls skip binding
+    //
+
+    Object invoke0(Interpreter interpreter, LoxInstance self) {
+        return invoke(interpreter, enter(interpreter, self), self);
+    }
+
+    Object invoke1(Interpreter interpreter, LoxInstance self, Object a) {
+        var parameters = declaration.layout().parameters;
+        var frame = enter(interpreter, self);
+
+        interpreter.initialize(frame, parameters[0], a);
+        return invoke(interpreter, frame, self);
+    }
+
+    Object invoke2(Interpreter interpreter, LoxInstance self, Object a, Object b) {
+        var parameters = declaration.layout().parameters;
+        var frame = enter(interpreter, self);
+
+        interpreter.initialize(frame, parameters[0], a);
+        interpreter.initialize(frame, parameters[1], b);
+        return invoke(interpreter, frame, self);
+    }
+
+    Object invoke3(Interpreter interpreter, LoxInstance self, Object a, Object b, Object c) {
+        var parameters = declaration.layout().parameters;
+        var frame = enter(interpreter, self);
+
+        interpreter.initialize(frame, parameters[0], a);
+        interpreter.initialize(frame, parameters[1], b);
+        interpreter.initialize(frame, parameters[2], c);
+        return invoke(interpreter, frame, self);
+    }
+
+    Object invoke4(Interpreter interpreter, LoxInstance self, Object a, Object b, Object c, Object d) {
+        var parameters = declaration.layout().parameters;
+        var frame = enter(interpreter, self);
+
+        interpreter.initialize(frame, parameters[0], a);
+        interpreter.initialize(frame, parameters[1], b);
+        interpreter.initialize(frame, parameters[2], c);
+        interpreter.initialize(frame, parameters[3], d);
+        return invoke(interpreter, frame, self);
+    }
+
+    Object invokeN(Interpreter interpreter, LoxInstance self, Object[] arguments) {
+        var parameters = declaration.layout().parameters;
+        var frame = enter(interpreter, self);
+
+        for (var i = 0; i < parameters.length; i++) {
+            interpreter.initialize(frame, parameters[i], arguments[i]);
+        }
+        return invoke(interpreter, frame, self);
+    }
+
+    private int enter(Interpreter interpreter, LoxInstance self) {
+        var layout = declaration.layout();
+        var frame = interpreter.reserveFrame(layout.size);
+
+        if (layout.receiver != null) {
+            interpreter.initialize(frame, layout.receiver, self);
+        }
+        for (var cell : layout.cells) {
+            interpreter.initialize(frame, cell, null);
+        }
+        return frame;
+    }
+
+    private Object invoke(Interpreter interpreter, int frame, LoxInstance self) {
+        var layout = declaration.layout();
+
+        try {
+            interpreter.executeFrame(frame, layout.size, closure, declaration.body());
+            return layout.initializer ? self : null;
+        } catch (LoxReturn loxReturn) {
+            return layout.initializer ? self : loxReturn.getValue();
+        } catch (RuntimeError runtimeError) {
+            runtimeError.leave(declaration.name().lexeme());
+            throw runtimeError;
+        }
+    }
 }
\ No newline at end of file
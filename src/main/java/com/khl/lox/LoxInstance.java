@@ -0,0 +1,57 @@
+package com.khl.lox;
+
+import java.util.Arrays;
+
+/**
+ * A Lox class instance.
+ *
+ * <p>
+ * Field values are stored in an array, at the indices given by the {@link com.khl.lox.Shape} of the instance.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+final class LoxInstance {
+    LoxInstance(LoxClass klass) {
+        this.shape = klass.shape();
+        this.fields = new Object[klass.fieldCapacity()];
+    }
+
+    LoxClass klass() {
+        return shape.owner();
+    }
+
+    Shape shape() {
+        return shape;
+    }
+
+    Object field(int index) {
+        return fields[index];
+    }
+
+    /**
+     * Stores a field value, moving the instance to a new shape if the field is being added.
+     *
+     * @param newShape the shape of the instance after the store
+     * @param index    the index of the field in the new shape
+     * @param value    the field value
+     */
+    void store(Shape newShape, int index, Object value) {
+        if (newShape != shape) {
+            if (index >= fields.length) {
+                fields = Arrays.copyOf(fields, Math.max(4, fields.length * 2));
+                shape.owner().growFieldCapacity(fields.length);
+            }
+            shape = newShape;
+        }
+        fields[index] = value;
+    }
+
+    @Override
+    public String toString() {
+        return "%s instance".formatted(klass().name());
+    }
+
+    private Shape shape;
+    private Object[] fields;
+}
\ No newline at end of file
@@ -0,0 +1,97 @@
+package com.khl.lox;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A Lox callable with fixed-arity entry points.
+ *
+ * <p>
+ * Calls with up to four arguments are dispatched to {@code call0} through {@code call4}, which receive the arguments
+ * directly instead of collected into a list. Calls with more arguments go through {@link #callN}. Only the entry point
+ * matching {@link #arity()} is ever invoked by the interpreter; the others default to {@link #callN}.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+public interface LoxInvocable extends LoxCallable {
+    /**
+     * Returns a fixed-arity view of a callable, adapting plain {@link com.khl.lox.LoxCallable} implementations that
+     * only accept their arguments as a list.
+     *
+     * @param callable the callable
+     * @return the callable itself if it already has fixed-arity entry points, otherwise an adapter
+     */
+    static LoxInvocable adapt(LoxCallable callable) {
+        if (callable instanceof LoxInvocable invocable) {
+            return invocable;
+        }
+        return new Adapter(callable);
+    }
+
+    default Object call0(Interpreter interpreter) {
+        return callN(interpreter, new Object[0]);
+    }
+
+    default Object call1(Interpreter interpreter, Object a) {
+        return callN(interpreter, new Object[]{a});
+    }
+
+    default Object call2(Interpreter interpreter, Object a, Object b) {
+        return callN(interpreter, new Object[]{a, b});
+    }
+
+    default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return callN(interpreter, new Object[]{a, b, c});
+    }
+
+    default Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        return callN(interpreter, new Object[]{a, b, c, d});
+    }
+
+    /**
+     * Executes the callable given a Lox interpreter instance and any number of input arguments.
+     *
+     * @param interpreter the Lox interpreter instance
+     * @param arguments   the input arguments
+     * @return the result of the call
+     */
+    Object callN(Interpreter interpreter, Object[] arguments);
+
+    @Override
+    default Object call(Interpreter interpreter, List<Object> arguments) {
+        return switch (arguments.size()) {
+            case 0 -> call0(interpreter);
+            case 1 -> call1(interpreter, arguments.get(0));
+            case 2 -> call2(interpreter, arguments.get(0), arguments.get(1));
+            case 3 -> call3(interpreter, arguments.get(0), arguments.get(1), arguments.get(2));
+            case 4 -> call4(interpreter, arguments.get(0), arguments.get(1), arguments.get(2), arguments.get(3));
+            default -> callN(interpreter, arguments.toArray());
+        };
+    }
+
+    /**
+     * Adapts a callable that only accepts its arguments as a list.
+     */
+    record Adapter(LoxCallable callable) implements LoxInvocable {
+        @Override
+        public int arity() {
+            return callable.arity();
+        }
+
+        @Override
+        public Object callN(Interpreter interpreter, Object[] arguments) {
+            return callable.call(interpreter, Arrays.asList(arguments));
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            return callable.call(interpreter, arguments);
+        }
+
+        @Override
+        public String toString() {
+            return callable.toString();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,190 @@
+package com.khl.lox;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A reader of the lines of a file, returned by {@code readLines}.
+ *
+ * <p>
+ * The file is memory-mapped rather than read, in windows of up to 1 GiB so that files of any size can be mapped, and
+ * each line is only decoded from UTF-8 once it is asked for. Reading a file line by line thus never holds more than a
+ * single line in memory, and the operating system pages the file in and out as needed. Newlines are found eight bytes
+ * at a time. A line ends at {@code \n}, and a {@code \r} right before it is dropped.
+ * </p>
+ *
+ * <p>
+ * The mapping lives on after the file is closed, so no file handle is held while the lines are read. Reading is
+ * synchronized, so tasks can share a reader to split the lines of a file between them.
+ * </p>
+ *
+ * <p>
+ * Reading a page of the mapping that is no longer part of the file, because the file has been truncated since it was
+ * mapped, makes the JVM raise an {@link InternalError}. Readers are invalidated before a script writes to the file
+ * they read, see {@link com.khl.lox.OpenFiles}, and a file truncated by another process is caught as it is read.
+ * Either way, reading on fails with a runtime error.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+final class LoxLines {
+    /**
+     * Maps a file for reading its lines.
+     *
+     * @param path the file
+     * @return the reader, positioned at the first line
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    static LoxLines open(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var size = channel.size();
+            var windows = new MappedByteBuffer[(int) ((size + WINDOW_SIZE - 1) >>> WINDOW_SHIFT)];
+
+            for (var i = 0; i < windows.length; i++) {
+                var start = (long) i << WINDOW_SHIFT;
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, size - start));
+                windows[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+
+            return new LoxLines(windows, size);
+        }
+    }
+
+    /**
+     * Reads the next line.
+     *
+     * @return the line without its line terminator, or {@code null} once every line has been read
+     */
+    synchronized String next() {
+        if (invalidated) {
+            throw new NativeError(CHANGED);
+        }
+        if (position >= size) {
+            // Dropping the windows lets the mappings be released without waiting for the reader itself to go away
+            windows = NO_WINDOWS;
+            return null;
+        }
+
+        long end;
+        byte[] line;
+        try {
+            end = find(position);
+            if (end - position > MAX_LINE_LENGTH) {
+                throw new NativeError("Line longer than %d bytes".formatted(MAX_LINE_LENGTH));
+            }
+            line = copy(position, (int) (end - position));
+        } catch (InternalError internalError) {
+            invalidate();
+            throw new NativeError(CHANGED);
+        }
+
+        var length = end - position;
+        position = end + 1;
+
+        if (length > 0 && line[(int) length - 1] == '\r') {
+            length--;
+        }
+        return new String(line, 0, (int) length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Makes reading on fail, since the file has changed.
+     */
+    synchronized void invalidate() {
+        invalidated = true;
+        windows = NO_WINDOWS;
+    }
+
+    @Override
+    public String toString() {
+        return "<lines>";
+    }
+
+    private static final int WINDOW_SHIFT = 30;
+    private static final long WINDOW_SIZE = 1L << WINDOW_SHIFT;
+    private static final int WINDOW_MASK = (int) (WINDOW_SIZE - 1);
+    private static final int MAX_LINE_LENGTH = Integer.MAX_VALUE - 8;
+    private static final MappedByteBuffer[] NO_WINDOWS = new MappedByteBuffer[0];
+    private static final String CHANGED = "File changed while it was being read";
+
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private MappedByteBuffer[] windows;
+    private final long size;
+    private long position;
+    private boolean invalidated;
+
+    // Lines are copied out of the mapping before they are decoded, into a buffer that is reused from line to line
+
+    private byte[] buffer = new byte[256];
+
+    private LoxLines(MappedByteBuffer[] windows, long size) {
+        this.windows = windows;
+        this.size = size;
+    }
+
+    /**
+     * Returns the offset of the first newline at or after an offset, or the size of the file if there is none.
+     */
+    private long find(long from) {
+        for (var index = (int) (from >>> WINDOW_SHIFT); index < windows.length; index++) {
+            var window = windows[index];
+            var start = index == from >>> WINDOW_SHIFT ? (int) from & WINDOW_MASK : 0;
+            var found = find(window, start);
+            if (found >= 0) {
+                return ((long) index << WINDOW_SHIFT) + found;
+            }
+        }
+        return size;
+    }
+
+    private static int find(MappedByteBuffer window, int start) {
+        var limit = window.limit();
+        var i = start;
+
+        // A byte of the word is a newline exactly where the word XOR'd with newlines has a zero byte, and the lowest
+        // such byte sets the lowest high bit of the expression below
+
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            var word = window.getLong(i) ^ NEWLINES;
+            var zeros = (word - LOW_BITS) & ~word & HIGH_BITS;
+            if (zeros != 0) {
+                return i + (Long.numberOfTrailingZeros(zeros) >>> 3);
+            }
+        }
+
+        for (; i < limit; i++) {
+            if (window.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copies a range of the file, which may span several windows, into the line buffer.
+     */
+    private byte[] copy(long from, int length) {
+        if (buffer.length < length) {
+            buffer = new byte[Math.max(length, buffer.length * 2)];
+        }
+
+        var copied = 0;
+        while (copied < length) {
+            var offset = from + copied;
+            var window = windows[(int) (offset >>> WINDOW_SHIFT)];
+            var start = (int) offset & WINDOW_MASK;
+            var count = Math.min(length - copied, window.limit() - start);
+            window.get(start, buffer, copied, count);
+            copied += count;
+        }
+        return buffer;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,142 @@
+package com.khl.lox;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * A Lox list.
+ *
+ * <p>
+ * As long as a list only ever holds numbers, its elements are stored unboxed in a {@code double[]}. The first time a
+ * value other than a number is stored, the list switches to an {@code Object[]} for good.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+final class LoxList {
+    LoxList() {
+        this(0);
+    }
+
+    LoxList(int capacity) {
+        this.numbers = capacity == 0 ? NO_NUMBERS : new double[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    Object get(int index) {
+        if (objects != null) {
+            return objects[index];
+        }
+        if (Stats.ENABLED) {
+            Stats.boxedNumbers++;
+        }
+        return numbers[index];
+    }
+
+    void set(int index, Object value) {
+        if (objects == null) {
+            if (value instanceof Double number) {
+                numbers[index] = number;
+                return;
+            }
+            generalize();
+        }
+        objects[index] = value;
+    }
+
+    void add(Object value) {
+        if (objects == null) {
+            if (value instanceof Double number) {
+                if (size == numbers.length) {
+                    numbers = Arrays.copyOf(numbers, grow(numbers.length));
+                }
+                numbers[size++] = number;
+                return;
+            }
+            generalize();
+        }
+
+        if (size == objects.length) {
+            objects = Arrays.copyOf(objects, grow(objects.length));
+        }
+        objects[size++] = value;
+    }
+
+    Object removeLast() {
+        var value = get(--size);
+        if (objects != null) {
+            objects[size] = null;
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        var text = new StringBuilder();
+        stringify(text, null);
+        return text.toString();
+    }
+
+    /**
+     * Appends the text of the list, which is {@code [...]} if it is already being printed further out.
+     *
+     * @param text      the buffer
+     * @param enclosing the lists and maps being printed, or {@code null} if there are none
+     */
+    void stringify(StringBuilder text, Set<Object> enclosing) {
+        if (objects == null) {
+            // Numbers cannot lead back to the list
+            text.append('[');
+            for (var i = 0; i < size; i++) {
+                if (i > 0) {
+                    text.append(", ");
+                }
+                Interpreter.stringify(text, numbers[i]);
+            }
+            text.append(']');
+            return;
+        }
+
+        if (enclosing == null) {
+            enclosing = Collections.newSetFromMap(new IdentityHashMap<>());
+        }
+        if (!enclosing.add(this)) {
+            text.append("[...]");
+            return;
+        }
+
+        text.append('[');
+        for (var i = 0; i < size; i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            Interpreter.stringify(text, objects[i], enclosing);
+        }
+        text.append(']');
+
+        enclosing.remove(this);
+    }
+
+    private static final double[] NO_NUMBERS = new double[0];
+
+    private double[] numbers;
+    private Object[] objects;
+    private int size;
+
+    private static int grow(int capacity) {
+        return Math.max(8, capacity + (capacity >> 1));
+    }
+
+    private void generalize() {
+        objects = new Object[Math.max(numbers.length, 8)];
+        for (var i = 0; i < size; i++) {
+            objects[i] = numbers[i];
+        }
+        numbers = null;
+    }
+}
\ No newline at end of file
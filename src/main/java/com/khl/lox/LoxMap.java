@@ -0,0 +1,179 @@
+package com.khl.lox;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * A Lox map.
+ *
+ * <p>
+ * Entries live in an open-addressing hash table with linear probing, where keys and values are stored side by side
+ * in a single array. Keys are compared with the same equality as the {@code ==} operator, and {@code nil} is a valid
+ * key.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+final class LoxMap {
+    int size() {
+        return size;
+    }
+
+    Object get(Object key) {
+        var index = find(key);
+        return index < 0 ? null : table[index + 1];
+    }
+
+    boolean has(Object key) {
+        return find(key) >= 0;
+    }
+
+    void put(Object key, Object value) {
+        var stored = key == null ? NIL : key;
+        var mask = table.length - 1;
+
+        for (var index = hash(stored) & mask; ; index = (index + 2) & mask) {
+            var current = table[index];
+
+            if (current == null || current == TOMBSTONE) {
+                // The key might still be further along the probe sequence if this is a tombstone
+                var existing = current == null ? -1 : find(key);
+                if (existing >= 0) {
+                    table[existing + 1] = value;
+                    return;
+                }
+
+                table[index] = stored;
+                table[index + 1] = value;
+                size++;
+                if (current == null && ++used * 4 >= table.length * 3 / 2) {
+                    resize();
+                }
+                return;
+            }
+
+            if (Interpreter.isEqual(current, stored)) {
+                table[index + 1] = value;
+                return;
+            }
+        }
+    }
+
+    Object remove(Object key) {
+        var index = find(key);
+        if (index < 0) {
+            return null;
+        }
+
+        var value = table[index + 1];
+        table[index] = TOMBSTONE;
+        table[index + 1] = null;
+        size--;
+        return value;
+    }
+
+    LoxList keys() {
+        var keys = new LoxList(size);
+        for (var i = 0; i < table.length; i += 2) {
+            var key = table[i];
+            if (key != null && key != TOMBSTONE) {
+                keys.add(key == NIL ? null : key);
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public String toString() {
+        var text = new StringBuilder();
+        stringify(text, null);
+        return text.toString();
+    }
+
+    /**
+     * Appends the text of the map, which is <code>{...}</code> if it is already being printed further out.
+     *
+     * @param text      the buffer
+     * @param enclosing the lists and maps being printed, or {@code null} if there are none
+     */
+    void stringify(StringBuilder text, Set<Object> enclosing) {
+        if (enclosing == null) {
+            enclosing = Collections.newSetFromMap(new IdentityHashMap<>());
+        }
+        if (!enclosing.add(this)) {
+            text.append("{...}");
+            return;
+        }
+
+        text.append('{');
+        var first = true;
+
+        for (var i = 0; i < table.length; i += 2) {
+            var key = table[i];
+            if (key == null || key == TOMBSTONE) {
+                continue;
+            }
+            if (!first) {
+                text.append(", ");
+            }
+            Interpreter.stringify(text, key == NIL ? null : key, enclosing);
+            text.append(": ");
+            Interpreter.stringify(text, table[i + 1], enclosing);
+            first = false;
+        }
+        text.append('}');
+
+        enclosing.remove(this);
+    }
+
+    // Markers for a nil key and for a removed entry, which must not end a probe sequence
+
+    private static final Object NIL = new Object();
+    private static final Object TOMBSTONE = new Object();
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    // Keys are stored at even indices, each followed by its value
+
+    private Object[] table = new Object[INITIAL_CAPACITY * 2];
+    private int size;
+    private int used;
+
+    private static int hash(Object key) {
+        var hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) << 1;
+    }
+
+    private int find(Object key) {
+        var stored = key == null ? NIL : key;
+        var mask = table.length - 1;
+
+        for (var index = hash(stored) & mask; ; index = (index + 2) & mask) {
+            var current = table[index];
+            if (current == null) {
+                return -1;
+            }
+            if (current != TOMBSTONE && Interpreter.isEqual(current, stored)) {
+                return index;
+            }
+        }
+    }
+
+    private void resize() {
+        var entries = table;
+        var capacity = Math.max(INITIAL_CAPACITY, size * 2);
+
+        table = new Object[Integer.highestOneBit(capacity * 2 - 1) * 2];
+        size = 0;
+        used = 0;
+
+        for (var i = 0; i < entries.length; i += 2) {
+            var key = entries[i];
+            if (key != null && key != TOMBSTONE) {
+                put(key == NIL ? null : key, entries[i + 1]);
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,37 @@
+package com.khl.lox;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a static Java method of a native module as a Lox native function.
+ *
+ * <p>
+ * Parameters and return values of type {@code double}, {@code boolean}, {@code String} and {@code Object} are
+ * converted to and from Lox values automatically, with {@code void} returning {@code nil}. A leading parameter of type
+ * {@link com.khl.lox.Interpreter} receives the calling interpreter and does not count towards the arity.
+ * </p>
+ *
+ * @author Kevin Lee
+ * @see com.khl.lox.NativeRegistry
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface LoxNative {
+    /**
+     * Returns the name of the native function in Lox, which defaults to the name of the Java method.
+     *
+     * @return the name of the native function
+     */
+    String value() default "";
+
+    /**
+     * Returns whether the result of the native function only depends on its arguments, which allows Lox functions
+     * calling it to be memoized automatically.
+     *
+     * @return whether the native function is pure
+     */
+    boolean pure() default false;
+}
\ No newline at end of file
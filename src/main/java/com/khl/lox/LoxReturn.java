@@ -7,6 +7,9 @@ package com.khl.lox;
  */
 class LoxReturn extends RuntimeException {
     public LoxReturn(Object value) {
+        // A return unwinds only to the nearest call, so capturing the Java stack would be wasted work that grows with
+        // the depth of recursion
+        super(null, null, false, false);
         this.value = value;
     }
 
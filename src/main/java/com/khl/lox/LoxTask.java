@@ -0,0 +1,75 @@
+package com.khl.lox;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A Lox function running on a virtual thread of its own, started by {@code spawn}.
+ *
+ * <p>
+ * The task calls the function with an interpreter forked from the one that spawned it, so the function gets a fresh
+ * frame stack while still sharing globals and the cells of the variables its closure captured.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+final class LoxTask {
+    /**
+     * Starts a task calling a function without arguments.
+     *
+     * @param interpreter the interpreter spawning the task
+     * @param function    the function to call
+     * @return the running task
+     */
+    static LoxTask start(Interpreter interpreter, LoxInvocable function) {
+        var task = new LoxTask();
+        var worker = interpreter.fork();
+
+        Thread.ofVirtual().name("lox-task").start(() -> {
+            try {
+                task.result.complete(function.call0(worker));
+            } catch (Throwable throwable) {
+                task.result.completeExceptionally(throwable);
+            }
+        });
+        return task;
+    }
+
+    /**
+     * Waits for the task to finish, raising the error that ended it if there was one.
+     *
+     * <p>
+     * The error is wrapped in a new one every time, since a runtime error records the calls it escapes from and the
+     * task may be awaited by several callers.
+     * </p>
+     *
+     * @return the value returned by the function
+     */
+    Object await() {
+        try {
+            return result.get();
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            throw new NativeError("Interrupted while awaiting a task");
+        } catch (ExecutionException executionException) {
+            var cause = executionException.getCause();
+            if (cause instanceof RuntimeError || cause instanceof NativeError) {
+                throw new NativeError(cause.getMessage(), cause);
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new NativeError(String.valueOf(cause.getMessage()));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<task>";
+    }
+
+    private final CompletableFuture<Object> result = new CompletableFuture<>();
+}
\ No newline at end of file
@@ -0,0 +1,219 @@
+package com.khl.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches the results of Lox functions that were memoized, either explicitly with {@code memoize(fn)} or automatically
+ * because the {@link com.khl.lox.Purity} analysis found them to be pure.
+ *
+ * <p>
+ * Every memoized function gets a bounded cache of its own that evicts the least recently used result. Only calls whose
+ * arguments are all numbers, strings, booleans or {@code nil} are cached, since other values can change between calls
+ * without being any different as far as equality is concerned.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+final class Memoizer {
+    static final int CAPACITY = 1024;
+
+    /**
+     * Creates a memoizer.
+     *
+     * @param automatic whether pure functions should be memoized automatically when they are declared
+     */
+    Memoizer(boolean automatic) {
+        this.automatic = automatic;
+    }
+
+    boolean isAutomatic() {
+        return automatic;
+    }
+
+    /**
+     * Wraps a function so that its results are cached.
+     *
+     * @param function the function to memoize
+     * @return the memoized function
+     */
+    LoxInvocable memoize(LoxInvocable function) {
+        var cache = new Cache(function.toString());
+        synchronized (caches) {
+            caches.add(cache);
+        }
+        return new MemoizedFunction(function, cache);
+    }
+
+    /**
+     * Returns the function that a memoized function wraps.
+     *
+     * @param value a value
+     * @return the wrapped function, or {@code null} if the value is not a memoized function
+     */
+    static LoxInvocable unwrap(Object value) {
+        return value instanceof MemoizedFunction memoized ? memoized.function() : null;
+    }
+
+    /**
+     * Prints the hit, miss and eviction counts of every cache.
+     *
+     * @param out the stream to print to
+     */
+    void report(PrintStream out) {
+        synchronized (caches) {
+            for (var cache : caches) {
+                cache.report(out);
+            }
+        }
+    }
+
+    private final boolean automatic;
+    private final List<Cache> caches = new ArrayList<>();
+
+    private static boolean isValue(Object value) {
+        return value == null || value instanceof Double || value instanceof String || value instanceof Boolean;
+    }
+
+    /**
+     * A least recently used cache of the results of a single function, keyed on its arguments.
+     */
+    private static final class Cache {
+        Cache(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Returns the cached result for a key, or {@link #MISSING} if there is none.
+         */
+        synchronized Object get(Object key) {
+            var result = results.get(key);
+            if (result == null) {
+                misses++;
+                return MISSING;
+            }
+
+            hits++;
+            return result == NIL ? null : result;
+        }
+
+        synchronized void put(Object key, Object result) {
+            results.put(key, result == null ? NIL : result);
+        }
+
+        synchronized void report(PrintStream out) {
+            out.printf("memoize: %s: %d hits, %d misses, %d evictions%n", name, hits, misses, evictions);
+        }
+
+        static final Object MISSING = new Object();
+
+        private static final Object NIL = new Object();
+
+        private final String name;
+        private final Map<Object, Object> results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+                if (size() > CAPACITY) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+        private long hits;
+        private long misses;
+        private long evictions;
+    }
+
+    /**
+     * A function whose results are looked up in a cache before it is called.
+     *
+     * <p>
+     * The function is called outside of the cache lock, so recursive calls (and calls from other tasks) can proceed
+     * while a result is being computed. Concurrent callers may compute the same result more than once.
+     * </p>
+     */
+    private record MemoizedFunction(LoxInvocable function, Cache cache) implements LoxInvocable {
+        // The key of a call without arguments, which can only ever have one result
+
+        private static final Object NO_ARGUMENTS = new Object();
+
+        @Override
+        public int arity() {
+            return function.arity();
+        }
+
+        @Override
+        public Object call0(Interpreter interpreter) {
+            var result = cache.get(NO_ARGUMENTS);
+            if (result == Cache.MISSING) {
+                result = function.call0(interpreter);
+                cache.put(NO_ARGUMENTS, result);
+            }
+            return result;
+        }
+
+        @Override
+        public Object call1(Interpreter interpreter, Object a) {
+            if (!isValue(a)) {
+                return function.call1(interpreter, a);
+            }
+
+            var result = cache.get(a);
+            if (result == Cache.MISSING) {
+                result = function.call1(interpreter, a);
+                cache.put(a, result);
+            }
+            return result;
+        }
+
+        @Override
+        public Object call2(Interpreter interpreter, Object a, Object b) {
+            if (!isValue(a) || !isValue(b)) {
+                return function.call2(interpreter, a, b);
+            }
+
+            var key = Arrays.asList(a, b);
+            var result = cache.get(key);
+            if (result == Cache.MISSING) {
+                result = function.call2(interpreter, a, b);
+                cache.put(key, result);
+            }
+            return result;
+        }
+
+        @Override
+        public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+            return callN(interpreter, new Object[]{a, b, c});
+        }
+
+        @Override
+        public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+            return callN(interpreter, new Object[]{a, b, c, d});
+        }
+
+        @Override
+        public Object callN(Interpreter interpreter, Object[] arguments) {
+            if (!Arrays.stream(arguments).allMatch(Memoizer::isValue)) {
+                return function.callN(interpreter, arguments);
+            }
+
+            var key = Arrays.asList(arguments);
+            var result = cache.get(key);
+            if (result == Cache.MISSING) {
+                result = function.callN(interpreter, arguments);
+                cache.put(key, result);
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return function.toString();
+        }
+    }
+}
\ No newline at end of file
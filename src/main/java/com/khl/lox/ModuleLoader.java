@@ -0,0 +1,131 @@
+package com.khl.lox;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Loads the Lox scripts brought in by {@code import} statements.
+ *
+ * <p>
+ * Scripts are cached for the lifetime of the process by their canonical path, so a module imported by many scripts
+ * (or by many sessions of a daemon) is only scanned and parsed once. A cached script is parsed again if its file has
+ * been modified since.
+ * </p>
+ *
+ * <p>
+ * Before a script runs, its imports are {@link #preload preloaded}: the modules of the import graph are parsed on the
+ * threads of the common {@link java.util.concurrent.ForkJoinPool}, so that independent modules are parsed in parallel
+ * and syntax errors in any of them are reported before anything runs.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+final class ModuleLoader {
+    /**
+     * A parsed module.
+     *
+     * @param path     the canonical path of the module
+     * @param modified the modification time of the file that was parsed
+     * @param result   the parser results
+     */
+    record Script(Path path, FileTime modified, Parser.Result result) {
+        // This is a data class
+    }
+
+    /**
+     * A module that could not be loaded.
+     *
+     * @param site    the import statement that brought the module in
+     * @param path    the path of the module
+     * @param message why the module could not be read, or {@code null} if it has syntax errors
+     * @param errors  the syntax and resolution errors of the module
+     */
+    record Failure(Stmt.Import site, Path path, String message, List<Parser.Error> errors) {
+        // This is a data class
+    }
+
+    /**
+     * Returns a module, parsing it if it has not been parsed yet or if its file has changed since.
+     *
+     * @param file the path of the module
+     * @return the module
+     * @throws IOException if the module cannot be read
+     */
+    static Script load(Path file) throws IOException {
+        var path = file.toRealPath();
+        var modified = Files.getLastModifiedTime(path);
+
+        var script = SCRIPTS.get(path);
+        if (script != null && script.modified().equals(modified)) {
+            return script;
+        }
+
+        var source = Files.readString(path, StandardCharsets.UTF_8);
+        script = new Script(path, modified, Parser.parse(source, path.getParent()));
+
+        // Whoever parsed the module last wins, which is fine as both parsed the same file
+        SCRIPTS.put(path, script);
+        return script;
+    }
+
+    /**
+     * Parses every module imported by a script, directly or through other modules.
+     *
+     * @param statements the AST statement nodes of the script
+     * @return the modules that could not be loaded, sorted by path
+     */
+    static List<Failure> preload(List<Stmt> statements) {
+        var failures = new ConcurrentLinkedQueue<Failure>();
+        preload(statements, ConcurrentHashMap.newKeySet(), failures);
+
+        var sorted = new ArrayList<>(failures);
+        sorted.sort(Comparator.comparing(Failure::path));
+        return sorted;
+    }
+
+    private static final Map<Path, Script> SCRIPTS = new ConcurrentHashMap<>();
+
+    private static void preload(List<Stmt> statements, Set<Path> visited, Queue<Failure> failures) {
+        var tasks = new ArrayList<ForkJoinTask<?>>();
+
+        for (var statement : statements) {
+            if (statement instanceof Stmt.Import site && visited.add(site.file())) {
+                tasks.add(ForkJoinTask.adapt(() -> preload(site, visited, failures)).fork());
+            }
+        }
+
+        for (var task : tasks) {
+            task.join();
+        }
+    }
+
+    private static void preload(Stmt.Import site, Set<Path> visited, Queue<Failure> failures) {
+        Script script;
+        try {
+            script = load(site.file());
+        } catch (IOException exception) {
+            var message = "Cannot read module '%s'".formatted(site.file());
+            failures.add(new Failure(site, site.file(), message, List.of()));
+            return;
+        }
+
+        if (!script.result().errors().isEmpty()) {
+            failures.add(new Failure(site, script.path(), null, script.result().errors()));
+            return;
+        }
+
+        preload(script.result().statements(), visited, failures);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,22 @@
+package com.khl.lox;
+
+/**
+ * An error raised by a native function.
+ *
+ * <p>
+ * Native functions do not know where they were called from, so the interpreter converts this error into a
+ * {@link com.khl.lox.RuntimeError} reported at the call site.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+public class NativeError extends RuntimeException {
+    public NativeError(String message) {
+        // The error is turned into a runtime error at the call site right away, so its Java stack is never needed
+        super(message, null, false, false);
+    }
+
+    public NativeError(String message, Throwable cause) {
+        super(message, cause, false, false);
+    }
+}
\ No newline at end of file
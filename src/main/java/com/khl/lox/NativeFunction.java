@@ -0,0 +1,96 @@
+package com.khl.lox;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * A Lox function implemented by a static Java method.
+ *
+ * <p>
+ * The method handle has already been adapted by the {@link com.khl.lox.NativeRegistry} to take the calling interpreter
+ * followed by the arguments as plain {@code Object}s (or as an {@code Object[]} for more than four arguments) and to
+ * return an {@code Object}, so every call is a single {@code invokeExact} without any further conversions.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+record NativeFunction(String name, int arity, boolean pure, MethodHandle handle) implements LoxInvocable {
+    @Override
+    public Object call0(Interpreter interpreter) {
+        try {
+            return (Object) handle.invokeExact(interpreter);
+        } catch (Throwable throwable) {
+            throw rethrow(throwable);
+        }
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        try {
+            return (Object) handle.invokeExact(interpreter, a);
+        } catch (Throwable throwable) {
+            throw rethrow(throwable);
+        }
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        try {
+            return (Object) handle.invokeExact(interpreter, a, b);
+        } catch (Throwable throwable) {
+            throw rethrow(throwable);
+        }
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        try {
+            return (Object) handle.invokeExact(interpreter, a, b, c);
+        } catch (Throwable throwable) {
+            throw rethrow(throwable);
+        }
+    }
+
+    @Override
+    public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        try {
+            return (Object) handle.invokeExact(interpreter, a, b, c, d);
+        } catch (Throwable throwable) {
+            throw rethrow(throwable);
+        }
+    }
+
+    @Override
+    public Object callN(Interpreter interpreter, Object[] arguments) {
+        return switch (arguments.length) {
+            case 0 -> call0(interpreter);
+            case 1 -> call1(interpreter, arguments[0]);
+            case 2 -> call2(interpreter, arguments[0], arguments[1]);
+            case 3 -> call3(interpreter, arguments[0], arguments[1], arguments[2]);
+            case 4 -> call4(interpreter, arguments[0], arguments[1], arguments[2], arguments[3]);
+            default -> {
+                try {
+                    yield (Object) handle.invokeExact(interpreter, arguments);
+                } catch (Throwable throwable) {
+                    throw rethrow(throwable);
+                }
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn>";
+    }
+
+    private static RuntimeException rethrow(Throwable throwable) {
+        // Errors raised by Lox code that the native called back into keep their traceback. Any other exception is a
+        // failure of the native itself, which becomes a runtime error at the call instead of crashing the interpreter.
+        if (throwable instanceof RuntimeError || throwable instanceof NativeError) {
+            return (RuntimeException) throwable;
+        }
+        if (throwable instanceof Error error) {
+            throw error;
+        }
+        return new NativeError(String.valueOf(throwable.getMessage()), throwable);
+    }
+}
\ No newline at end of file
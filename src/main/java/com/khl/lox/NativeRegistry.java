@@ -0,0 +1,281 @@
+package com.khl.lox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A registry of native modules, which are classes whose {@link com.khl.lox.LoxNative} methods are exposed to Lox as
+ * global functions.
+ *
+ * <p>
+ * Modules are bound lazily: a module class is only loaded, and method handles for its functions only created, the
+ * first time a script refers to one of the names it exports. Bound modules are shared by every interpreter in the
+ * process.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+final class NativeRegistry {
+    /**
+     * Looks up a native function by name, binding the module that exports it if needed.
+     *
+     * @param name the name of the function
+     * @return the native function, or {@code null} if no module exports the name
+     */
+    static NativeFunction lookup(String name) {
+        var module = INDEX.get(name);
+        if (module == null) {
+            return null;
+        }
+        return module.functions().get(name);
+    }
+
+    /**
+     * Checks whether a native function is pure, without binding the module that exports it.
+     *
+     * @param name the name of the function
+     * @return whether a module exports a pure function by the name
+     */
+    static boolean isPure(String name) {
+        var module = INDEX.get(name);
+        return module != null && module.pure.contains(name);
+    }
+
+    /**
+     * A native module and the names it exports, along with which of them are pure, which are known up front so that
+     * the module class itself does not have to be loaded until one of them is used.
+     */
+    private static final class Module {
+        Module(String className, Set<String> pure, String... exports) {
+            this.className = className;
+            this.pure = pure;
+            this.exports = Set.of(exports);
+        }
+
+        synchronized Map<String, NativeFunction> functions() {
+            if (functions == null) {
+                functions = bind();
+            }
+            return functions;
+        }
+
+        private final String className;
+        private final Set<String> pure;
+        private final Set<String> exports;
+        private Map<String, NativeFunction> functions;
+
+        private Map<String, NativeFunction> bind() {
+            var bound = new HashMap<String, NativeFunction>();
+            var boundPure = new HashSet<String>();
+
+            try {
+                for (var method : Class.forName(className).getDeclaredMethods()) {
+                    var annotation = method.getAnnotation(LoxNative.class);
+                    if (annotation == null || !Modifier.isStatic(method.getModifiers())) {
+                        continue;
+                    }
+
+                    var name = annotation.value().isEmpty() ? method.getName() : annotation.value();
+                    bound.put(name, adapt(name, annotation.pure(), method));
+                    if (annotation.pure()) {
+                        boundPure.add(name);
+                    }
+                }
+            } catch (ReflectiveOperationException reflectiveOperationException) {
+                throw new IllegalStateException("Cannot bind native module " + className, reflectiveOperationException);
+            }
+
+            if (!bound.keySet().equals(exports)) {
+                throw new IllegalStateException(
+                        "Native module %s exports %s but declares %s".formatted(className, bound.keySet(), exports));
+            }
+            if (!boundPure.equals(pure)) {
+                throw new IllegalStateException(
+                        "Native module %s exports pure %s but declares %s".formatted(className, boundPure, pure));
+            }
+
+            return Map.copyOf(bound);
+        }
+    }
+
+    private static final List<Module> MODULES = List.of(
+            new Module("com.khl.lox.CoreModule", Set.of(), "clock", "memoize"),
+            new Module("com.khl.lox.CollectionsModule", Set.of("len"),
+                    "len", "append", "pop", "map", "keys", "has", "remove"),
+            new Module("com.khl.lox.ParallelModule", Set.of(), "parallelMap", "parallelReduce", "parallelFor"),
+            new Module("com.khl.lox.ConcurrencyModule", Set.of(), "spawn", "await", "channel", "send", "receive"),
+            new Module("com.khl.lox.FileModule", Set.of(),
+                    "readLines", "nextLine", "readFile", "writeFile", "appendLine"));
+
+    private static final Map<String, Module> INDEX = new HashMap<>();
+
+    static {
+        for (var module : MODULES) {
+            for (var name : module.exports) {
+                INDEX.put(name, module);
+            }
+        }
+    }
+
+    private static final MethodHandle TO_NUMBER;
+    private static final MethodHandle TO_INTEGER;
+    private static final MethodHandle TO_STRING;
+    private static final MethodHandle TO_BOOLEAN;
+    private static final MethodHandle TO_INSTANCE;
+
+    static {
+        var lookup = MethodHandles.lookup();
+
+        try {
+            TO_NUMBER = lookup.findStatic(NativeRegistry.class, "toNumber",
+                    MethodType.methodType(double.class, String.class, int.class, Object.class));
+            TO_INTEGER = lookup.findStatic(NativeRegistry.class, "toInteger",
+                    MethodType.methodType(int.class, String.class, int.class, Object.class));
+            TO_STRING = lookup.findStatic(NativeRegistry.class, "toText",
+                    MethodType.methodType(String.class, String.class, int.class, Object.class));
+            TO_BOOLEAN = lookup.findStatic(NativeRegistry.class, "toBoolean",
+                    MethodType.methodType(boolean.class, String.class, int.class, Object.class));
+            TO_INSTANCE = lookup.findStatic(NativeRegistry.class, "toInstance",
+                    MethodType.methodType(Object.class, Class.class, String.class, int.class, Object.class));
+        } catch (ReflectiveOperationException reflectiveOperationException) {
+            throw new ExceptionInInitializerError(reflectiveOperationException);
+        }
+    }
+
+    private NativeRegistry() {
+        // This is a utility class
+    }
+
+    /**
+     * Adapts a static method into the calling convention expected by {@link com.khl.lox.NativeFunction}.
+     */
+    private static NativeFunction adapt(String name, boolean pure, Method method) throws IllegalAccessException {
+        var handle = MethodHandles.lookup().unreflect(method);
+        var parameters = method.getParameterTypes();
+
+        var offset = parameters.length > 0 && parameters[0] == Interpreter.class ? 1 : 0;
+        var arity = parameters.length - offset;
+
+        if (offset == 0) {
+            handle = MethodHandles.dropArguments(handle, 0, Interpreter.class);
+        }
+
+        // Convert the Lox arguments into the declared parameter types
+
+        for (var i = 0; i < arity; i++) {
+            var filter = argumentFilter(name, i, parameters[offset + i]);
+            if (filter != null) {
+                handle = MethodHandles.filterArguments(handle, 1 + i, filter);
+            }
+        }
+
+        // Convert the result into a Lox value (a void method returns nil)
+
+        var returnType = method.getReturnType();
+        if (returnType == int.class || returnType == long.class || returnType == float.class) {
+            handle = handle.asType(handle.type().changeReturnType(double.class));
+        }
+
+        handle = handle.asType(MethodType.genericMethodType(arity).insertParameterTypes(0, Interpreter.class));
+
+        if (arity > 4) {
+            handle = handle.asSpreader(Object[].class, arity);
+        }
+
+        return new NativeFunction(name, arity, pure, handle);
+    }
+
+    private static MethodHandle argumentFilter(String function, int index, Class<?> type) {
+        if (type == Object.class) {
+            return null;
+        }
+
+        MethodHandle filter;
+        if (type == double.class) {
+            filter = TO_NUMBER;
+        } else if (type == int.class) {
+            filter = TO_INTEGER;
+        } else if (type == String.class) {
+            filter = TO_STRING;
+        } else if (type == boolean.class) {
+            filter = TO_BOOLEAN;
+        } else {
+            filter = MethodHandles.insertArguments(TO_INSTANCE, 0, type);
+            filter = MethodHandles.explicitCastArguments(filter, filter.type().changeReturnType(type));
+        }
+
+        return MethodHandles.insertArguments(filter, 0, function, index);
+    }
+
+    private static double toNumber(String function, int index, Object value) {
+        if (value instanceof Double number) {
+            return number;
+        }
+        throw argumentError(function, index, "a number");
+    }
+
+    private static int toInteger(String function, int index, Object value) {
+        if (value instanceof Double number && number == Math.rint(number) && Math.abs(number) <= Integer.MAX_VALUE) {
+            return number.intValue();
+        }
+        throw argumentError(function, index, "an integer");
+    }
+
+    private static String toText(String function, int index, Object value) {
+        if (value instanceof String string) {
+            return string;
+        }
+        throw argumentError(function, index, "a string");
+    }
+
+    private static boolean toBoolean(String function, int index, Object value) {
+        if (value instanceof Boolean bool) {
+            return bool;
+        }
+        throw argumentError(function, index, "a boolean");
+    }
+
+    private static Object toInstance(Class<?> type, String function, int index, Object value) {
+        if (type.isInstance(value)) {
+            return value;
+        }
+        throw argumentError(function, index, describe(type));
+    }
+
+    private static String describe(Class<?> type) {
+        if (LoxCallable.class.isAssignableFrom(type)) {
+            return "a function";
+        }
+        if (type == LoxList.class) {
+            return "a list";
+        }
+        if (type == LoxMap.class) {
+            return "a map";
+        }
+        if (type == LoxInstance.class) {
+            return "an instance";
+        }
+        if (type == LoxTask.class) {
+            return "a task";
+        }
+        if (type == LoxChannel.class) {
+            return "a channel";
+        }
+        if (type == LoxLines.class) {
+            return "a line reader";
+        }
+        return "a " + type.getSimpleName();
+    }
+
+    private static NativeError argumentError(String function, int index, String expected) {
+        return new NativeError("Expected %s as argument %d to '%s'".formatted(expected, index + 1, function));
+    }
+}
\ No newline at end of file
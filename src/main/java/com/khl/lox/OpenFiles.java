@@ -0,0 +1,197 @@
+package com.khl.lox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * The files that a script reads lines from with {@code readLines} and appends lines to with {@code appendLine}.
+ *
+ * <p>
+ * Relative paths are resolved against the working directory of the script, which is the current directory of the
+ * process unless the script was sent to a {@link com.khl.lox.Daemon} from another directory.
+ * </p>
+ *
+ * <p>
+ * Appending a line to a file only opens it the first time, and lines are collected in a buffer that is only written
+ * out once it fills up, so appending a line costs about as much as printing one. A file is closed, and its buffer
+ * written out, before anything else reads or writes it, and every file is closed once the script finishes. Forked
+ * interpreters share the open files of the interpreter they were forked from, so every operation is synchronized.
+ * </p>
+ *
+ * <p>
+ * A {@link com.khl.lox.LoxLines} reader keeps the file it reads mapped into memory, and accessing a mapped page that a
+ * write has cut off the file crashes the process. Readers are therefore tracked until they are no longer referenced,
+ * and writing to a file through {@code writeFile} or {@code appendLine} invalidates every reader of it.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+final class OpenFiles {
+    /**
+     * Creates the open files of a script.
+     *
+     * @param directory the absolute working directory of the script
+     */
+    OpenFiles(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Resolves a path given by a script.
+     *
+     * @param path the path, which may be relative to the working directory
+     * @return the absolute path
+     * @throws java.nio.file.InvalidPathException if the path is not valid
+     */
+    Path resolve(String path) {
+        return directory.resolve(path);
+    }
+
+    /**
+     * Appends a line to a file, creating the file if it does not exist.
+     *
+     * @param path the file
+     * @param line the line, without its line terminator
+     * @throws IOException if the file cannot be opened or written
+     */
+    synchronized void append(Path path, String line) throws IOException {
+        invalidate(path);
+
+        var key = path.toAbsolutePath().normalize();
+        var appender = appenders.get(key);
+        if (appender == null) {
+            appender = new Appender(FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+            appenders.put(key, appender);
+        }
+
+        appender.write(line.getBytes(StandardCharsets.UTF_8));
+        appender.write(NEWLINE);
+    }
+
+    /**
+     * Opens a file for reading its lines, after writing out the lines appended to it.
+     *
+     * @param path the file
+     * @return the reader, which is invalidated once the file is written to
+     * @throws IOException if the file cannot be opened
+     */
+    synchronized LoxLines readLines(Path path) throws IOException {
+        close(path);
+
+        var lines = LoxLines.open(path);
+        readers.computeIfAbsent(path.toAbsolutePath().normalize(),
+                key -> Collections.newSetFromMap(new WeakHashMap<>())).add(lines);
+        return lines;
+    }
+
+    /**
+     * Invalidates the readers of a file that is about to be written to.
+     *
+     * @param path the file
+     */
+    synchronized void invalidate(Path path) {
+        var invalidated = readers.remove(path.toAbsolutePath().normalize());
+        if (invalidated != null) {
+            for (var lines : invalidated) {
+                lines.invalidate();
+            }
+        }
+    }
+
+    /**
+     * Writes out the lines appended to a file and closes it, if it is open.
+     *
+     * @param path the file
+     * @throws IOException if the lines cannot be written
+     */
+    synchronized void close(Path path) throws IOException {
+        var appender = appenders.remove(path.toAbsolutePath().normalize());
+        if (appender != null) {
+            appender.close();
+        }
+    }
+
+    /**
+     * Writes out the lines appended to every open file and closes them.
+     *
+     * @throws IOException if the lines cannot be written to some file, which is reported after every other file has
+     *                     been closed
+     */
+    synchronized void close() throws IOException {
+        IOException failure = null;
+
+        for (var entry : appenders.entrySet()) {
+            try {
+                entry.getValue().close();
+            } catch (IOException ioException) {
+                if (failure == null) {
+                    failure = new IOException("Cannot write '%s': %s".formatted(entry.getKey(),
+                            ioException.getMessage()), ioException);
+                }
+            }
+        }
+        appenders.clear();
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] NEWLINE = {'\n'};
+
+    private final Path directory;
+    private final Map<Path, Appender> appenders = new HashMap<>();
+
+    // Readers are held weakly, since a script may stop reading a file at any point
+
+    private final Map<Path, Set<LoxLines>> readers = new HashMap<>();
+
+    private static final class Appender {
+        Appender(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void write(byte[] bytes) throws IOException {
+            if (bytes.length > buffer.remaining()) {
+                drain();
+                if (bytes.length > buffer.capacity()) {
+                    drain(ByteBuffer.wrap(bytes));
+                    return;
+                }
+            }
+            buffer.put(bytes);
+        }
+
+        void close() throws IOException {
+            try (channel) {
+                drain();
+            }
+        }
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        private void drain() throws IOException {
+            buffer.flip();
+            drain(buffer);
+            buffer.clear();
+        }
+
+        private void drain(ByteBuffer bytes) throws IOException {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,38 @@
+package com.khl.lox;
+
+/**
+ * What is known about the operands of an arithmetic or comparison operator before the program runs, as determined by
+ * {@link com.khl.lox.TypeInference}.
+ *
+ * <p>
+ * Operands start out unknown, in which case the interpreter checks their types every time the operator is evaluated.
+ * Once the operands are proven to always be numbers (or strings, for {@code +}), the interpreter skips those checks.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+final class Operands {
+    enum Kind {
+        /**
+         * The operands may be of any type, so they are checked at runtime.
+         */
+        UNKNOWN,
+
+        /**
+         * Every operand is always a number.
+         */
+        NUMBERS,
+
+        /**
+         * Every operand is always a string.
+         */
+        STRINGS,
+    }
+
+    Kind kind = Kind.UNKNOWN;
+
+    @Override
+    public String toString() {
+        return kind.toString();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,292 @@
+package com.khl.lox;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The buffered standard output of Lox programs.
+ *
+ * <p>
+ * Printed values are formatted into a reusable text buffer and encoded straight into a large byte buffer, which is
+ * only written to the underlying stream when a line ends (for {@link Policy#LINE}), when it fills up or when the
+ * output is flushed. UTF-8 is encoded by hand; other charsets take a slower path through {@link String#getBytes}. With
+ * a background writer, full buffers are handed to a separate thread so that a slow consumer only holds the script up
+ * once every spare buffer is waiting to be written.
+ * </p>
+ *
+ * <p>
+ * Output that is still buffered is not visible to anyone, so it has to be {@link #flush() flushed} before errors are
+ * reported on standard error and before the process exits. Forked interpreters share the output of the interpreter
+ * they were forked from, so printing is guarded by a lock.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+final class Output implements Flushable {
+    /**
+     * When buffered output is written to the underlying stream.
+     */
+    enum Policy {
+        /**
+         * After every line, which suits terminals.
+         */
+        LINE,
+
+        /**
+         * Whenever the buffer is full, which suits pipes and files.
+         */
+        FULL,
+    }
+
+    /**
+     * Creates the output for the standard output of the process, which is flushed after every line if it is a
+     * terminal. Text is encoded with the same charset as {@link System#out}.
+     *
+     * @param async whether buffers are written by a background thread
+     * @return the output
+     */
+    static Output standard(boolean async) {
+        var policy = System.console() != null ? Policy.LINE : Policy.FULL;
+        return new Output(new FileOutputStream(FileDescriptor.out), System.out.charset(), policy, async);
+    }
+
+    Output(OutputStream out, Policy policy, boolean async) {
+        this(out, StandardCharsets.UTF_8, policy, async);
+    }
+
+    Output(OutputStream out, Charset charset, Policy policy, boolean async) {
+        this.out = out;
+        this.charset = charset.equals(StandardCharsets.UTF_8) ? null : charset;
+        this.policy = policy;
+        this.async = async;
+
+        if (async) {
+            for (var i = 1; i < BUFFERS; i++) {
+                free.add(new byte[BUFFER_SIZE]);
+            }
+            Thread.ofPlatform().name("jlox-output").daemon().start(this::write);
+        }
+    }
+
+    /**
+     * Prints a value on its own line.
+     *
+     * @param value the value
+     */
+    void println(Object value) {
+        lock.lock();
+        try {
+            text.setLength(0);
+            Interpreter.stringify(text, value);
+            text.append(LINE_SEPARATOR);
+            encode(text);
+
+            // A background writer flushes each line by itself, so there is no need to wait for it
+            if (policy == Policy.LINE) {
+                drain(!async);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes everything printed so far to the underlying stream, waiting for the background writer if there is one.
+     */
+    @Override
+    public void flush() {
+        lock.lock();
+        try {
+            drain(true);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BUFFERS = 4;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final OutputStream out;
+    private final Charset charset;
+    private final Policy policy;
+    private final boolean async;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final StringBuilder text = new StringBuilder();
+
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int count;
+
+    // Buffers travel from the script to the background writer through 'pending' and come back through 'free'
+
+    private final BlockingQueue<Chunk> pending = new ArrayBlockingQueue<>(BUFFERS + 1);
+    private final BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(BUFFERS);
+
+    /**
+     * A buffer handed to the background writer.
+     *
+     * @param bytes   the buffer, or {@code null} if there is nothing to write
+     * @param length  the number of bytes to write
+     * @param written counted down once the chunk has been written, or {@code null} if nobody waits for it
+     */
+    private record Chunk(byte[] bytes, int length, CountDownLatch written) {
+        // This is a data class
+    }
+
+    private void encode(CharSequence chars) {
+        if (charset != null) {
+            for (var b : chars.toString().getBytes(charset)) {
+                if (count == buffer.length) {
+                    drain(false);
+                }
+                buffer[count++] = b;
+            }
+            return;
+        }
+
+        var length = chars.length();
+
+        for (var i = 0; i < length; i++) {
+            var ch = chars.charAt(i);
+
+            // Make room for the longest encoding of a character
+            if (count > buffer.length - 4) {
+                drain(false);
+            }
+
+            if (ch < 0x80) {
+                buffer[count++] = (byte) ch;
+            } else if (ch < 0x800) {
+                buffer[count++] = (byte) (0xc0 | ch >> 6);
+                buffer[count++] = (byte) (0x80 | ch & 0x3f);
+            } else if (Character.isHighSurrogate(ch) && i + 1 < length
+                    && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                var codePoint = Character.toCodePoint(ch, chars.charAt(++i));
+                buffer[count++] = (byte) (0xf0 | codePoint >> 18);
+                buffer[count++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                buffer[count++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                buffer[count++] = (byte) (0x80 | codePoint & 0x3f);
+            } else if (Character.isSurrogate(ch)) {
+                // Unpaired surrogates are replaced, like the UTF-8 encoder of a PrintStream does
+                buffer[count++] = '?';
+            } else {
+                buffer[count++] = (byte) (0xe0 | ch >> 12);
+                buffer[count++] = (byte) (0x80 | ch >> 6 & 0x3f);
+                buffer[count++] = (byte) (0x80 | ch & 0x3f);
+            }
+        }
+    }
+
+    /**
+     * Passes the buffer on to be written.
+     *
+     * @param wait whether to wait until everything has been written and flushed
+     */
+    private void drain(boolean wait) {
+        if (!async) {
+            try {
+                out.write(buffer, 0, count);
+                if (wait) {
+                    out.flush();
+                }
+            } catch (IOException ignored) {
+                // Like a PrintStream, output that cannot be written is dropped
+            }
+            count = 0;
+            return;
+        }
+
+        var written = wait ? new CountDownLatch(1) : null;
+        if (count > 0) {
+            put(new Chunk(buffer, count, written));
+            buffer = take(free);
+            count = 0;
+        } else if (wait) {
+            put(new Chunk(null, 0, written));
+        }
+
+        if (written != null) {
+            awaitUninterruptibly(written);
+        }
+    }
+
+    /**
+     * Runs the background writer.
+     */
+    private void write() {
+        while (true) {
+            var chunk = take(pending);
+            try {
+                if (chunk.bytes() != null) {
+                    out.write(chunk.bytes(), 0, chunk.length());
+                }
+                out.flush();
+            } catch (IOException ignored) {
+                // Like a PrintStream, output that cannot be written is dropped
+            }
+
+            if (chunk.bytes() != null) {
+                free.add(chunk.bytes());
+            }
+            if (chunk.written() != null) {
+                chunk.written().countDown();
+            }
+        }
+    }
+
+    private void put(Chunk chunk) {
+        var interrupted = false;
+        while (true) {
+            try {
+                pending.put(chunk);
+                break;
+            } catch (InterruptedException interruptedException) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static <T> T take(BlockingQueue<T> queue) {
+        var interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return queue.take();
+                } catch (InterruptedException interruptedException) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        var interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException interruptedException) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,162 @@
+package com.khl.lox;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Native functions that spread calls to a Lox function across the threads of the common {@link ForkJoinPool}.
+ *
+ * <p>
+ * Every task runs the function in an interpreter forked from the caller's, which has a frame stack of its own but
+ * shares the global environment and standard output. The callbacks may read anything they can reach, but writes to
+ * globals, captured variables, lists, maps or instances that other callbacks also touch are not synchronized and their
+ * outcome is unspecified.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+final class ParallelModule {
+    @LoxNative
+    static LoxList parallelMap(Interpreter interpreter, LoxList list, LoxCallable function) {
+        var mapper = expectArity("parallelMap", function, 1);
+        var results = new Object[list.size()];
+
+        POOL.invoke(new RangeAction(interpreter, 0, results.length, grain(results.length),
+                (worker, index) -> results[index] = mapper.call1(worker, list.get(index))));
+
+        var mapped = new LoxList(results.length);
+        for (var result : results) {
+            mapped.add(result);
+        }
+        return mapped;
+    }
+
+    @LoxNative
+    static Object parallelReduce(Interpreter interpreter, LoxList list, LoxCallable function, Object initial) {
+        var reducer = expectArity("parallelReduce", function, 2);
+        return POOL.invoke(new ReduceTask(interpreter, list, reducer, initial, 0, list.size(), grain(list.size())));
+    }
+
+    @LoxNative
+    static void parallelFor(Interpreter interpreter, int count, LoxCallable function) {
+        var body = expectArity("parallelFor", function, 1);
+        if (count < 0) {
+            throw new NativeError("Expected a non-negative count as argument 1 to 'parallelFor'");
+        }
+
+        POOL.invoke(new RangeAction(interpreter, 0, count, grain(count),
+                (worker, index) -> body.call1(worker, (double) index)));
+    }
+
+    // Aim for a few tasks per thread so that uneven callbacks can still be balanced by work stealing
+
+    private static final int TASKS_PER_THREAD = 4;
+
+    private static final ForkJoinPool POOL = ForkJoinPool.commonPool();
+
+    private ParallelModule() {
+        // This is a utility class
+    }
+
+    private static LoxInvocable expectArity(String name, LoxCallable function, int arity) {
+        if (function.arity() != arity) {
+            throw new NativeError("Expected a function of %d argument%s as argument 2 to '%s'"
+                    .formatted(arity, arity == 1 ? "" : "s", name));
+        }
+        return LoxInvocable.adapt(function);
+    }
+
+    private static int grain(int size) {
+        return Math.max(1, size / (POOL.getParallelism() * TASKS_PER_THREAD));
+    }
+
+    /**
+     * The work done for a single index of a range.
+     */
+    @FunctionalInterface
+    private interface RangeBody {
+        void run(Interpreter worker, int index);
+    }
+
+    /**
+     * Runs a callback for every index of a range, splitting the range in halves until it is small enough.
+     */
+    private static class RangeAction extends RecursiveAction {
+        RangeAction(Interpreter interpreter, int from, int to, int grain, RangeBody body) {
+            this.interpreter = interpreter;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                var worker = interpreter.fork();
+                for (var i = from; i < to; i++) {
+                    body.run(worker, i);
+                }
+                return;
+            }
+
+            var middle = (from + to) >>> 1;
+            invokeAll(new RangeAction(interpreter, from, middle, grain, body),
+                    new RangeAction(interpreter, middle, to, grain, body));
+        }
+
+        private final Interpreter interpreter;
+        private final int from;
+        private final int to;
+        private final int grain;
+        private final RangeBody body;
+    }
+
+    /**
+     * Folds a range of a list, starting every chunk from the initial value and combining the chunks with the same
+     * function, which is why the function has to be associative and the initial value an identity for it.
+     */
+    private static class ReduceTask extends RecursiveTask<Object> {
+        ReduceTask(Interpreter interpreter, LoxList list, LoxInvocable reducer, Object initial, int from, int to,
+                   int grain) {
+            this.interpreter = interpreter;
+            this.list = list;
+            this.reducer = reducer;
+            this.initial = initial;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected Object compute() {
+            if (to - from <= grain) {
+                var worker = interpreter.fork();
+                var accumulator = initial;
+                for (var i = from; i < to; i++) {
+                    accumulator = reducer.call2(worker, accumulator, list.get(i));
+                }
+                return accumulator;
+            }
+
+            var middle = (from + to) >>> 1;
+            var left = new ReduceTask(interpreter, list, reducer, initial, from, middle, grain);
+            var right = new ReduceTask(interpreter, list, reducer, initial, middle, to, grain);
+
+            left.fork();
+            var rightResult = right.compute();
+            var leftResult = left.join();
+
+            return reducer.call2(interpreter.fork(), leftResult, rightResult);
+        }
+
+        private final Interpreter interpreter;
+        private final LoxList list;
+        private final LoxInvocable reducer;
+        private final Object initial;
+        private final int from;
+        private final int to;
+        private final int grain;
+    }
+}
\ No newline at end of file
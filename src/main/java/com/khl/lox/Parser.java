@@ -1,8 +1,11 @@
 package com.khl.lox;
 
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.IntPredicate;
 
 /**
  * A parser that converts source code into a Lox AST.
@@ -18,6 +21,9 @@ public class Parser {
         private final String message;
 
         public Error(Token token, String message) {
+            // Errors are only ever reported by their token, and a broken file may have a great many of them, so the
+            // Java stack is not captured
+            super(null, null, false, false);
             this.token = token;
             this.message = message;
         }
@@ -33,8 +39,12 @@ public class Parser {
 
     /**
      * A class for containing parser results.
+     *
+     * @param statements the AST statement nodes
+     * @param layout     the frame layout of the top-level script, as determined by the {@link com.khl.lox.Resolver}
+     * @param errors     the syntax and resolution errors
      */
-    public record Result(List<Stmt> statements, List<Error> errors) {
+    public record Result(List<Stmt> statements, Layout layout, List<Error> errors) {
         // This is a data class
     }
 
@@ -46,17 +56,86 @@ public class Parser {
      * during parsing.
      */
     public static Result parse(String source) {
-        return new Parser(source).parse();
+        return parse(source, Path.of("").toAbsolutePath());
+    }
+
+    /**
+     * Converts source code into ASTs, resolving imported modules against the given directory.
+     *
+     * @param source    the source code
+     * @param directory the directory of the source file
+     * @return A {@link com.khl.lox.Parser.Result} object which contains the ASTs and any syntax errors detected
+     * during parsing.
+     */
+    public static Result parse(String source, Path directory) {
+        if (!Stats.ENABLED) {
+            return new Parser(source, directory).parse();
+        }
+
+        var start = System.nanoTime();
+        var parser = new Parser(source, directory);
+        var scanned = System.nanoTime();
+        var result = parser.parse();
+
+        Stats.scanNanos += scanned - start;
+        Stats.parseNanos += System.nanoTime() - scanned;
+        return result;
+    }
+
+    /**
+     * A top-level declaration along with the tokens it was parsed from, which is what a
+     * {@link com.khl.lox.Document} re-parses after an edit.
+     *
+     * @param statement the AST statement node, or {@code null} if there was a syntax error
+     * @param length    the number of tokens that the declaration was parsed from
+     * @param errors    the syntax errors
+     */
+    record Declaration(Stmt statement, int length, List<Error> errors) {
+        // This is a data class
+    }
+
+    /**
+     * Parses top-level declarations from already scanned tokens, without resolving them.
+     *
+     * <p>
+     * Parsing continues until the end of the tokens, or until a declaration would start at a token that {@code stop}
+     * accepts. Besides its own tokens, a declaration only depends on the token that follows it.
+     * </p>
+     *
+     * @param tokens    the lexical tokens, without errors and ending with an EOF token
+     * @param from      the index of the token that the first declaration starts at
+     * @param directory the directory of the source file
+     * @param stop      accepts the index of a token that the rest of the tokens are known to parse the same from
+     * @return the declarations
+     */
+    static List<Declaration> parseDeclarations(List<Token> tokens, int from, Path directory, IntPredicate stop) {
+        var parser = new Parser(tokens, directory);
+        parser.current = from;
+
+        var declarations = new ArrayList<Declaration>();
+        while (parser.isParsing() && !stop.test(parser.current)) {
+            var start = parser.current;
+            var declaration = parser.declaration();
+
+            var errors = List.copyOf(parser.errors);
+            parser.errors.clear();
+            declarations.add(new Declaration(declaration, parser.current - start, errors));
+        }
+        return declarations;
     }
 
     private static final int MAX_ARGS = 255;
     private static final int MAX_PARAMETERS = 255;
 
     private int current;
-    private final List<Token> tokens = new ArrayList<>();
+    private final Path directory;
+    private final List<Token> tokens;
     private final List<Error> errors = new ArrayList<>();
 
-    private Parser(String source) {
+    private Parser(String source, Path directory) {
+        this.directory = directory;
+        this.tokens = new ArrayList<>();
+
         for (var token : Scanner.scanTokens(source)) {
             if (token.type() == TokenType.ERROR) {
                 errors.add(new Error(token, token.lexeme()));
@@ -66,6 +145,11 @@ public class Parser {
         }
     }
 
+    private Parser(List<Token> tokens, Path directory) {
+        this.directory = directory;
+        this.tokens = tokens;
+    }
+
     private Result parse() {
         var statements = new ArrayList<Stmt>();
 
@@ -76,7 +160,14 @@ public class Parser {
             }
         }
 
-        return new Result(Collections.unmodifiableList(statements), Collections.unmodifiableList(errors));
+        // Variables can only be resolved in a syntactically correct program
+
+        var layout = new Layout();
+        if (errors.isEmpty()) {
+            layout = Resolver.resolve(statements, errors);
+        }
+
+        return new Result(Collections.unmodifiableList(statements), layout, Collections.unmodifiableList(errors));
     }
 
     private Token advance() {
@@ -128,7 +219,7 @@ public class Parser {
             }
 
             switch (peek().type()) {
-                case CLASS, FUN, VAR, FOR, IF, WHILE, PRINT, RETURN -> {
+                case CLASS, FUN, VAR, IMPORT, FOR, IF, WHILE, PRINT, RETURN -> {
                     return;
                 }
                 default -> advance();
@@ -142,6 +233,10 @@ public class Parser {
 
     private Stmt declaration() {
         try {
+            if (match(TokenType.CLASS)) {
+                return classDeclaration();
+            }
+
             if (match(TokenType.FUN)) {
                 return funDeclaration("function");
             }
@@ -150,6 +245,10 @@ public class Parser {
                 return varDeclaration();
             }
 
+            if (match(TokenType.IMPORT)) {
+                return importDeclaration();
+            }
+
             return statement();
         } catch (Error error) {
             errors.add(error);
@@ -158,6 +257,26 @@ public class Parser {
         }
     }
 
+    private Stmt.Class classDeclaration() throws Error {
+        var name = consume(TokenType.IDENTIFIER, "Expect class name");
+
+        Expr.Variable superclass = null;
+        if (match(TokenType.LESS)) {
+            consume(TokenType.IDENTIFIER, "Expect superclass name");
+            superclass = new Expr.Variable(previous(), new Slot());
+        }
+
+        consume(TokenType.LEFT_BRACE, "Expect '{' before class body");
+
+        var methods = new ArrayList<Stmt.Function>();
+        while (isParsing() && !check(TokenType.RIGHT_BRACE)) {
+            methods.add(funDeclaration("method"));
+        }
+
+        consume(TokenType.RIGHT_BRACE, "Expect '}' after class body");
+        return new Stmt.Class(name, superclass, Collections.unmodifiableList(methods), new Slot(), new Slot());
+    }
+
     private Stmt.Function funDeclaration(String kind) throws Error {
         var name = consume(TokenType.IDENTIFIER, "Expect %s name".formatted(kind));
         consume(TokenType.LEFT_PAREN, "Expect '(' after %s name".formatted(kind));
@@ -175,7 +294,7 @@ public class Parser {
 
         consume(TokenType.RIGHT_PAREN, "Expect ')' after parameters");
         consume(TokenType.LEFT_BRACE, "Expect '{' before %s body".formatted(kind));
-        return new Stmt.Function(name, Collections.unmodifiableList(parameters), block());
+        return new Stmt.Function(name, Collections.unmodifiableList(parameters), block(), new Slot(), new Layout());
     }
 
     private Stmt.Var varDeclaration() throws Error {
@@ -189,7 +308,21 @@ public class Parser {
         }
 
         consume(TokenType.SEMICOLON, "Expect ';' after variable declaration");
-        return new Stmt.Var(name, initializer);
+        return new Stmt.Var(name, initializer, new Slot());
+    }
+
+    private Stmt.Import importDeclaration() throws Error {
+        var keyword = previous();
+        var path = consume(TokenType.STRING, "Expect module path after 'import'");
+        consume(TokenType.SEMICOLON, "Expect ';' after module path");
+
+        Path file;
+        try {
+            file = directory.resolve((String) path.literal()).normalize();
+        } catch (InvalidPathException exception) {
+            throw new Error(path, "Invalid module path");
+        }
+        return new Stmt.Import(keyword, path, file);
     }
 
     private Stmt statement() throws Error {
@@ -214,7 +347,7 @@ public class Parser {
         }
 
         if (match(TokenType.LEFT_BRACE)) {
-            return new Stmt.Block(block());
+            return new Stmt.Block(block(), new ArrayList<>());
         }
 
         return expressionStatement();
@@ -246,6 +379,7 @@ public class Parser {
     }
 
     private Stmt forStatement() throws Error {
+        var keyword = previous();
         consume(TokenType.LEFT_PAREN, "Expect '(' after 'for'");
 
         // Look for initializer
@@ -284,23 +418,24 @@ public class Parser {
         Stmt body = statement();
 
         if (increment != null) {
-            body = new Stmt.Block(List.of(body, new Stmt.Expression(increment)));
+            body = new Stmt.Block(List.of(body, new Stmt.Expression(increment)), new ArrayList<>());
         }
 
-        body = new Stmt.While(condition, body);
+        body = new Stmt.While(keyword, condition, body);
 
         if (initializer != null) {
-            body = new Stmt.Block(List.of(initializer, body));
+            body = new Stmt.Block(List.of(initializer, body), new ArrayList<>());
         }
 
         return body;
     }
 
     private Stmt.While whileStatement() throws Error {
+        var keyword = previous();
         consume(TokenType.LEFT_PAREN, "Expect '(' after 'while'");
         var condition = expression();
         consume(TokenType.RIGHT_PAREN, "Expect ')' after condition");
-        return new Stmt.While(condition, statement());
+        return new Stmt.While(keyword, condition, statement());
     }
 
     private Stmt.Print printStatement() throws Error {
@@ -357,8 +492,16 @@ public class Parser {
         if (match(TokenType.EQUAL)) {
             var equal = previous();
 
-            if (expr instanceof Expr.Variable(Token name)) {
-                return new Expr.Assign(name, expression());
+            if (expr instanceof Expr.Variable(Token name, Slot ignored)) {
+                return new Expr.Assign(name, expression(), new Slot());
+            }
+
+            if (expr instanceof Expr.Get(Expr object, Token name, InlineCache ignored)) {
+                return new Expr.Set(object, name, expression(), new InlineCache());
+            }
+
+            if (expr instanceof Expr.Index(Expr object, Token bracket, Expr index)) {
+                return new Expr.SetIndex(object, bracket, index, expression());
             }
 
             throw new Error(equal, "Invalid assignment target");
@@ -370,7 +513,7 @@ public class Parser {
     private Expr equality() throws Error {
         var expr = comparison();
         while (match(TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL)) {
-            expr = new Expr.Binary(expr, previous(), comparison());
+            expr = new Expr.Binary(expr, previous(), comparison(), new Operands());
         }
         return expr;
     }
@@ -378,7 +521,7 @@ public class Parser {
     private Expr comparison() throws Error {
         var expr = term();
         while (match(TokenType.GREATER, TokenType.GREATER_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL)) {
-            expr = new Expr.Binary(expr, previous(), term());
+            expr = new Expr.Binary(expr, previous(), term(), new Operands());
         }
         return expr;
     }
@@ -386,7 +529,7 @@ public class Parser {
     private Expr term() throws Error {
         var expr = factor();
         while (match(TokenType.PLUS, TokenType.MINUS)) {
-            expr = new Expr.Binary(expr, previous(), factor());
+            expr = new Expr.Binary(expr, previous(), factor(), new Operands());
         }
         return expr;
     }
@@ -394,14 +537,14 @@ public class Parser {
     private Expr factor() throws Error {
         var expr = unary();
         while (match(TokenType.STAR, TokenType.SLASH)) {
-            expr = new Expr.Binary(expr, previous(), unary());
+            expr = new Expr.Binary(expr, previous(), unary(), new Operands());
         }
         return expr;
     }
 
     private Expr unary() throws Error {
         if (match(TokenType.BANG, TokenType.MINUS)) {
-            return new Expr.Unary(previous(), unary());
+            return new Expr.Unary(previous(), unary(), new Operands());
         }
         return call();
     }
@@ -409,26 +552,56 @@ public class Parser {
     private Expr call() throws Error {
         var expr = primary();
 
-        while (match(TokenType.LEFT_PAREN)) {
-            var arguments = new ArrayList<Expr>();
-
-            if (!check(TokenType.RIGHT_PAREN)) {
-                do {
-                    if (arguments.size() >= MAX_ARGS) {
-                        throw new Error(peek(), "Can't have more than %d arguments".formatted(MAX_ARGS));
-                    }
-                    arguments.add(expression());
-                } while (match(TokenType.COMMA));
+        while (true) {
+            if (match(TokenType.LEFT_PAREN)) {
+                expr = finishCall(expr);
+            } else if (match(TokenType.DOT)) {
+                var name = consume(TokenType.IDENTIFIER, "Expect property name after '.'");
+                expr = new Expr.Get(expr, name, new InlineCache());
+            } else if (match(TokenType.LEFT_BRACKET)) {
+                var bracket = previous();
+                var index = expression();
+                consume(TokenType.RIGHT_BRACKET, "Expect ']' after index");
+                expr = new Expr.Index(expr, bracket, index);
+            } else {
+                break;
             }
-
-            expr = new Expr.Call(
-                    expr, consume(TokenType.RIGHT_PAREN, "Expect ')' after arguments"),
-                    Collections.unmodifiableList(arguments));
         }
 
         return expr;
     }
 
+    private Expr.Call finishCall(Expr callee) throws Error {
+        var arguments = new ArrayList<Expr>();
+
+        if (!check(TokenType.RIGHT_PAREN)) {
+            do {
+                if (arguments.size() >= MAX_ARGS) {
+                    throw new Error(peek(), "Can't have more than %d arguments".formatted(MAX_ARGS));
+                }
+                arguments.add(expression());
+            } while (match(TokenType.COMMA));
+        }
+
+        return new Expr.Call(
+                callee, consume(TokenType.RIGHT_PAREN, "Expect ')' after arguments"),
+                Collections.unmodifiableList(arguments));
+    }
+
+    private Expr.ListLiteral listLiteral() throws Error {
+        var bracket = previous();
+        var elements = new ArrayList<Expr>();
+
+        if (!check(TokenType.RIGHT_BRACKET)) {
+            do {
+                elements.add(expression());
+            } while (match(TokenType.COMMA));
+        }
+
+        consume(TokenType.RIGHT_BRACKET, "Expect ']' after list elements");
+        return new Expr.ListLiteral(bracket, Collections.unmodifiableList(elements));
+    }
+
     private Expr primary() throws Error {
         if (match(TokenType.NIL)) {
             return new Expr.Literal(null);
@@ -444,8 +617,19 @@ public class Parser {
             return new Expr.Literal(previous().literal());
         }
 
+        if (match(TokenType.THIS)) {
+            return new Expr.This(previous(), new Slot());
+        }
+
+        if (match(TokenType.SUPER)) {
+            var keyword = previous();
+            consume(TokenType.DOT, "Expect '.' after 'super'");
+            var method = consume(TokenType.IDENTIFIER, "Expect superclass method name");
+            return new Expr.Super(keyword, method, new Slot(), new Slot());
+        }
+
         if (match(TokenType.IDENTIFIER)) {
-            return new Expr.Variable(previous());
+            return new Expr.Variable(previous(), new Slot());
         }
 
         if (match(TokenType.LEFT_PAREN)) {
@@ -454,6 +638,10 @@ public class Parser {
             return new Expr.Grouping(expr);
         }
 
+        if (match(TokenType.LEFT_BRACKET)) {
+            return listLiteral();
+        }
+
         throw new Error(peek(), "Expect expression");
     }
 
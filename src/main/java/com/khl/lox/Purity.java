@@ -0,0 +1,374 @@
+package com.khl.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A static pass that finds the top-level functions whose results only depend on their arguments.
+ *
+ * <p>
+ * A function is pure when its body does not print, does not assign anything but its own locals, does not declare
+ * functions or classes, does not touch properties, lists or {@code this}, and only calls (or reads) globals that are
+ * themselves pure: top-level functions that are declared once and never reassigned, or natives marked as pure. Pure
+ * functions are flagged in their {@link com.khl.lox.Layout} so that the interpreter can memoize them.
+ * </p>
+ *
+ * <p>
+ * The analysis is conservative and runs after the {@link com.khl.lox.Resolver}, whose slot kinds tell globals apart
+ * from locals. Natives are checked against the exports of the {@link com.khl.lox.NativeRegistry}, so that the analysis
+ * does not bind any native module.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+class Purity implements Expr.Visitor<Void>, Stmt.Visitor {
+    /**
+     * Flags the pure top-level functions of a resolved script.
+     *
+     * @param statements the AST statement nodes of the script
+     */
+    static void analyze(List<Stmt> statements) {
+        var summaries = new ArrayList<Summary>(statements.size());
+        for (var statement : statements) {
+            summaries.add(summarize(statement));
+        }
+        analyze(summaries.toArray(new Summary[0]));
+    }
+
+    /**
+     * Flags the pure top-level functions of a resolved script, given a summary of each of its statements.
+     */
+    private static void analyze(Summary... summaries) {
+        var purity = new Purity();
+
+        for (var summary : summaries) {
+            if (summary.candidate != null) {
+                // A script that is analyzed again may have changed, and what was pure before may not be anymore
+                summary.candidate.declaration.layout().pure = false;
+                purity.candidates.put(summary.candidate.declaration.name().lexeme(), summary.candidate);
+            }
+            if (summary.declared != null) {
+                purity.declarations.merge(summary.declared, 1, Integer::sum);
+            }
+            purity.assigned.addAll(summary.assigned);
+        }
+
+        purity.finish();
+    }
+
+    /**
+     * Analyzes a single resolved top-level statement, returning what it contributes to the analysis of the script.
+     */
+    private static Summary summarize(Stmt statement) {
+        var purity = new Purity();
+
+        if (statement instanceof Stmt.Function function && function.slot().kind == Slot.Kind.GLOBAL) {
+            purity.current = new Candidate(function);
+            purity.resolve(function.body());
+        } else {
+            purity.resolve(statement);
+        }
+
+        String declared = null;
+        if (statement instanceof Stmt.Function || statement instanceof Stmt.Var || statement instanceof Stmt.Class) {
+            declared = declaredName(statement);
+        }
+
+        return new Summary(declared, purity.current, purity.assigned);
+    }
+
+    /**
+     * What a top-level statement contributes to the analysis of a script.
+     */
+    private static final class Summary {
+        private Summary(String declared, Candidate candidate, Set<String> assigned) {
+            this.declared = declared;
+            this.candidate = candidate;
+            this.assigned = assigned;
+        }
+
+        private final String declared;
+        private final Candidate candidate;
+        private final Set<String> assigned;
+    }
+
+    /**
+     * What is known about a top-level function while its body is analyzed.
+     */
+    private static class Candidate {
+        Candidate(Stmt.Function declaration) {
+            this.declaration = declaration;
+        }
+
+        final Stmt.Function declaration;
+        final Set<String> globals = new HashSet<>();
+        boolean impure;
+    }
+
+    private final Map<String, Candidate> candidates = new HashMap<>();
+    private final Map<String, Integer> declarations = new HashMap<>();
+    private final Set<String> assigned = new HashSet<>();
+    private Candidate current;
+
+    private static String declaredName(Stmt statement) {
+        return switch (statement) {
+            case Stmt.Function function -> function.name().lexeme();
+            case Stmt.Var var -> var.name().lexeme();
+            case Stmt.Class klass -> klass.name().lexeme();
+            default -> throw new IllegalArgumentException(statement.toString());
+        };
+    }
+
+    private void finish() {
+        // Assume every candidate is pure and keep discarding the ones that depend on something impure, so that
+        // (mutually) recursive functions can still be found to be pure
+
+        candidates.values().removeIf(candidate -> candidate.impure || isReassigned(candidate.declaration.name()));
+
+        var changed = true;
+        while (changed) {
+            changed = candidates.values().removeIf(candidate -> !candidate.globals.stream().allMatch(this::isPure));
+        }
+
+        for (var candidate : candidates.values()) {
+            candidate.declaration.layout().pure = true;
+        }
+    }
+
+    private boolean isReassigned(Token name) {
+        return assigned.contains(name.lexeme()) || declarations.getOrDefault(name.lexeme(), 0) > 1;
+    }
+
+    private boolean isPure(String global) {
+        if (candidates.containsKey(global)) {
+            return true;
+        }
+        if (declarations.containsKey(global) || assigned.contains(global)) {
+            return false;
+        }
+
+        return NativeRegistry.isPure(global);
+    }
+
+    private void markImpure() {
+        if (current != null) {
+            current.impure = true;
+        }
+    }
+
+    private void resolve(List<Stmt> statements) {
+        for (var statement : statements) {
+            resolve(statement);
+        }
+    }
+
+    private void resolve(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void resolveExpression(Expr expr) {
+        expr.accept(this);
+    }
+
+    //
+    // Stmt
+    //
+
+    @Override
+    public void visitBlock(Stmt.Block stmt) {
+        resolve(stmt.body());
+    }
+
+    @Override
+    public void visitClass(Stmt.Class stmt) {
+        markImpure();
+        if (stmt.superclass() != null) {
+            resolveExpression(stmt.superclass());
+        }
+        for (var method : stmt.methods()) {
+            resolve(method.body());
+        }
+    }
+
+    @Override
+    public void visitExpression(Stmt.Expression stmt) {
+        resolveExpression(stmt.expression());
+    }
+
+    @Override
+    public void visitFunction(Stmt.Function stmt) {
+        // A closure created by a call would be shared by every cached call
+        markImpure();
+        resolve(stmt.body());
+    }
+
+    @Override
+    public void visitIf(Stmt.If stmt) {
+        resolveExpression(stmt.condition());
+        resolve(stmt.thenBranch());
+        if (stmt.elseBranch() != null) {
+            resolve(stmt.elseBranch());
+        }
+    }
+
+    @Override
+    public void visitImport(Stmt.Import stmt) {
+        // Imports only appear in top-level code
+    }
+
+    @Override
+    public void visitPrint(Stmt.Print stmt) {
+        markImpure();
+        resolveExpression(stmt.value());
+    }
+
+    @Override
+    public void visitReturn(Stmt.Return stmt) {
+        if (stmt.value() != null) {
+            resolveExpression(stmt.value());
+        }
+    }
+
+    @Override
+    public void visitVar(Stmt.Var stmt) {
+        resolveExpression(stmt.initializer());
+    }
+
+    @Override
+    public void visitWhile(Stmt.While stmt) {
+        resolveExpression(stmt.condition());
+        resolve(stmt.body());
+    }
+
+    //
+    // Expr
+    //
+
+    @Override
+    public Void visitAssign(Expr.Assign expr) {
+        if (expr.slot().kind == Slot.Kind.GLOBAL) {
+            assigned.add(expr.name().lexeme());
+        }
+        if (expr.slot().kind != Slot.Kind.LOCAL) {
+            markImpure();
+        }
+
+        resolveExpression(expr.value());
+        return null;
+    }
+
+    @Override
+    public Void visitBinary(Expr.Binary expr) {
+        resolveExpression(expr.left());
+        resolveExpression(expr.right());
+        return null;
+    }
+
+    @Override
+    public Void visitCall(Expr.Call expr) {
+        // Only calls to globals can be checked, since anything else could evaluate to any function
+
+        if (!(expr.callee() instanceof Expr.Variable variable) || variable.slot().kind != Slot.Kind.GLOBAL) {
+            markImpure();
+        }
+
+        resolveExpression(expr.callee());
+        for (var argument : expr.arguments()) {
+            resolveExpression(argument);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGet(Expr.Get expr) {
+        markImpure();
+        resolveExpression(expr.object());
+        return null;
+    }
+
+    @Override
+    public Void visitGrouping(Expr.Grouping expr) {
+        resolveExpression(expr.expression());
+        return null;
+    }
+
+    @Override
+    public Void visitIndex(Expr.Index expr) {
+        markImpure();
+        resolveExpression(expr.object());
+        resolveExpression(expr.index());
+        return null;
+    }
+
+    @Override
+    public Void visitListLiteral(Expr.ListLiteral expr) {
+        markImpure();
+        for (var element : expr.elements()) {
+            resolveExpression(element);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLiteral(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitLogical(Expr.Logical expr) {
+        resolveExpression(expr.left());
+        resolveExpression(expr.right());
+        return null;
+    }
+
+    @Override
+    public Void visitSet(Expr.Set expr) {
+        markImpure();
+        resolveExpression(expr.object());
+        resolveExpression(expr.value());
+        return null;
+    }
+
+    @Override
+    public Void visitSetIndex(Expr.SetIndex expr) {
+        markImpure();
+        resolveExpression(expr.object());
+        resolveExpression(expr.index());
+        resolveExpression(expr.value());
+        return null;
+    }
+
+    @Override
+    public Void visitSuper(Expr.Super expr) {
+        markImpure();
+        return null;
+    }
+
+    @Override
+    public Void visitThis(Expr.This expr) {
+        markImpure();
+        return null;
+    }
+
+    @Override
+    public Void visitUnary(Expr.Unary expr) {
+        resolveExpression(expr.right());
+        return null;
+    }
+
+    @Override
+    public Void visitVariable(Expr.Variable expr) {
+        if (expr.slot().kind == Slot.Kind.GLOBAL) {
+            if (current != null) {
+                current.globals.add(expr.name().lexeme());
+            }
+        } else if (expr.slot().kind != Slot.Kind.LOCAL) {
+            markImpure();
+        }
+        return null;
+    }
+}
\ No newline at end of file
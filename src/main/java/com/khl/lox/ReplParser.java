@@ -0,0 +1,58 @@
+package com.khl.lox;
+
+import org.jline.reader.EOFError;
+import org.jline.reader.ParsedLine;
+import org.jline.reader.Parser;
+import org.jline.reader.SyntaxError;
+import org.jline.reader.impl.DefaultParser;
+
+/**
+ * Decides whether the input of the REPL is complete, so that a declaration can span several lines.
+ *
+ * <p>
+ * Every time enter is pressed, the input so far is checked for a syntax error at its very end, such as a block that
+ * has not been closed yet, in which case the REPL asks for another line instead of running it. An empty line runs the
+ * input regardless. The input is kept in a {@link com.khl.lox.Document}, so only the lines that have changed since the
+ * last check are parsed again.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+final class ReplParser implements Parser {
+    @Override
+    public ParsedLine parse(String line, int cursor, ParseContext context) throws SyntaxError {
+        if (context == ParseContext.ACCEPT_LINE && isIncomplete(line)) {
+            throw new EOFError(-1, -1, "Incomplete input");
+        }
+        return words.parse(line, cursor, context);
+    }
+
+    private final DefaultParser words = new DefaultParser();
+    private final Document document = new Document("");
+
+    private boolean isIncomplete(String input) {
+        if (input.isBlank() || input.endsWith("\n")) {
+            return false;
+        }
+
+        // Only the part between the common prefix and suffix of the old and the new input has changed
+
+        var source = document.source();
+        var prefix = 0;
+        var limit = Math.min(source.length(), input.length());
+        while (prefix < limit && source.charAt(prefix) == input.charAt(prefix)) {
+            prefix++;
+        }
+
+        var suffix = 0;
+        limit -= prefix;
+        while (suffix < limit
+                && source.charAt(source.length() - 1 - suffix) == input.charAt(input.length() - 1 - suffix)) {
+            suffix++;
+        }
+
+        var result = document.edit(prefix, source.length() - prefix - suffix,
+                input.substring(prefix, input.length() - suffix));
+        return result.errors().stream().anyMatch(error -> error.token().type() == TokenType.EOF);
+    }
+}
\ No newline at end of file
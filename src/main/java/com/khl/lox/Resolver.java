@@ -0,0 +1,536 @@
+package com.khl.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A static pass that determines where every Lox variable is stored.
+ *
+ * <p>
+ * Local variables are assigned a slot in the frame of the function that declares them. A closure only captures the
+ * variables its body actually references: captured locals are boxed in a cell that is shared between the declaring
+ * frame and the closure, while everything else in the enclosing scopes stays out of reach of the closure. Variables
+ * that cannot be found in any enclosing scope are looked up by name in the global environment at runtime.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+class Resolver implements Expr.Visitor<Void>, Stmt.Visitor {
+    /**
+     * Resolves the variables of a top-level script.
+     *
+     * @param statements the AST statement nodes of the script
+     * @param errors     the list to record resolution errors in
+     * @return the frame layout of the script
+     */
+    static Layout resolve(List<Stmt> statements, List<Parser.Error> errors) {
+        var resolver = new Resolver(errors);
+        resolver.resolve(statements);
+        resolver.function.finish();
+        return resolver.function.layout;
+    }
+
+    /**
+     * Resolves the variables of a single top-level statement.
+     *
+     * <p>
+     * Top-level declarations are globals, so a top-level statement resolves the same no matter what else the script
+     * contains. This lets a {@link com.khl.lox.Document} only resolve the statements that an edit has changed.
+     * </p>
+     *
+     * @param statement the AST statement node
+     * @param errors    the list to record resolution errors in
+     * @return the number of slots that the statement needs in the frame of the script
+     */
+    static int resolve(Stmt statement, List<Parser.Error> errors) {
+        var resolver = new Resolver(errors);
+        resolver.resolve(statement);
+        return resolver.function.layout.size;
+    }
+
+    /**
+     * The kind of function body that is currently being resolved.
+     */
+    private enum FunctionType {
+        NONE, FUNCTION, INITIALIZER, METHOD
+    }
+
+    /**
+     * The kind of class body that is currently being resolved.
+     */
+    private enum ClassType {
+        NONE, CLASS, SUBCLASS
+    }
+
+    /**
+     * A local variable declaration.
+     */
+    private static class Variable {
+        Variable(Slot slot, FunctionState owner) {
+            this.slot = slot;
+            this.owner = owner;
+        }
+
+        final Slot slot;
+        final FunctionState owner;
+        final List<Slot> references = new ArrayList<>();
+        boolean defined;
+        boolean captured;
+        boolean hoisted;
+    }
+
+    /**
+     * The resolution state of the function body (or top-level script) that is currently being resolved.
+     */
+    private static class FunctionState {
+        FunctionState(FunctionState enclosing, FunctionType type, Layout layout) {
+            this.enclosing = enclosing;
+            this.type = type;
+            this.layout = layout;
+        }
+
+        /**
+         * Allocates a frame slot, reusing the slots of scopes that have already ended.
+         */
+        int allocate() {
+            layout.size = Math.max(layout.size, next + 1);
+            return next++;
+        }
+
+        /**
+         * Returns the index of the upvalue for a variable of an enclosing function, capturing it if needed.
+         */
+        int capture(Variable variable) {
+            var index = upvalues.get(variable);
+            if (index != null) {
+                return index;
+            }
+
+            var source = new Slot();
+            if (enclosing == variable.owner) {
+                variable.captured = true;
+                source.kind = Slot.Kind.CELL;
+                source.index = variable.slot.index;
+            } else {
+                source.kind = Slot.Kind.UPVALUE;
+                source.index = enclosing.capture(variable);
+            }
+
+            index = captures.size();
+            captures.add(source);
+            upvalues.put(variable, index);
+            return index;
+        }
+
+        void finish() {
+            layout.captures = captures.toArray(new Slot[0]);
+        }
+
+        final FunctionState enclosing;
+        final FunctionType type;
+        final Layout layout;
+        final List<Slot> captures = new ArrayList<>();
+        final Map<Variable, Integer> upvalues = new IdentityHashMap<>();
+        int next;
+    }
+
+    private final List<Parser.Error> errors;
+    private final List<Map<String, Variable>> scopes = new ArrayList<>();
+    private FunctionState function = new FunctionState(null, FunctionType.NONE, new Layout());
+    private ClassType currentClass = ClassType.NONE;
+
+    private Resolver(List<Parser.Error> errors) {
+        this.errors = errors;
+    }
+
+    private void resolve(List<Stmt> statements) {
+        for (var statement : statements) {
+            resolve(statement);
+        }
+    }
+
+    private void resolve(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void resolveExpression(Expr expr) {
+        expr.accept(this);
+    }
+
+    private void beginScope() {
+        scopes.add(new HashMap<>());
+    }
+
+    private void endScope() {
+        var scope = scopes.remove(scopes.size() - 1);
+
+        // Now that every closure that could capture them has been seen, fix up how the variables are stored
+
+        for (var variable : scope.values()) {
+            var kind = variable.captured ? Slot.Kind.CELL : Slot.Kind.LOCAL;
+
+            variable.slot.kind = kind;
+            for (var reference : variable.references) {
+                reference.kind = kind;
+                reference.index = variable.slot.index;
+            }
+        }
+
+        function.next -= scope.size();
+    }
+
+    private Variable declare(Token name, Slot slot) {
+        if (scopes.isEmpty()) {
+            slot.kind = Slot.Kind.GLOBAL;
+            return null;
+        }
+
+        var scope = scopes.get(scopes.size() - 1);
+        if (scope.containsKey(name.lexeme())) {
+            errors.add(new Parser.Error(name, "Already a variable with this name in this scope"));
+            return scope.get(name.lexeme());
+        }
+
+        var variable = new Variable(slot, function);
+        slot.kind = Slot.Kind.LOCAL;
+        slot.index = function.allocate();
+        scope.put(name.lexeme(), variable);
+        return variable;
+    }
+
+    private void define(Variable variable) {
+        if (variable != null) {
+            variable.defined = true;
+        }
+    }
+
+    private Variable lookup(String name) {
+        for (var i = scopes.size() - 1; i >= 0; i--) {
+            var variable = scopes.get(i).get(name);
+            // A local function is only in scope before its declaration for the closures that can call it later on
+            if (variable != null && !(variable.hoisted && !variable.defined && variable.owner == function)) {
+                return variable;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Declares the local functions of a block or function body before anything in it is resolved, so that functions
+     * can call the functions declared after them, as mutually recursive functions do.
+     */
+    private List<Variable> declareFunctions(List<Stmt> statements) {
+        var functions = new ArrayList<Variable>();
+        if (scopes.isEmpty()) {
+            return functions;
+        }
+
+        var scope = scopes.get(scopes.size() - 1);
+        for (var statement : statements) {
+            // A name that is taken is reported once the function itself is resolved
+            if (statement instanceof Stmt.Function declaration && !scope.containsKey(declaration.name().lexeme())) {
+                var variable = declare(declaration.name(), declaration.slot());
+                variable.hoisted = true;
+                functions.add(variable);
+            }
+        }
+        return functions;
+    }
+
+    /**
+     * Returns the slots of the local functions that closures captured, which the interpreter creates the cells of up
+     * front.
+     */
+    private static List<Slot> cells(List<Variable> functions) {
+        var cells = new ArrayList<Slot>();
+        for (var variable : functions) {
+            if (variable.captured) {
+                cells.add(variable.slot);
+            }
+        }
+        return cells;
+    }
+
+    private void resolveLocal(Token name, Slot slot) {
+        var variable = lookup(name.lexeme());
+
+        if (variable == null) {
+            slot.kind = Slot.Kind.GLOBAL;
+        } else if (variable.owner == function) {
+            variable.references.add(slot);
+        } else {
+            slot.kind = Slot.Kind.UPVALUE;
+            slot.index = function.capture(variable);
+        }
+    }
+
+    private void resolveFunction(Stmt.Function stmt, FunctionType type) {
+        var layout = stmt.layout();
+        function = new FunctionState(function, type, layout);
+        beginScope();
+
+        // Methods receive 'this' in a slot of their own frame, which nested functions capture like any other local
+
+        if (type == FunctionType.METHOD || type == FunctionType.INITIALIZER) {
+            layout.receiver = new Slot();
+            layout.initializer = type == FunctionType.INITIALIZER;
+            define(declare(keyword(stmt.name(), TokenType.THIS), layout.receiver));
+        }
+
+        layout.parameters = new Slot[stmt.parameters().size()];
+        for (var i = 0; i < layout.parameters.length; i++) {
+            layout.parameters[i] = new Slot();
+            define(declare(stmt.parameters().get(i), layout.parameters[i]));
+        }
+        var functions = declareFunctions(stmt.body());
+        resolve(stmt.body());
+
+        endScope();
+        layout.cells = cells(functions).toArray(new Slot[0]);
+        function.finish();
+        function = function.enclosing;
+    }
+
+    private static Token keyword(Token location, TokenType type) {
+        return new Token(type, type.name().toLowerCase(), null, location.line());
+    }
+
+    //
+    // Stmt
+    //
+
+    @Override
+    public void visitBlock(Stmt.Block stmt) {
+        beginScope();
+        var functions = declareFunctions(stmt.body());
+        resolve(stmt.body());
+        endScope();
+
+        stmt.cells().clear();
+        stmt.cells().addAll(cells(functions));
+    }
+
+    @Override
+    public void visitClass(Stmt.Class stmt) {
+        var enclosingClass = currentClass;
+        currentClass = ClassType.CLASS;
+
+        define(declare(stmt.name(), stmt.slot()));
+
+        // The superclass is stored in a 'super' variable of a scope enclosing the methods, which capture it
+
+        if (stmt.superclass() != null) {
+            if (stmt.superclass().name().lexeme().equals(stmt.name().lexeme())) {
+                errors.add(new Parser.Error(stmt.superclass().name(), "A class can't inherit from itself"));
+            }
+
+            currentClass = ClassType.SUBCLASS;
+            resolveExpression(stmt.superclass());
+
+            beginScope();
+            define(declare(keyword(stmt.name(), TokenType.SUPER), stmt.superSlot()));
+        }
+
+        for (var method : stmt.methods()) {
+            var type = method.name().lexeme().equals("init") ? FunctionType.INITIALIZER : FunctionType.METHOD;
+            resolveFunction(method, type);
+        }
+
+        if (stmt.superclass() != null) {
+            endScope();
+        }
+
+        currentClass = enclosingClass;
+    }
+
+    @Override
+    public void visitExpression(Stmt.Expression stmt) {
+        resolveExpression(stmt.expression());
+    }
+
+    @Override
+    public void visitFunction(Stmt.Function stmt) {
+        // Local functions were declared along with the rest of their block, and the name is defined before the body
+        // is resolved so that the function can refer to itself recursively
+        var variable = scopes.isEmpty() ? null : scopes.get(scopes.size() - 1).get(stmt.name().lexeme());
+        if (variable == null || variable.slot != stmt.slot()) {
+            variable = declare(stmt.name(), stmt.slot());
+        }
+        define(variable);
+        resolveFunction(stmt, FunctionType.FUNCTION);
+    }
+
+    @Override
+    public void visitIf(Stmt.If stmt) {
+        resolveExpression(stmt.condition());
+        resolve(stmt.thenBranch());
+        if (stmt.elseBranch() != null) {
+            resolve(stmt.elseBranch());
+        }
+    }
+
+    @Override
+    public void visitImport(Stmt.Import stmt) {
+        // Modules define globals, so they can only be imported where globals are declared
+        if (function.type != FunctionType.NONE || !scopes.isEmpty()) {
+            errors.add(new Parser.Error(stmt.keyword(), "Can't import outside of top-level code"));
+        }
+    }
+
+    @Override
+    public void visitPrint(Stmt.Print stmt) {
+        resolveExpression(stmt.value());
+    }
+
+    @Override
+    public void visitReturn(Stmt.Return stmt) {
+        if (function.type == FunctionType.NONE) {
+            errors.add(new Parser.Error(stmt.keyword(), "Can't return from top-level code"));
+        }
+        if (stmt.value() != null) {
+            if (function.type == FunctionType.INITIALIZER) {
+                errors.add(new Parser.Error(stmt.keyword(), "Can't return a value from an initializer"));
+            }
+
+            resolveExpression(stmt.value());
+        }
+    }
+
+    @Override
+    public void visitVar(Stmt.Var stmt) {
+        var variable = declare(stmt.name(), stmt.slot());
+        resolveExpression(stmt.initializer());
+        define(variable);
+    }
+
+    @Override
+    public void visitWhile(Stmt.While stmt) {
+        resolveExpression(stmt.condition());
+        resolve(stmt.body());
+    }
+
+    //
+    // Expr
+    //
+
+    @Override
+    public Void visitAssign(Expr.Assign expr) {
+        resolveExpression(expr.value());
+        resolveLocal(expr.name(), expr.slot());
+        return null;
+    }
+
+    @Override
+    public Void visitBinary(Expr.Binary expr) {
+        resolveExpression(expr.left());
+        resolveExpression(expr.right());
+        return null;
+    }
+
+    @Override
+    public Void visitCall(Expr.Call expr) {
+        resolveExpression(expr.callee());
+        for (var argument : expr.arguments()) {
+            resolveExpression(argument);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGet(Expr.Get expr) {
+        resolveExpression(expr.object());
+        return null;
+    }
+
+    @Override
+    public Void visitGrouping(Expr.Grouping expr) {
+        resolveExpression(expr.expression());
+        return null;
+    }
+
+    @Override
+    public Void visitIndex(Expr.Index expr) {
+        resolveExpression(expr.object());
+        resolveExpression(expr.index());
+        return null;
+    }
+
+    @Override
+    public Void visitListLiteral(Expr.ListLiteral expr) {
+        for (var element : expr.elements()) {
+            resolveExpression(element);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLiteral(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitLogical(Expr.Logical expr) {
+        resolveExpression(expr.left());
+        resolveExpression(expr.right());
+        return null;
+    }
+
+    @Override
+    public Void visitSet(Expr.Set expr) {
+        resolveExpression(expr.value());
+        resolveExpression(expr.object());
+        return null;
+    }
+
+    @Override
+    public Void visitSetIndex(Expr.SetIndex expr) {
+        resolveExpression(expr.object());
+        resolveExpression(expr.index());
+        resolveExpression(expr.value());
+        return null;
+    }
+
+    @Override
+    public Void visitSuper(Expr.Super expr) {
+        if (currentClass == ClassType.NONE) {
+            errors.add(new Parser.Error(expr.keyword(), "Can't use 'super' outside of a class"));
+        } else if (currentClass != ClassType.SUBCLASS) {
+            errors.add(new Parser.Error(expr.keyword(), "Can't use 'super' in a class with no superclass"));
+        }
+
+        resolveLocal(expr.keyword(), expr.superclass());
+        resolveLocal(keyword(expr.keyword(), TokenType.THIS), expr.instance());
+        return null;
+    }
+
+    @Override
+    public Void visitThis(Expr.This expr) {
+        if (currentClass == ClassType.NONE) {
+            errors.add(new Parser.Error(expr.keyword(), "Can't use 'this' outside of a class"));
+            return null;
+        }
+
+        resolveLocal(expr.keyword(), expr.slot());
+        return null;
+    }
+
+    @Override
+    public Void visitUnary(Expr.Unary expr) {
+        resolveExpression(expr.right());
+        return null;
+    }
+
+    @Override
+    public Void visitVariable(Expr.Variable expr) {
+        var variable = lookup(expr.name().lexeme());
+        if (variable != null && variable.owner == function && !variable.defined) {
+            errors.add(new Parser.Error(expr.name(), "Can't read local variable in its own initializer"));
+        }
+
+        resolveLocal(expr.name(), expr.slot());
+        return null;
+    }
+}
\ No newline at end of file
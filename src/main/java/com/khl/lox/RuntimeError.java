@@ -1,19 +1,126 @@
 package com.khl.lox;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * An error that occurs during the Lox interpreter runtime.
  *
+ * <p>
+ * Only the Lox call stack is ever reported, so the Java stack trace is not captured, which keeps throwing an error
+ * cheap no matter how deep the interpreter is. Instead, the Lox call stack is recorded as the error unwinds: every
+ * call of a Lox function that the error escapes from adds a {@link Frame} to its traceback, so calls that succeed
+ * pay nothing for it.
+ * </p>
+ *
  * @author Kevin Lee
  */
 public class RuntimeError extends RuntimeException {
+    /**
+     * A call of a Lox function that an error escaped from.
+     *
+     * @param function the name of the function
+     * @param line     the line that the function was running
+     * @param repeated how many more times the same function escaped the error at the same line right before, as in
+     *                 a recursion
+     */
+    public record Frame(String function, int line, int repeated) {
+        // This is a data class
+    }
+
     public RuntimeError(Token token, String message) {
-        super(message);
+        this(token, message, null);
+    }
+
+    public RuntimeError(Token token, String message, Throwable cause) {
+        super(message, cause, false, false);
         this.token = token;
+        this.line = token.line();
     }
 
     public int getLine() {
         return token.line();
     }
 
+    /**
+     * Returns the calls that the error escaped from, innermost first.
+     *
+     * @return the frames, of which there are at most {@link #MAX_FRAMES}
+     */
+    public List<Frame> getTraceback() {
+        return Collections.unmodifiableList(frames);
+    }
+
+    /**
+     * Returns how many calls the error escaped from beyond the {@link #MAX_FRAMES} that the traceback holds.
+     *
+     * @return the number of calls left out of the traceback
+     */
+    public int getOmittedFrames() {
+        return omitted;
+    }
+
+    /**
+     * Returns the line of top-level code that was running when the error occurred.
+     *
+     * @return the line, once the error has escaped from every call
+     */
+    public int getScriptLine() {
+        return line;
+    }
+
+    static final int MAX_FRAMES = 64;
+
+    /**
+     * Records that the error escaped from a call of a Lox function.
+     *
+     * @param function the name of the function
+     */
+    void leave(String function) {
+        // Once a call has been left out, the last frame is no longer the call right before, so it cannot repeat
+        var last = frames.isEmpty() || truncated ? null : frames.getLast();
+        if (last != null && last.function().equals(function) && last.line() == line) {
+            frames.set(frames.size() - 1, new Frame(function, line, last.repeated() + 1));
+        } else if (frames.size() < MAX_FRAMES) {
+            frames.add(new Frame(function, line, 0));
+        } else {
+            omitted++;
+            truncated = true;
+        }
+
+        line = UNKNOWN_LINE;
+    }
+
+    /**
+     * Records where the call that the error last escaped from was made, unless the error did not come from a call.
+     *
+     * @param paren the location of the call
+     */
+    void call(Token paren) {
+        if (line == UNKNOWN_LINE) {
+            line = paren.line();
+        }
+    }
+
+    /**
+     * Records calls that the error escaped from without a traceback frame, as it unwinds a stack overflow.
+     *
+     * @param calls the number of calls
+     */
+    void omit(int calls) {
+        omitted += calls;
+    }
+
+    private static final int UNKNOWN_LINE = -1;
+
     private final Token token;
+    private final List<Frame> frames = new ArrayList<>();
+    private int omitted;
+    private boolean truncated;
+
+    /**
+     * The line that the innermost call the error has not escaped from yet was running.
+     */
+    private int line;
 }
\ No newline at end of file
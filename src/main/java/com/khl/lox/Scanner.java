@@ -1,9 +1,8 @@
 package com.khl.lox;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 /**
  * A scanner that converts source code into lexical tokens.
@@ -26,37 +25,101 @@ public class Scanner {
         return new Scanner(source).scanTokens();
     }
 
+    /**
+     * The tokens of a re-scanned part of the source code.
+     *
+     * @param tokens  the lexical tokens, including errors, which end with an EOF token if the rest of the source was
+     *                scanned
+     * @param offsets the offset in the source that each token starts at
+     * @param stop    the index of the stop offset that scanning stopped at, or {@code -1} if it did not stop
+     */
+    record Rescan(List<Token> tokens, int[] offsets, int stop) {
+        // This is a data class
+    }
+
+    /**
+     * Converts part of edited source code into lexical tokens, for a {@link com.khl.lox.Document}.
+     *
+     * <p>
+     * Scanning starts at an offset that a token starts at, and stops at the first of the given offsets that a token
+     * starts at, since the source after it is known to scan the same as before the edit. If there is no such offset,
+     * the rest of the source is scanned.
+     * </p>
+     *
+     * @param source the source code
+     * @param from   the offset to start at
+     * @param line   the line that the offset is on
+     * @param stops  the offsets that scanning may stop at, in ascending order
+     * @return the tokens that were scanned
+     */
+    static Rescan rescan(String source, int from, int line, int[] stops) {
+        var scanner = new Scanner(source);
+        scanner.current = from;
+        scanner.line = line;
+        return scanner.rescan(stops);
+    }
+
     //
     // Internal
     //
 
-    private static final Map<String, TokenType> KEYWORDS = new HashMap<>(16) {
-        {
-            put("and", TokenType.AND);
-            put("class", TokenType.CLASS);
-            put("else", TokenType.ELSE);
-            put("false", TokenType.FALSE);
-            put("for", TokenType.FOR);
-            put("fun", TokenType.FUN);
-            put("if", TokenType.IF);
-            put("nil", TokenType.NIL);
-            put("or", TokenType.OR);
-            put("print", TokenType.PRINT);
-            put("return", TokenType.RETURN);
-            put("super", TokenType.SUPER);
-            put("this", TokenType.THIS);
-            put("true", TokenType.TRUE);
-            put("var", TokenType.VAR);
-            put("while", TokenType.WHILE);
+    // Character classes of ASCII characters, looked up instead of comparing against character ranges
+
+    private static final byte ALPHA = 1;
+    private static final byte DIGIT = 2;
+    private static final byte[] CHARACTER_CLASSES = new byte[128];
+
+    static {
+        for (var ch = 'a'; ch <= 'z'; ch++) {
+            CHARACTER_CLASSES[ch] = ALPHA;
+            CHARACTER_CLASSES[Character.toUpperCase(ch)] = ALPHA;
+        }
+        CHARACTER_CLASSES['_'] = ALPHA;
+        for (var ch = '0'; ch <= '9'; ch++) {
+            CHARACTER_CLASSES[ch] = DIGIT;
+        }
+    }
+
+    private static final int INITIAL_CONSTANTS = 256;
+
+    // Small integer literals are common enough that their values and lexemes are shared by every token
+
+    private static final int CACHED_INTEGERS = 1024;
+    private static final Double[] INTEGER_VALUES = new Double[CACHED_INTEGERS];
+    private static final String[] INTEGER_LEXEMES = new String[CACHED_INTEGERS];
+
+    static {
+        for (var i = 0; i < CACHED_INTEGERS; i++) {
+            INTEGER_VALUES[i] = (double) i;
+            INTEGER_LEXEMES[i] = Integer.toString(i);
         }
+    }
+
+    /**
+     * The powers of ten that a double represents exactly.
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
     };
 
+    /**
+     * The number of digits that fit into the 53-bit mantissa of a double without rounding.
+     */
+    private static final int EXACT_DIGITS = 15;
+
     private final String source;
     private final List<Token> tokens = new ArrayList<>();
     private int start;
     private int current;
     private int line = 1;
 
+    // The identifiers and string literals seen so far, in an open-addressing table keyed by their characters in the
+    // source, so that repeated occurrences reuse one interned string without allocating
+
+    private String[] constants = new String[INITIAL_CONSTANTS];
+    private int constantCount;
+
     private Scanner(String source) {
         this.source = source;
     }
@@ -71,6 +134,36 @@ public class Scanner {
         return tokens;
     }
 
+    private Rescan rescan(int[] stops) {
+        var offsets = new int[16];
+        var stop = 0;
+
+        while (isScanning()) {
+            while (stop < stops.length && stops[stop] < current) {
+                stop++;
+            }
+            if (stop < stops.length && stops[stop] == current) {
+                return new Rescan(tokens, Arrays.copyOf(offsets, tokens.size()), stop);
+            }
+
+            start = current;
+            var count = tokens.size();
+            scan();
+
+            if (tokens.size() > count) {
+                if (count == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                offsets[count] = start;
+            }
+        }
+
+        tokens.add(new Token(TokenType.EOF, "", null, line));
+        offsets = Arrays.copyOf(offsets, tokens.size());
+        offsets[tokens.size() - 1] = source.length();
+        return new Rescan(tokens, offsets, -1);
+    }
+
     private char advance() {
         return source.charAt(current++);
     }
@@ -80,7 +173,7 @@ public class Scanner {
     }
 
     private void addToken(TokenType type) {
-        addToken(type, null);
+        tokens.add(new Token(type, type.lexeme(), null, line));
     }
 
     private void addToken(TokenType type, Object literal) {
@@ -91,16 +184,63 @@ public class Scanner {
         return source.substring(start, current);
     }
 
-    private boolean isAlpha(char ch) {
-        return ch == '_' || (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z');
+    /**
+     * Returns the string for a range of the source, which is an identifier or the contents of a string literal.
+     *
+     * <p>
+     * The first occurrence of a string is deduplicated through the JVM string table, which is shared by every script
+     * in the process and lets go of strings that are no longer referenced. Later occurrences in the same source are
+     * found by their characters and hash, which is computed the same way as {@link String#hashCode()}.
+     * </p>
+     */
+    private String constant(int from, int to, int hash) {
+        var mask = constants.length - 1;
+        var length = to - from;
+
+        for (var index = (hash ^ (hash >>> 16)) & mask; ; index = (index + 1) & mask) {
+            var constant = constants[index];
+            if (constant == null) {
+                constant = source.substring(from, to).intern();
+                constants[index] = constant;
+                if (++constantCount * 2 > constants.length) {
+                    growConstants();
+                }
+                return constant;
+            }
+            if (constant.length() == length && constant.hashCode() == hash
+                    && source.regionMatches(from, constant, 0, length)) {
+                return constant;
+            }
+        }
+    }
+
+    private void growConstants() {
+        var previous = constants;
+        constants = new String[previous.length * 2];
+
+        var mask = constants.length - 1;
+        for (var constant : previous) {
+            if (constant != null) {
+                var hash = constant.hashCode();
+                var index = (hash ^ (hash >>> 16)) & mask;
+                while (constants[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                constants[index] = constant;
+            }
+        }
     }
 
-    private boolean isAlphaDigit(char ch) {
-        return isAlpha(ch) || isDigit(ch);
+    private static boolean isAlpha(char ch) {
+        return ch < 128 && CHARACTER_CLASSES[ch] == ALPHA;
     }
 
-    private boolean isDigit(char ch) {
-        return ch >= '0' && ch <= '9';
+    private static boolean isAlphaDigit(char ch) {
+        return ch < 128 && CHARACTER_CLASSES[ch] != 0;
+    }
+
+    private static boolean isDigit(char ch) {
+        return ch < 128 && CHARACTER_CLASSES[ch] == DIGIT;
     }
 
     private boolean isScanning() {
@@ -131,21 +271,20 @@ public class Scanner {
     }
 
     private boolean skipWhitespace() {
-        var skipped = false;
+        var index = current;
+        var length = source.length();
 
-        while (isScanning()) {
-            switch (peek()) {
-                case '\n':
-                    line++;
-                case ' ', '\r', '\t':
-                    skipped = true;
-                    advance();
-                    break;
-                default:
-                    return skipped;
+        for (; index < length; index++) {
+            var ch = source.charAt(index);
+            if (ch == '\n') {
+                line++;
+            } else if (ch != ' ' && ch != '\r' && ch != '\t') {
+                break;
             }
         }
 
+        var skipped = index > current;
+        current = index;
         return skipped;
     }
 
@@ -161,6 +300,8 @@ public class Scanner {
             case ')' -> addToken(TokenType.RIGHT_PAREN);
             case '{' -> addToken(TokenType.LEFT_BRACE);
             case '}' -> addToken(TokenType.RIGHT_BRACE);
+            case '[' -> addToken(TokenType.LEFT_BRACKET);
+            case ']' -> addToken(TokenType.RIGHT_BRACKET);
             case ',' -> addToken(TokenType.COMMA);
             case '.' -> addToken(TokenType.DOT);
             case '-' -> addToken(TokenType.MINUS);
@@ -194,14 +335,44 @@ public class Scanner {
     }
 
     private void scanNumber() {
-        while (isDigit(peek())) {
-            advance();
+        var length = source.length();
+
+        // The digits are accumulated as they are scanned. Once there are too many of them to be exact, the mantissa
+        // may overflow, but it is not used then.
+
+        var mantissa = (long) (source.charAt(start) - '0');
+        var digits = 1;
+        for (char ch; current < length && isDigit(ch = source.charAt(current)); current++) {
+            mantissa = mantissa * 10 + (ch - '0');
+            digits++;
         }
 
+        var fractionDigits = 0;
         if (peek() == '.' && isDigit(peekNext())) {
-            do {
-                advance();
-            } while (isDigit(peek()));
+            current++;
+            for (char ch; current < length && isDigit(ch = source.charAt(current)); current++) {
+                mantissa = mantissa * 10 + (ch - '0');
+                fractionDigits++;
+            }
+            digits += fractionDigits;
+        }
+
+        // An exact mantissa divided by an exact power of ten is rounded correctly, so only long literals have to go
+        // through the general algorithm
+
+        if (digits <= EXACT_DIGITS) {
+            if (fractionDigits == 0 && mantissa < CACHED_INTEGERS) {
+                var value = (int) mantissa;
+
+                // Leading zeros make the lexeme differ from the shared one
+                if (digits == INTEGER_LEXEMES[value].length()) {
+                    tokens.add(new Token(TokenType.NUMBER, INTEGER_LEXEMES[value], INTEGER_VALUES[value], line));
+                    return;
+                }
+            }
+
+            addToken(TokenType.NUMBER, mantissa / POWERS_OF_TEN[fractionDigits]);
+            return;
         }
 
         try {
@@ -212,11 +383,18 @@ public class Scanner {
     }
 
     private void scanString() {
-        while (isScanning() && peek() != '"') {
-            if (peek() == '\n') {
+        var hash = 0;
+        var length = source.length();
+
+        for (; current < length; current++) {
+            var ch = source.charAt(current);
+            if (ch == '"') {
+                break;
+            }
+            if (ch == '\n') {
                 line++;
             }
-            advance();
+            hash = 31 * hash + ch;
         }
 
         if (!isScanning()) {
@@ -225,14 +403,60 @@ public class Scanner {
         }
 
         advance();
-        addToken(TokenType.STRING, source.substring(start + 1, current - 1));
+        addToken(TokenType.STRING, constant(start + 1, current - 1, hash));
     }
 
     private void scanIdentifier() {
-        while (isAlphaDigit(peek())) {
-            advance();
+        var hash = (int) source.charAt(start);
+        var length = source.length();
+
+        for (; current < length; current++) {
+            var ch = source.charAt(current);
+            if (!isAlphaDigit(ch)) {
+                break;
+            }
+            hash = 31 * hash + ch;
+        }
+
+        var type = keyword(start, current - start);
+        if (type != TokenType.IDENTIFIER) {
+            addToken(type);
+            return;
+        }
+
+        // Identifiers are interned as well, since they are the keys that globals and properties are looked up by
+        tokens.add(new Token(TokenType.IDENTIFIER, constant(start, current, hash), null, line));
+    }
+
+    /**
+     * Recognizes a keyword by its first character and length, comparing the rest against the source in place.
+     */
+    private TokenType keyword(int from, int length) {
+        var candidate = switch (source.charAt(from)) {
+            case 'a' -> TokenType.AND;
+            case 'c' -> TokenType.CLASS;
+            case 'e' -> TokenType.ELSE;
+            case 'f' -> switch (length) {
+                case 3 -> source.charAt(from + 1) == 'o' ? TokenType.FOR : TokenType.FUN;
+                case 5 -> TokenType.FALSE;
+                default -> null;
+            };
+            case 'i' -> length == 2 ? TokenType.IF : TokenType.IMPORT;
+            case 'n' -> TokenType.NIL;
+            case 'o' -> TokenType.OR;
+            case 'p' -> TokenType.PRINT;
+            case 'r' -> TokenType.RETURN;
+            case 's' -> TokenType.SUPER;
+            case 't' -> length == 4 && source.charAt(from + 1) == 'h' ? TokenType.THIS : TokenType.TRUE;
+            case 'v' -> TokenType.VAR;
+            case 'w' -> TokenType.WHILE;
+            default -> null;
+        };
+        if (candidate != null && candidate.lexeme().length() == length
+                && source.regionMatches(from + 1, candidate.lexeme(), 1, length - 1)) {
+            return candidate;
         }
-        addToken(KEYWORDS.getOrDefault(getLexeme(), TokenType.IDENTIFIER));
+        return TokenType.IDENTIFIER;
     }
 
 }
\ No newline at end of file
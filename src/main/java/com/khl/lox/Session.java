@@ -0,0 +1,272 @@
+package com.khl.lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * An isolated Lox interpreter session.
+ *
+ * <p>
+ * Each session owns its own {@link com.khl.lox.Interpreter} (and therefore its own global state) along with the
+ * streams that program output and error reports are written to, so that several sessions can run side by side in the
+ * same process.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+class Session {
+    static final int EXIT_OK = 0;
+    static final int EXIT_USAGE = 64;
+    static final int EXIT_COMPILE_ERROR = 65;
+    static final int EXIT_RUNTIME_ERROR = 70;
+    static final int EXIT_IO_ERROR = 74;
+
+    Session(Output stdout, PrintStream stderr) {
+        this(stdout, stderr, false, false, false, Limits.NONE);
+    }
+
+    /**
+     * Creates a session.
+     *
+     * @param stdout     the output that programs print to
+     * @param stderr     the stream that errors are reported to
+     * @param memoize    whether pure functions are memoized automatically, which only applies to the first script run
+     *                   in the session if it imports nothing and no snapshot has been restored
+     * @param heapStack  whether scripts run on a heap-managed call stack, which allows deep recursion
+     * @param inferTypes whether the types of scripts are inferred before they run, so that operators whose operand
+     *                   types are known skip their checks and operators that always fail are reported up front
+     * @param limits     the limits that every execution within the session is subject to
+     */
+    Session(Output stdout, PrintStream stderr, boolean memoize, boolean heapStack, boolean inferTypes,
+            Limits limits) {
+        this(stdout, stderr, memoize, heapStack, inferTypes, limits, Path.of("").toAbsolutePath());
+    }
+
+    /**
+     * Creates a session whose scripts resolve the paths of the files they access against a working directory other
+     * than the current directory of the process.
+     *
+     * @param stdout     the output that programs print to
+     * @param stderr     the stream that errors are reported to
+     * @param memoize    whether pure functions are memoized automatically
+     * @param heapStack  whether scripts run on a heap-managed call stack
+     * @param inferTypes whether the types of scripts are inferred before they run
+     * @param limits     the limits that every execution within the session is subject to
+     * @param directory  the absolute working directory of the scripts
+     */
+    Session(Output stdout, PrintStream stderr, boolean memoize, boolean heapStack, boolean inferTypes,
+            Limits limits, Path directory) {
+        this.memoizer = new Memoizer(memoize);
+        this.interpreter = new Interpreter(stdout, memoizer, directory);
+        this.stdout = stdout;
+        this.heapStack = heapStack;
+        this.inferTypes = inferTypes;
+        this.limits = limits;
+        this.stderr = stderr;
+    }
+
+    /**
+     * Parses and executes Lox source code within this session.
+     *
+     * @param source the source code
+     * @return {@link #EXIT_OK} on success, {@link #EXIT_COMPILE_ERROR} if a syntax error was reported or
+     * {@link #EXIT_RUNTIME_ERROR} if a runtime error was reported
+     */
+    int run(String source) {
+        return run(source, Path.of("").toAbsolutePath());
+    }
+
+    /**
+     * Parses and executes Lox source code within this session, resolving imported modules against the given
+     * directory.
+     *
+     * @param source    the source code
+     * @param directory the directory of the source file
+     * @return {@link #EXIT_OK} on success, {@link #EXIT_COMPILE_ERROR} if a syntax error was reported (in the source
+     * or in a module it imports) or {@link #EXIT_RUNTIME_ERROR} if a runtime error was reported
+     */
+    int run(String source, Path directory) {
+        return run(Parser.parse(source, directory));
+    }
+
+    /**
+     * Executes already parsed Lox source code within this session, reporting its syntax errors if it has any.
+     *
+     * @param result the parser results
+     * @return {@link #EXIT_OK} on success, {@link #EXIT_COMPILE_ERROR} if a syntax error was reported (in the source
+     * or in a module it imports) or {@link #EXIT_RUNTIME_ERROR} if a runtime error was reported
+     */
+    int run(Parser.Result result) {
+        // Buffered program output has to be written out before any error is reported, and before the caller exits
+        try {
+            return execute(result);
+        } finally {
+            stdout.flush();
+            closeFiles();
+        }
+    }
+
+    /**
+     * Defines the globals saved in a snapshot within this session.
+     *
+     * @param snapshot the snapshot file
+     * @throws IOException if the snapshot cannot be read
+     */
+    void restore(Path snapshot) throws IOException {
+        wholeProgram = false;
+        Snapshot.read(snapshot, interpreter.globals(), memoizer);
+    }
+
+    /**
+     * Saves the globals of this session to a snapshot.
+     *
+     * @param snapshot the snapshot file
+     * @throws IOException if the snapshot cannot be written or a global holds a value that cannot be saved
+     */
+    void save(Path snapshot) throws IOException {
+        Snapshot.write(snapshot, interpreter.globals());
+    }
+
+    /**
+     * Reports the cache statistics of memoized functions if pure functions are memoized automatically, how many
+     * operand checks were eliminated if types are inferred, and the execution counters if they are enabled.
+     */
+    void reportStatistics() {
+        if (memoizer.isAutomatic()) {
+            memoizer.report(stderr);
+        }
+        if (inferTypes) {
+            stderr.printf("types: %d of %d operand checks eliminated%n", eliminatedChecks, operandChecks);
+        }
+        if (Stats.ENABLED) {
+            Stats.report(stderr);
+        }
+    }
+
+    private final Memoizer memoizer;
+    private final Interpreter interpreter;
+    private final Output stdout;
+    private final boolean heapStack;
+    private final boolean inferTypes;
+    private final Limits limits;
+    private final PrintStream stderr;
+    private int operandChecks;
+    private int eliminatedChecks;
+
+    /**
+     * Whether nothing has defined any globals in this session yet, so that the next script is the whole program.
+     */
+    private boolean wholeProgram = true;
+
+    private int execute(Parser.Result result) {
+        reportCompileErrors("", result.errors());
+
+        if (!result.errors().isEmpty()) {
+            return EXIT_COMPILE_ERROR;
+        }
+
+        // Imported modules are parsed up front, so that a module with errors is reported before anything runs
+
+        var failures = ModuleLoader.preload(result.statements());
+        for (var failure : failures) {
+            if (failure.message() != null) {
+                var where = String.format(" at '%s'", failure.site().path().lexeme());
+                reportCompileError(failure.site().path().line(), where, failure.message());
+            } else {
+                reportCompileErrors(String.format(" in '%s'", failure.path()), failure.errors());
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            return EXIT_COMPILE_ERROR;
+        }
+
+        // Purity is only needed to memoize functions automatically, which is off unless asked for. The analysis relies
+        // on seeing every definition of the globals that a function calls, so it only runs on a script that makes up
+        // the whole program: not after a snapshot or an earlier script in the session, and not on one with imports.
+
+        if (memoizer.isAutomatic() && wholeProgram && !imports(result.statements())) {
+            Purity.analyze(result.statements());
+        }
+        wholeProgram = false;
+
+        if (inferTypes) {
+            var types = TypeInference.infer(result.statements(), result.layout());
+            reportCompileErrors("", types.errors());
+
+            if (!types.errors().isEmpty()) {
+                return EXIT_COMPILE_ERROR;
+            }
+
+            operandChecks += types.checks();
+            eliminatedChecks += types.eliminated();
+        }
+
+        var start = Stats.ENABLED ? System.nanoTime() : 0;
+        try {
+            interpreter.interpret(result, new Budget(limits), heapStack);
+        } catch (RuntimeError runtimeError) {
+            stdout.flush();
+            reportRuntimeError(runtimeError);
+            return EXIT_RUNTIME_ERROR;
+        } catch (StackOverflowError stackOverflowError) {
+            // Calls turn an overflow into a runtime error, so only overflows outside of any call get here
+            stdout.flush();
+            stderr.println("Stack overflow.");
+            return EXIT_RUNTIME_ERROR;
+        } finally {
+            if (Stats.ENABLED) {
+                Stats.executeNanos += System.nanoTime() - start;
+            }
+        }
+
+        return EXIT_OK;
+    }
+
+    private static boolean imports(List<Stmt> statements) {
+        return statements.stream().anyMatch(Stmt.Import.class::isInstance);
+    }
+
+    private void closeFiles() {
+        try {
+            interpreter.files().close();
+        } catch (IOException ioException) {
+            stderr.printf("%s.%n", ioException.getMessage());
+        }
+    }
+
+    private void reportCompileErrors(String module, List<Parser.Error> errors) {
+        for (var error : errors) {
+            var token = error.token();
+
+            switch (token.type()) {
+                case EOF -> reportCompileError(token.line(), module + " at end", error.message());
+                case ERROR -> reportCompileError(token.line(), module, error.message());
+                default -> reportCompileError(token.line(), String.format("%s at '%s'", module, token.lexeme()),
+                        error.message());
+            }
+        }
+    }
+
+    private void reportCompileError(int line, String where, String message) {
+        stderr.printf("[line %d] Error%s: %s.\n", line, where, message);
+    }
+
+    private void reportRuntimeError(RuntimeError runtimeError) {
+        stderr.printf("%s.%n", runtimeError.getMessage());
+
+        for (var frame : runtimeError.getTraceback()) {
+            stderr.printf("[line %d] in %s()%n", frame.line(), frame.function());
+            if (frame.repeated() > 0) {
+                stderr.printf("[previous line repeated %d more times]%n", frame.repeated());
+            }
+        }
+        if (runtimeError.getOmittedFrames() > 0) {
+            stderr.printf("[%d more calls]%n", runtimeError.getOmittedFrames());
+        }
+
+        stderr.printf("[line %d] in script%n", runtimeError.getScriptLine());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,81 @@
+package com.khl.lox;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The hidden class of a Lox instance, which maps field names to the indices where their values are stored.
+ *
+ * <p>
+ * Every class has its own root shape with no fields. Adding a field to an instance moves it along a transition to a
+ * child shape, and transitions are shared, so instances whose fields were added in the same order end up with the
+ * very same shape. Shapes are immutable, which lets an {@link com.khl.lox.InlineCache} remember where a field lives
+ * (or which method a name refers to) by shape identity alone.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+final class Shape {
+    Shape(LoxClass owner) {
+        this(owner, Map.of());
+    }
+
+    LoxClass owner() {
+        return owner;
+    }
+
+    /**
+     * Returns the number of fields of this shape.
+     *
+     * @return the number of fields
+     */
+    int size() {
+        return indices.size();
+    }
+
+    /**
+     * Returns the index of a field.
+     *
+     * @param name the name of the field
+     * @return the index of the field, or {@code -1} if this shape has no such field
+     */
+    int indexOf(String name) {
+        var index = indices.get(name);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the names of the fields of this shape.
+     *
+     * @return the names, ordered by index
+     */
+    String[] names() {
+        var names = new String[indices.size()];
+        indices.forEach((name, index) -> names[index] = name);
+        return names;
+    }
+
+    /**
+     * Returns the shape resulting from adding a field to this shape.
+     *
+     * @param name the name of the new field, which must not already exist
+     * @return the child shape, whose new field is stored at index {@link #size()} of this shape
+     */
+    Shape with(String name) {
+        return transitions.computeIfAbsent(name, key -> {
+            var childIndices = new HashMap<>(indices);
+            childIndices.put(key, indices.size());
+            return new Shape(owner, Map.copyOf(childIndices));
+        });
+    }
+
+    private final LoxClass owner;
+    private final Map<String, Integer> indices;
+    private final Map<String, Shape> transitions = new ConcurrentHashMap<>();
+
+    private Shape(LoxClass owner, Map<String, Integer> indices) {
+        this.owner = owner;
+        this.indices = indices;
+    }
+}
\ No newline at end of file
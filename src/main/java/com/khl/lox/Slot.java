@@ -0,0 +1,44 @@
+package com.khl.lox;
+
+/**
+ * The storage location of a Lox variable, as determined by the {@link com.khl.lox.Resolver}.
+ *
+ * <p>
+ * Slots start out as globals and are filled in by the resolver once the variable they refer to is known. Local
+ * variables live at {@link #index} in the frame of the function that declares them; those captured by a closure are
+ * boxed in an {@link com.khl.lox.Interpreter.Cell} so that the declaring frame and every closure share the same value.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+final class Slot {
+    enum Kind {
+        /**
+         * A variable looked up by name in the global environment.
+         */
+        GLOBAL,
+
+        /**
+         * A local variable stored directly in the current frame.
+         */
+        LOCAL,
+
+        /**
+         * A local variable captured by a closure, stored as a cell in the current frame.
+         */
+        CELL,
+
+        /**
+         * A variable of an enclosing function, captured by the current closure.
+         */
+        UPVALUE,
+    }
+
+    Kind kind = Kind.GLOBAL;
+    int index;
+
+    @Override
+    public String toString() {
+        return "%s %d".formatted(kind, index);
+    }
+}
\ No newline at end of file
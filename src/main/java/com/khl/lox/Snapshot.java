@@ -0,0 +1,817 @@
+package com.khl.lox;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * A snapshot of the globals of an interpreter, which lets a script start out with the globals that another script
+ * (typically a prelude of functions and constant tables) left behind, without running that script again.
+ *
+ * <p>
+ * A snapshot is a binary file holding every global value and everything reachable from it: function declarations
+ * along with their resolved slots and layouts, the cells captured by closures, classes, instances, lists and maps.
+ * An object referenced more than once is written once and referred to by its index afterwards, so sharing and cycles
+ * survive the round trip. Strings are written once as well. Restoring a snapshot reads the file front to back in a
+ * single pass, without scanning, parsing or resolving any source code.
+ * </p>
+ *
+ * <p>
+ * Natives are saved by name and bound again when the snapshot is restored, and memoized functions start out with
+ * empty caches. Tasks, channels and callables provided by the host cannot be saved.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+final class Snapshot {
+    /**
+     * Writes the globals of an interpreter to a snapshot file.
+     *
+     * @param file    the snapshot file
+     * @param globals the global environment
+     * @throws IOException if the file cannot be written, or a {@link java.io.NotSerializableException} if a global
+     *                     holds a value that cannot be saved
+     */
+    static void write(Path file, Interpreter.Environment globals) throws IOException {
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            new Writer(out).write(globals);
+        }
+    }
+
+    /**
+     * Defines the globals saved in a snapshot file.
+     *
+     * @param file     the snapshot file
+     * @param globals  the global environment to define the globals in
+     * @param memoizer the memoizer that memoized functions are memoized with again
+     * @throws IOException if the file cannot be read or is not a snapshot written by this version of Lox
+     */
+    static void read(Path file, Interpreter.Environment globals, Memoizer memoizer) throws IOException {
+        var reader = new Reader(ByteBuffer.wrap(Files.readAllBytes(file)), memoizer);
+        try {
+            reader.read(globals);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException
+                 | ClassCastException exception) {
+            throw new IOException("Corrupt snapshot", exception);
+        }
+    }
+
+    private static final int MAGIC = 0x4C4F5853;
+    private static final int VERSION = 3;
+
+    // An object is written as its index if it has been written before, or as NEW_OBJECT followed by its contents
+
+    private static final int NULL_OBJECT = -2;
+    private static final int NEW_OBJECT = -1;
+
+    // Values
+
+    private static final byte NIL = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte NUMBER = 3;
+    private static final byte STRING = 4;
+    private static final byte NATIVE = 5;
+    private static final byte REFERENCE = 6;
+    private static final byte FUNCTION = 7;
+    private static final byte CLASS = 8;
+    private static final byte INSTANCE = 9;
+    private static final byte LIST = 10;
+    private static final byte MAP = 11;
+    private static final byte MEMOIZED = 12;
+
+    // Statements and expressions, where 0 stands for a missing node
+
+    private static final byte NONE = 0;
+
+    private static final byte BLOCK = 1;
+    private static final byte CLASS_DECLARATION = 2;
+    private static final byte EXPRESSION = 3;
+    private static final byte FUNCTION_DECLARATION = 4;
+    private static final byte IF = 5;
+    private static final byte PRINT = 6;
+    private static final byte RETURN = 7;
+    private static final byte VAR = 8;
+    private static final byte WHILE = 9;
+
+    private static final byte ASSIGN = 1;
+    private static final byte BINARY = 2;
+    private static final byte CALL = 3;
+    private static final byte GET = 4;
+    private static final byte GROUPING = 5;
+    private static final byte INDEX = 6;
+    private static final byte LIST_LITERAL = 7;
+    private static final byte LITERAL = 8;
+    private static final byte LOGICAL = 9;
+    private static final byte SET = 10;
+    private static final byte SET_INDEX = 11;
+    private static final byte SUPER = 12;
+    private static final byte THIS = 13;
+    private static final byte UNARY = 14;
+    private static final byte VARIABLE = 15;
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+    private static final Slot.Kind[] SLOT_KINDS = Slot.Kind.values();
+    private static final Operands.Kind[] OPERAND_KINDS = Operands.Kind.values();
+
+    private Snapshot() {
+        // This is a utility class
+    }
+
+    private static final class Writer {
+        Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void write(Interpreter.Environment globals) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            // Natives bound under their own name are left out, since they are bound again on first use anyway
+
+            var values = globals.values();
+            values.entrySet().removeIf(global -> global.getValue() instanceof NativeFunction function
+                    && function.name().equals(global.getKey()));
+
+            out.writeInt(values.size());
+            for (var global : values.entrySet()) {
+                writeString(global.getKey());
+                writeValue(global.getValue());
+            }
+
+            // The values of cells come last, since a closure may capture a cell that holds the closure itself
+            while (!cells.isEmpty()) {
+                writeValue(cells.remove().value);
+            }
+
+            var modules = globals.modules();
+            out.writeInt(modules.size());
+            for (var module : modules) {
+                writeString(module.toString());
+            }
+        }
+
+        private final DataOutputStream out;
+        private final Map<Object, Integer> objects = new IdentityHashMap<>();
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final Queue<Interpreter.Cell> cells = new ArrayDeque<>();
+
+        /**
+         * Writes a reference to an object, returning whether the object is new and its contents have to follow.
+         */
+        private boolean share(Object object) throws IOException {
+            if (object == null) {
+                out.writeInt(NULL_OBJECT);
+                return false;
+            }
+
+            var index = objects.get(object);
+            if (index != null) {
+                out.writeInt(index);
+                return false;
+            }
+
+            objects.put(object, objects.size());
+            out.writeInt(NEW_OBJECT);
+            return true;
+        }
+
+        private void writeString(String string) throws IOException {
+            var index = strings.get(string);
+            if (index != null) {
+                out.writeInt(index);
+                return;
+            }
+
+            strings.put(string, strings.size());
+
+            var bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(-1 - bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeValue(Object value) throws IOException {
+            switch (value) {
+                case null -> out.writeByte(NIL);
+                case Boolean bool -> out.writeByte(bool ? TRUE : FALSE);
+                case Double number -> {
+                    out.writeByte(NUMBER);
+                    out.writeDouble(number);
+                }
+                case String string -> {
+                    out.writeByte(STRING);
+                    writeString(string);
+                }
+                case NativeFunction function -> {
+                    out.writeByte(NATIVE);
+                    writeString(function.name());
+                }
+                default -> writeObject(value);
+            }
+        }
+
+        private void writeObject(Object value) throws IOException {
+            var index = objects.get(value);
+            if (index != null) {
+                out.writeByte(REFERENCE);
+                out.writeInt(index);
+                return;
+            }
+
+            switch (value) {
+                case LoxFunction function -> {
+                    out.writeByte(FUNCTION);
+                    objects.put(function, objects.size());
+                    writeCells(function.closure());
+                    writeDeclaration(function.declaration());
+                    writeValue(function.receiver());
+                }
+                case LoxClass klass -> {
+                    out.writeByte(CLASS);
+                    objects.put(klass, objects.size());
+                    writeString(klass.name());
+                    writeValue(klass.superclass());
+                    out.writeInt(klass.methods().size());
+                    for (var method : klass.methods().entrySet()) {
+                        writeString(method.getKey());
+                        writeValue(method.getValue());
+                    }
+                }
+                case LoxInstance instance -> {
+                    // The class comes first, since the instance cannot be created without it
+                    out.writeByte(INSTANCE);
+                    writeValue(instance.klass());
+                    objects.put(instance, objects.size());
+
+                    var names = instance.shape().names();
+                    out.writeInt(names.length);
+                    for (var i = 0; i < names.length; i++) {
+                        writeString(names[i]);
+                        writeValue(instance.field(i));
+                    }
+                }
+                case LoxList list -> {
+                    out.writeByte(LIST);
+                    objects.put(list, objects.size());
+                    out.writeInt(list.size());
+                    for (var i = 0; i < list.size(); i++) {
+                        writeValue(list.get(i));
+                    }
+                }
+                case LoxMap map -> {
+                    out.writeByte(MAP);
+                    objects.put(map, objects.size());
+
+                    var keys = map.keys();
+                    out.writeInt(keys.size());
+                    for (var i = 0; i < keys.size(); i++) {
+                        writeValue(keys.get(i));
+                        writeValue(map.get(keys.get(i)));
+                    }
+                }
+                default -> {
+                    var function = Memoizer.unwrap(value);
+                    if (function == null) {
+                        throw new NotSerializableException(
+                                "Cannot save '%s' in a snapshot".formatted(Interpreter.stringify(value)));
+                    }
+
+                    out.writeByte(MEMOIZED);
+                    objects.put(value, objects.size());
+                    writeValue(function);
+                }
+            }
+        }
+
+        private void writeCells(Interpreter.Cell[] closure) throws IOException {
+            out.writeInt(closure.length);
+            for (var cell : closure) {
+                if (share(cell)) {
+                    cells.add(cell);
+                }
+            }
+        }
+
+        private void writeDeclaration(Stmt.Function function) throws IOException {
+            if (!share(function)) {
+                return;
+            }
+
+            writeToken(function.name());
+            out.writeInt(function.parameters().size());
+            for (var parameter : function.parameters()) {
+                writeToken(parameter);
+            }
+            writeStatements(function.body());
+            writeSlot(function.slot());
+            writeLayout(function.layout());
+        }
+
+        private void writeLayout(Layout layout) throws IOException {
+            if (!share(layout)) {
+                return;
+            }
+
+            out.writeInt(layout.size);
+            writeSlots(layout.parameters);
+            writeSlots(layout.captures);
+            writeSlot(layout.receiver);
+            writeSlots(layout.cells);
+            out.writeBoolean(layout.initializer);
+            out.writeBoolean(layout.pure);
+        }
+
+        private void writeSlots(Slot[] slots) throws IOException {
+            out.writeInt(slots.length);
+            for (var slot : slots) {
+                writeSlot(slot);
+            }
+        }
+
+        private void writeSlot(Slot slot) throws IOException {
+            if (share(slot)) {
+                out.writeByte(slot.kind.ordinal());
+                out.writeInt(slot.index);
+            }
+        }
+
+        private void writeToken(Token token) throws IOException {
+            out.writeByte(token.type().ordinal());
+            writeString(token.lexeme());
+            writeValue(token.literal());
+            out.writeInt(token.line());
+        }
+
+        private void writeStatements(List<Stmt> statements) throws IOException {
+            out.writeInt(statements.size());
+            for (var statement : statements) {
+                writeStatement(statement);
+            }
+        }
+
+        private void writeStatement(Stmt stmt) throws IOException {
+            // Imports are only allowed in top-level code, which is not part of any value
+            switch (stmt) {
+                case null -> out.writeByte(NONE);
+                case Stmt.Block block -> {
+                    out.writeByte(BLOCK);
+                    writeStatements(block.body());
+                    writeSlots(block.cells().toArray(new Slot[0]));
+                }
+                case Stmt.Class klass -> {
+                    out.writeByte(CLASS_DECLARATION);
+                    writeToken(klass.name());
+                    writeExpression(klass.superclass());
+                    out.writeInt(klass.methods().size());
+                    for (var method : klass.methods()) {
+                        writeDeclaration(method);
+                    }
+                    writeSlot(klass.slot());
+                    writeSlot(klass.superSlot());
+                }
+                case Stmt.Expression expression -> {
+                    out.writeByte(EXPRESSION);
+                    writeExpression(expression.expression());
+                }
+                case Stmt.Function function -> {
+                    out.writeByte(FUNCTION_DECLARATION);
+                    writeDeclaration(function);
+                }
+                case Stmt.If branch -> {
+                    out.writeByte(IF);
+                    writeExpression(branch.condition());
+                    writeStatement(branch.thenBranch());
+                    writeStatement(branch.elseBranch());
+                }
+                case Stmt.Print print -> {
+                    out.writeByte(PRINT);
+                    writeExpression(print.value());
+                }
+                case Stmt.Return ret -> {
+                    out.writeByte(RETURN);
+                    writeToken(ret.keyword());
+                    writeExpression(ret.value());
+                }
+                case Stmt.Var var -> {
+                    out.writeByte(VAR);
+                    writeToken(var.name());
+                    writeExpression(var.initializer());
+                    writeSlot(var.slot());
+                }
+                case Stmt.While loop -> {
+                    out.writeByte(WHILE);
+                    writeToken(loop.keyword());
+                    writeExpression(loop.condition());
+                    writeStatement(loop.body());
+                }
+                default -> throw new IllegalArgumentException(stmt.toString());
+            }
+        }
+
+        private void writeExpressions(List<Expr> expressions) throws IOException {
+            out.writeInt(expressions.size());
+            for (var expression : expressions) {
+                writeExpression(expression);
+            }
+        }
+
+        private void writeExpression(Expr expr) throws IOException {
+            // Inline caches are not written, since the shapes they refer to do not survive the round trip
+            switch (expr) {
+                case null -> out.writeByte(NONE);
+                case Expr.Assign assign -> {
+                    out.writeByte(ASSIGN);
+                    writeToken(assign.name());
+                    writeExpression(assign.value());
+                    writeSlot(assign.slot());
+                }
+                case Expr.Binary binary -> {
+                    out.writeByte(BINARY);
+                    writeExpression(binary.left());
+                    writeToken(binary.operator());
+                    writeExpression(binary.right());
+                    out.writeByte(binary.operands().kind.ordinal());
+                }
+                case Expr.Call call -> {
+                    out.writeByte(CALL);
+                    writeExpression(call.callee());
+                    writeToken(call.paren());
+                    writeExpressions(call.arguments());
+                }
+                case Expr.Get get -> {
+                    out.writeByte(GET);
+                    writeExpression(get.object());
+                    writeToken(get.name());
+                }
+                case Expr.Grouping grouping -> {
+                    out.writeByte(GROUPING);
+                    writeExpression(grouping.expression());
+                }
+                case Expr.Index index -> {
+                    out.writeByte(INDEX);
+                    writeExpression(index.object());
+                    writeToken(index.bracket());
+                    writeExpression(index.index());
+                }
+                case Expr.ListLiteral list -> {
+                    out.writeByte(LIST_LITERAL);
+                    writeToken(list.bracket());
+                    writeExpressions(list.elements());
+                }
+                case Expr.Literal literal -> {
+                    out.writeByte(LITERAL);
+                    writeValue(literal.value());
+                }
+                case Expr.Logical logical -> {
+                    out.writeByte(LOGICAL);
+                    writeExpression(logical.left());
+                    writeToken(logical.operator());
+                    writeExpression(logical.right());
+                }
+                case Expr.Set set -> {
+                    out.writeByte(SET);
+                    writeExpression(set.object());
+                    writeToken(set.name());
+                    writeExpression(set.value());
+                }
+                case Expr.SetIndex set -> {
+                    out.writeByte(SET_INDEX);
+                    writeExpression(set.object());
+                    writeToken(set.bracket());
+                    writeExpression(set.index());
+                    writeExpression(set.value());
+                }
+                case Expr.Super method -> {
+                    out.writeByte(SUPER);
+                    writeToken(method.keyword());
+                    writeToken(method.method());
+                    writeSlot(method.superclass());
+                    writeSlot(method.instance());
+                }
+                case Expr.This self -> {
+                    out.writeByte(THIS);
+                    writeToken(self.keyword());
+                    writeSlot(self.slot());
+                }
+                case Expr.Unary unary -> {
+                    out.writeByte(UNARY);
+                    writeToken(unary.operator());
+                    writeExpression(unary.right());
+                    out.writeByte(unary.operands().kind.ordinal());
+                }
+                case Expr.Variable variable -> {
+                    out.writeByte(VARIABLE);
+                    writeToken(variable.name());
+                    writeSlot(variable.slot());
+                }
+                default -> throw new IllegalArgumentException(expr.toString());
+            }
+        }
+    }
+
+    private static final class Reader {
+        Reader(ByteBuffer in, Memoizer memoizer) {
+            this.in = in;
+            this.memoizer = memoizer;
+        }
+
+        void read(Interpreter.Environment globals) throws IOException {
+            if (in.remaining() < 8 || in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IOException("Not a snapshot of this version of Lox");
+            }
+
+            var count = in.getInt();
+            for (var i = 0; i < count; i++) {
+                globals.define(readString(), readValue());
+            }
+
+            while (!cells.isEmpty()) {
+                cells.remove().value = readValue();
+            }
+
+            count = in.getInt();
+            for (var i = 0; i < count; i++) {
+                globals.markImported(Path.of(readString()));
+            }
+        }
+
+        private final ByteBuffer in;
+        private final Memoizer memoizer;
+        private final List<Object> objects = new ArrayList<>();
+        private final List<String> strings = new ArrayList<>();
+        private final Queue<Interpreter.Cell> cells = new ArrayDeque<>();
+
+        /**
+         * Reads a reference to an object, returning {@link #NEW_OBJECT} if the contents of a new object follow.
+         */
+        private int share() {
+            return in.getInt();
+        }
+
+        private Object lookup(int index) {
+            return index == NULL_OBJECT ? null : objects.get(index);
+        }
+
+        /**
+         * Reserves the index of an object that cannot be created before its contents have been read.
+         */
+        private int reserve() {
+            objects.add(null);
+            return objects.size() - 1;
+        }
+
+        private <T> T register(T object) {
+            objects.add(object);
+            return object;
+        }
+
+        private String readString() {
+            var index = in.getInt();
+            if (index >= 0) {
+                return strings.get(index);
+            }
+
+            // Strings are interned like those of the scanner, so that they compare equal by identity
+            var length = -1 - index;
+            var string = new String(in.array(), in.position(), length, StandardCharsets.UTF_8).intern();
+            in.position(in.position() + length);
+
+            strings.add(string);
+            return string;
+        }
+
+        private Object readValue() throws IOException {
+            var tag = in.get();
+            return switch (tag) {
+                case NIL -> null;
+                case FALSE -> false;
+                case TRUE -> true;
+                case NUMBER -> in.getDouble();
+                case STRING -> readString();
+                case NATIVE -> {
+                    var name = readString();
+                    var function = NativeRegistry.lookup(name);
+                    if (function == null) {
+                        throw new IOException("Unknown native function '%s'".formatted(name));
+                    }
+                    yield function;
+                }
+                case REFERENCE -> objects.get(in.getInt());
+                case FUNCTION -> {
+                    var index = reserve();
+                    var function = new LoxFunction(readCells(), readDeclaration(), (LoxInstance) readValue());
+                    objects.set(index, function);
+                    yield function;
+                }
+                case CLASS -> {
+                    var index = reserve();
+                    var name = readString();
+                    var superclass = (LoxClass) readValue();
+
+                    var count = in.getInt();
+                    var methods = new HashMap<String, LoxFunction>();
+                    for (var i = 0; i < count; i++) {
+                        methods.put(readString(), (LoxFunction) readValue());
+                    }
+
+                    var klass = new LoxClass(name, superclass, methods);
+                    objects.set(index, klass);
+                    yield klass;
+                }
+                case INSTANCE -> {
+                    var klass = (LoxClass) readValue();
+                    var instance = register(new LoxInstance(klass));
+
+                    var shape = klass.shape();
+                    var count = in.getInt();
+                    for (var i = 0; i < count; i++) {
+                        shape = shape.with(readString());
+                        instance.store(shape, i, readValue());
+                    }
+                    yield instance;
+                }
+                case LIST -> {
+                    var count = in.getInt();
+                    var list = register(new LoxList(count));
+                    for (var i = 0; i < count; i++) {
+                        list.add(readValue());
+                    }
+                    yield list;
+                }
+                case MAP -> {
+                    var map = register(new LoxMap());
+                    var count = in.getInt();
+                    for (var i = 0; i < count; i++) {
+                        map.put(readValue(), readValue());
+                    }
+                    yield map;
+                }
+                case MEMOIZED -> {
+                    var index = reserve();
+                    var function = memoizer.memoize((LoxInvocable) readValue());
+                    objects.set(index, function);
+                    yield function;
+                }
+                default -> throw new IOException("Corrupt snapshot");
+            };
+        }
+
+        private Interpreter.Cell[] readCells() {
+            var closure = new Interpreter.Cell[in.getInt()];
+            for (var i = 0; i < closure.length; i++) {
+                var index = share();
+                if (index != NEW_OBJECT) {
+                    closure[i] = (Interpreter.Cell) lookup(index);
+                } else {
+                    closure[i] = register(new Interpreter.Cell(null));
+                    cells.add(closure[i]);
+                }
+            }
+            return closure;
+        }
+
+        private Stmt.Function readDeclaration() throws IOException {
+            var index = share();
+            if (index != NEW_OBJECT) {
+                return (Stmt.Function) lookup(index);
+            }
+
+            index = reserve();
+
+            var name = readToken();
+            var parameters = new Token[in.getInt()];
+            for (var i = 0; i < parameters.length; i++) {
+                parameters[i] = readToken();
+            }
+
+            var function = new Stmt.Function(name, List.of(parameters), readStatements(), readSlot(), readLayout());
+            objects.set(index, function);
+            return function;
+        }
+
+        private Layout readLayout() {
+            var index = share();
+            if (index != NEW_OBJECT) {
+                return (Layout) lookup(index);
+            }
+
+            var layout = register(new Layout());
+            layout.size = in.getInt();
+            layout.parameters = readSlots();
+            layout.captures = readSlots();
+            layout.receiver = readSlot();
+            layout.cells = readSlots();
+            layout.initializer = in.get() != 0;
+            layout.pure = in.get() != 0;
+            return layout;
+        }
+
+        private Slot[] readSlots() {
+            var slots = new Slot[in.getInt()];
+            for (var i = 0; i < slots.length; i++) {
+                slots[i] = readSlot();
+            }
+            return slots;
+        }
+
+        private Slot readSlot() {
+            var index = share();
+            if (index != NEW_OBJECT) {
+                return (Slot) lookup(index);
+            }
+
+            var slot = register(new Slot());
+            slot.kind = SLOT_KINDS[in.get()];
+            slot.index = in.getInt();
+            return slot;
+        }
+
+        private Token readToken() throws IOException {
+            return new Token(TOKEN_TYPES[in.get()], readString(), readValue(), in.getInt());
+        }
+
+        private List<Stmt> readStatements() throws IOException {
+            var statements = new Stmt[in.getInt()];
+            for (var i = 0; i < statements.length; i++) {
+                statements[i] = readStatement();
+            }
+            return List.of(statements);
+        }
+
+        private Stmt readStatement() throws IOException {
+            var tag = in.get();
+            return switch (tag) {
+                case NONE -> null;
+                case BLOCK -> new Stmt.Block(readStatements(), new ArrayList<>(List.of(readSlots())));
+                case CLASS_DECLARATION -> {
+                    var name = readToken();
+                    var superclass = (Expr.Variable) readExpression();
+
+                    var methods = new Stmt.Function[in.getInt()];
+                    for (var i = 0; i < methods.length; i++) {
+                        methods[i] = readDeclaration();
+                    }
+                    yield new Stmt.Class(name, superclass, List.of(methods), readSlot(), readSlot());
+                }
+                case EXPRESSION -> new Stmt.Expression(readExpression());
+                case FUNCTION_DECLARATION -> readDeclaration();
+                case IF -> new Stmt.If(readExpression(), readStatement(), readStatement());
+                case PRINT -> new Stmt.Print(readExpression());
+                case RETURN -> new Stmt.Return(readToken(), readExpression());
+                case VAR -> new Stmt.Var(readToken(), readExpression(), readSlot());
+                case WHILE -> new Stmt.While(readToken(), readExpression(), readStatement());
+                default -> throw new IOException("Corrupt snapshot");
+            };
+        }
+
+        private Operands readOperands() {
+            var operands = new Operands();
+            operands.kind = OPERAND_KINDS[in.get()];
+            return operands;
+        }
+
+        private List<Expr> readExpressions() throws IOException {
+            var expressions = new Expr[in.getInt()];
+            for (var i = 0; i < expressions.length; i++) {
+                expressions[i] = readExpression();
+            }
+            return List.of(expressions);
+        }
+
+        private Expr readExpression() throws IOException {
+            var tag = in.get();
+            return switch (tag) {
+                case NONE -> null;
+                case ASSIGN -> new Expr.Assign(readToken(), readExpression(), readSlot());
+                case BINARY -> new Expr.Binary(readExpression(), readToken(), readExpression(), readOperands());
+                case CALL -> new Expr.Call(readExpression(), readToken(), readExpressions());
+                case GET -> new Expr.Get(readExpression(), readToken(), new InlineCache());
+                case GROUPING -> new Expr.Grouping(readExpression());
+                case INDEX -> new Expr.Index(readExpression(), readToken(), readExpression());
+                case LIST_LITERAL -> new Expr.ListLiteral(readToken(), readExpressions());
+                case LITERAL -> new Expr.Literal(readValue());
+                case LOGICAL -> new Expr.Logical(readExpression(), readToken(), readExpression());
+                case SET -> new Expr.Set(readExpression(), readToken(), readExpression(), new InlineCache());
+                case SET_INDEX -> new Expr.SetIndex(readExpression(), readToken(), readExpression(), readExpression());
+                case SUPER -> new Expr.Super(readToken(), readToken(), readSlot(), readSlot());
+                case THIS -> new Expr.This(readToken(), readSlot());
+                case UNARY -> new Expr.Unary(readToken(), readExpression(), readOperands());
+                case VARIABLE -> new Expr.Variable(readToken(), readSlot());
+                default -> throw new IOException("Corrupt snapshot");
+            };
+        }
+    }
+}
\ No newline at end of file
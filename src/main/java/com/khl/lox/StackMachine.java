@@ -0,0 +1,523 @@
+package com.khl.lox;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A non-recursive evaluator that runs Lox code on a heap-managed call stack.
+ *
+ * <p>
+ * Instead of evaluating the AST with nested Java calls, the machine keeps an explicit stack of pending nodes, each
+ * paired with a state that tells how far the node has been evaluated, and a stack of operand values. Entering a Lox
+ * function pushes a frame marker and the body of the function, and returning unwinds to the marker, so that the depth
+ * of recursion is not limited by the size of the Java thread stack. Locals still live in the frames of the
+ * {@link com.khl.lox.Interpreter} register stack.
+ * </p>
+ *
+ * <p>
+ * Natives, memoized functions and anything they call back into are run by the recursive interpreter, as are
+ * declarations and leaf expressions, which cannot recurse.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+final class StackMachine {
+    StackMachine(Interpreter interpreter, long stackLimit) {
+        this.interpreter = interpreter;
+        this.stackLimit = Math.min(stackLimit, Runtime.getRuntime().maxMemory() / 2);
+    }
+
+    /**
+     * Executes statements in the current frame of the interpreter.
+     *
+     * @param statements the statements
+     * @throws RuntimeError An error that occurs during interpreter runtime, including a stack overflow once the stack
+     *                      would take more than its limit
+     */
+    void run(List<Stmt> statements) throws RuntimeError {
+        push(statements, 0);
+
+        try {
+            while (top > 0) {
+                var node = nodes[--top];
+                nodes[top] = null;
+                step(node, states[top]);
+            }
+        } catch (RuntimeError runtimeError) {
+            for (var i = top - 1; i >= 0; i--) {
+                if (nodes[i] instanceof Frame frame) {
+                    runtimeError.leave(frame.function().name().lexeme());
+                    runtimeError.call(frame.call());
+                }
+            }
+            throw runtimeError;
+        } finally {
+            // Unwind the frames of the calls that an error escaped from
+            while (top > 0) {
+                if (nodes[--top] instanceof Frame frame) {
+                    interpreter.exitFrame(frame.caller());
+                    interpreter.exitCall();
+                }
+                nodes[top] = null;
+            }
+        }
+    }
+
+    // Rough sizes of the structures the stack is made of, which are used to enforce the stack limit
+
+    private static final int FRAME_BYTES = 64;
+    private static final int NODE_BYTES = 12;
+    private static final int SLOT_BYTES = 8;
+
+    private static final int INITIAL_SIZE = 256;
+
+    private final Interpreter interpreter;
+    private final long stackLimit;
+
+    // Pending nodes (statements, expressions, statement lists or frame markers) and how far each has been evaluated
+
+    private Object[] nodes = new Object[INITIAL_SIZE];
+    private int[] states = new int[INITIAL_SIZE];
+    private int top;
+
+    private Object[] values = new Object[INITIAL_SIZE];
+    private int count;
+    private int frames;
+
+    /**
+     * Marks the start of a call of a Lox function on the node stack.
+     *
+     * @param caller      the registers of the calling frame
+     * @param self        the receiver of the call
+     * @param initializer whether the function is an initializer, which returns its receiver
+     * @param function    the declaration of the function, for the traceback of an error
+     * @param call        the location of the call, for the traceback of an error
+     */
+    private record Frame(Interpreter.Registers caller, LoxInstance self, boolean initializer,
+                         Stmt.Function function, Token call) {
+        // This is a data class
+    }
+
+    private void push(Object node, int state) {
+        if (top == nodes.length) {
+            nodes = Arrays.copyOf(nodes, top * 2);
+            states = Arrays.copyOf(states, top * 2);
+        }
+        nodes[top] = node;
+        states[top] = state;
+        top++;
+    }
+
+    /**
+     * Schedules an expression for evaluation, or evaluates it right away if it cannot contain a call.
+     */
+    private void evaluate(Expr expr) {
+        if (Stats.ENABLED) {
+            Stats.node(expr);
+        }
+
+        // Nodes handed over to the interpreter are already counted, so they skip Interpreter.evaluate
+
+        switch (expr) {
+            case Expr.Literal literal -> pushValue(literal.value());
+            case Expr.Variable variable -> pushValue(interpreter.load(variable.slot(), variable.name()));
+            case Expr.This thisExpr -> pushValue(interpreter.load(thisExpr.slot(), thisExpr.keyword()));
+            case Expr.Super superExpr -> pushValue(superExpr.accept(interpreter));
+            default -> push(expr, 0);
+        }
+    }
+
+    private void pushValue(Object value) {
+        if (count == values.length) {
+            values = Arrays.copyOf(values, count * 2);
+        }
+        values[count++] = value;
+    }
+
+    private Object popValue() {
+        var value = values[--count];
+        values[count] = null;
+        return value;
+    }
+
+    private Object peekValue() {
+        return values[count - 1];
+    }
+
+    private void step(Object node, int state) {
+        switch (node) {
+            case List<?> statements -> {
+                if (state < statements.size()) {
+                    push(statements, state + 1);
+                    push(statements.get(state), 0);
+                }
+            }
+            case Frame frame -> exit(frame, null);
+            case Stmt stmt -> {
+                if (Stats.ENABLED && state == 0) {
+                    Stats.node(stmt);
+                }
+                execute(stmt, state);
+            }
+            case Expr expr -> evaluate(expr, state);
+            default -> throw new IllegalStateException("Unexpected node " + node);
+        }
+    }
+
+    //
+    // Stmt
+    //
+
+    private void execute(Stmt node, int state) {
+        switch (node) {
+            case Stmt.Block stmt -> {
+                interpreter.enterBlock(stmt);
+                push(stmt.body(), 0);
+            }
+            case Stmt.Expression stmt -> {
+                if (state == 0) {
+                    push(stmt, 1);
+                    evaluate(stmt.expression());
+                } else {
+                    popValue();
+                }
+            }
+            case Stmt.If stmt -> {
+                if (state == 0) {
+                    push(stmt, 1);
+                    evaluate(stmt.condition());
+                } else if (Interpreter.isTruthy(popValue())) {
+                    push(stmt.thenBranch(), 0);
+                } else if (stmt.elseBranch() != null) {
+                    push(stmt.elseBranch(), 0);
+                }
+            }
+            case Stmt.Print stmt -> {
+                if (state == 0) {
+                    push(stmt, 1);
+                    evaluate(stmt.value());
+                } else {
+                    interpreter.print(popValue());
+                }
+            }
+            case Stmt.Return stmt -> {
+                if (state == 0 && stmt.value() != null) {
+                    push(stmt, 1);
+                    evaluate(stmt.value());
+                } else {
+                    unwind(state == 0 ? null : popValue());
+                }
+            }
+            case Stmt.Var stmt -> {
+                if (state == 0) {
+                    push(stmt, 1);
+                    evaluate(stmt.initializer());
+                } else {
+                    interpreter.define(stmt.slot(), stmt.name(), popValue());
+                }
+            }
+            case Stmt.While stmt -> {
+                switch (state) {
+                    case 0 -> {
+                        push(stmt, 1);
+                        evaluate(stmt.condition());
+                    }
+                    case 1 -> {
+                        if (Interpreter.isTruthy(popValue())) {
+                            push(stmt, 2);
+                            push(stmt.body(), 0);
+                        }
+                    }
+                    default -> {
+                        interpreter.safepoint(stmt.keyword());
+                        push(stmt, 1);
+                        evaluate(stmt.condition());
+                    }
+                }
+            }
+            // Declarations only evaluate a superclass variable, so they cannot recurse
+            default -> node.accept(interpreter);
+        }
+    }
+
+    //
+    // Expr
+    //
+
+    private void evaluate(Expr node, int state) {
+        switch (node) {
+            case Expr.Assign expr -> {
+                if (state == 0) {
+                    push(expr, 1);
+                    evaluate(expr.value());
+                } else {
+                    interpreter.store(expr.slot(), expr.name(), peekValue());
+                }
+            }
+            case Expr.Binary expr -> {
+                switch (state) {
+                    case 0 -> {
+                        push(expr, 1);
+                        evaluate(expr.left());
+                    }
+                    case 1 -> {
+                        push(expr, 2);
+                        evaluate(expr.right());
+                    }
+                    default -> {
+                        var right = popValue();
+                        pushValue(Interpreter.binary(expr, popValue(), right));
+                    }
+                }
+            }
+            case Expr.Call expr -> call(expr, state);
+            case Expr.Get expr -> {
+                if (state == 0) {
+                    push(expr, 1);
+                    evaluate(expr.object());
+                } else if (popValue() instanceof LoxInstance instance) {
+                    pushValue(expr.cache().get(instance, expr.name()));
+                } else {
+                    throw new RuntimeError(expr.name(), "Only instances have properties");
+                }
+            }
+            case Expr.Grouping expr -> evaluate(expr.expression());
+            case Expr.Index expr -> {
+                switch (state) {
+                    case 0 -> {
+                        push(expr, 1);
+                        evaluate(expr.object());
+                    }
+                    case 1 -> {
+                        push(expr, 2);
+                        evaluate(expr.index());
+                    }
+                    default -> {
+                        var index = popValue();
+                        pushValue(Interpreter.index(expr.bracket(), popValue(), index));
+                    }
+                }
+            }
+            case Expr.ListLiteral expr -> {
+                var elements = expr.elements();
+                if (state < elements.size()) {
+                    push(expr, state + 1);
+                    evaluate(elements.get(state));
+                } else {
+                    var list = new LoxList(elements.size());
+                    for (var i = count - elements.size(); i < count; i++) {
+                        list.add(values[i]);
+                    }
+                    drop(elements.size());
+                    pushValue(list);
+                }
+            }
+            case Expr.Logical expr -> {
+                if (state == 0) {
+                    push(expr, 1);
+                    evaluate(expr.left());
+                } else {
+                    var left = Interpreter.isTruthy(peekValue());
+                    if (left != (expr.operator().type() == TokenType.OR)) {
+                        popValue();
+                        evaluate(expr.right());
+                    }
+                }
+            }
+            case Expr.Set expr -> {
+                switch (state) {
+                    case 0 -> {
+                        push(expr, 1);
+                        evaluate(expr.object());
+                    }
+                    case 1 -> {
+                        if (!(peekValue() instanceof LoxInstance)) {
+                            throw new RuntimeError(expr.name(), "Only instances have fields");
+                        }
+                        push(expr, 2);
+                        evaluate(expr.value());
+                    }
+                    default -> {
+                        var value = popValue();
+                        expr.cache().set((LoxInstance) popValue(), expr.name(), value);
+                        pushValue(value);
+                    }
+                }
+            }
+            case Expr.SetIndex expr -> {
+                switch (state) {
+                    case 0 -> {
+                        push(expr, 1);
+                        evaluate(expr.object());
+                    }
+                    case 1 -> {
+                        push(expr, 2);
+                        evaluate(expr.index());
+                    }
+                    case 2 -> {
+                        push(expr, 3);
+                        evaluate(expr.value());
+                    }
+                    default -> {
+                        var value = popValue();
+                        var index = popValue();
+                        pushValue(Interpreter.setIndex(expr.bracket(), popValue(), index, value));
+                    }
+                }
+            }
+            case Expr.Unary expr -> {
+                if (state == 0) {
+                    push(expr, 1);
+                    evaluate(expr.right());
+                } else {
+                    pushValue(Interpreter.unary(expr, popValue()));
+                }
+            }
+            default -> pushValue(node.accept(interpreter));
+        }
+    }
+
+    private void drop(int n) {
+        Arrays.fill(values, count - n, count, null);
+        count -= n;
+    }
+
+    //
+    // Calls
+    //
+
+    // A call leaves the callee and its receiver (or null for the callee's own receiver) on the value stack, followed
+    // by the arguments. States past ARGUMENTS count the arguments evaluated so far.
+
+    private static final int METHOD = 1;
+    private static final int FUNCTION = 2;
+    private static final int ARGUMENTS = 3;
+
+    private void call(Expr.Call expr, int state) {
+        switch (state) {
+            case 0 -> {
+                // Calling a method through an inline cache avoids binding it to the instance first
+                if (expr.callee() instanceof Expr.Get get) {
+                    push(expr, METHOD);
+                    evaluate(get.object());
+                } else {
+                    push(expr, FUNCTION);
+                    evaluate(expr.callee());
+                }
+            }
+            case METHOD -> {
+                var get = (Expr.Get) expr.callee();
+                if (!(popValue() instanceof LoxInstance instance)) {
+                    throw new RuntimeError(get.name(), "Only instances have properties");
+                }
+
+                var method = get.cache().method(instance, get.name());
+                if (method != null) {
+                    pushValue(method);
+                    pushValue(instance);
+                } else {
+                    pushValue(get.cache().get(instance, get.name()));
+                    pushValue(null);
+                }
+                push(expr, ARGUMENTS);
+            }
+            case FUNCTION -> {
+                pushValue(null);
+                push(expr, ARGUMENTS);
+            }
+            default -> {
+                var evaluated = state - ARGUMENTS;
+                if (evaluated < expr.arguments().size()) {
+                    push(expr, state + 1);
+                    evaluate(expr.arguments().get(evaluated));
+                } else {
+                    invoke(expr, evaluated);
+                }
+            }
+        }
+    }
+
+    private void invoke(Expr.Call expr, int arity) {
+        var callee = values[count - arity - 2];
+        var self = (LoxInstance) values[count - arity - 1];
+
+        if (!(callee instanceof LoxCallable callable)) {
+            throw new RuntimeError(expr.paren(), "Can only call functions and classes");
+        }
+        Interpreter.checkArity(expr, callable, arity);
+
+        if (callable instanceof LoxFunction function) {
+            enter(expr, function, self != null ? self : function.receiver(), arity);
+        } else if (callable instanceof LoxClass klass && klass.initializer() != null) {
+            enter(expr, klass.initializer(), new LoxInstance(klass), arity);
+        } else {
+            var arguments = Arrays.copyOfRange(values, count - arity, count);
+            drop(arity + 2);
+
+            interpreter.enterCall(expr.paren());
+            try {
+                pushValue(LoxInvocable.adapt(callable).callN(interpreter, arguments));
+            } catch (RuntimeError runtimeError) {
+                runtimeError.call(expr.paren());
+                throw runtimeError;
+            } catch (NativeError nativeError) {
+                throw new RuntimeError(expr.paren(), nativeError.getMessage(), nativeError.getCause());
+            } finally {
+                interpreter.exitCall();
+            }
+        }
+    }
+
+    private void enter(Expr.Call expr, LoxFunction function, LoxInstance self, int arity) {
+        var layout = function.declaration().layout();
+        var frame = interpreter.reserveFrame(layout.size);
+
+        if (layout.receiver != null) {
+            interpreter.initialize(frame, layout.receiver, self);
+        }
+        for (var cell : layout.cells) {
+            interpreter.initialize(frame, cell, null);
+        }
+        for (var i = 0; i < arity; i++) {
+            interpreter.initialize(frame, layout.parameters[i], values[count - arity + i]);
+        }
+        drop(arity + 2);
+
+        interpreter.enterCall(expr.paren());
+        if (size() > stackLimit) {
+            interpreter.exitCall();
+            throw new RuntimeError(expr.paren(), "Stack overflow");
+        }
+
+        frames++;
+        var caller = interpreter.enterFrame(frame, layout.size, function.closure());
+        push(new Frame(caller, self, layout.initializer, function.declaration(), expr.paren()), 0);
+        push(function.declaration().body(), 0);
+    }
+
+    private long size() {
+        return (long) frames * FRAME_BYTES + (long) nodes.length * NODE_BYTES
+                + (long) (values.length + interpreter.stackCapacity()) * SLOT_BYTES;
+    }
+
+    /**
+     * Returns from the innermost call, discarding whatever is left of its body.
+     */
+    private void unwind(Object value) {
+        while (!(nodes[--top] instanceof Frame)) {
+            nodes[top] = null;
+        }
+
+        var frame = (Frame) nodes[top];
+        nodes[top] = null;
+        exit(frame, value);
+    }
+
+    private void exit(Frame frame, Object value) {
+        interpreter.exitFrame(frame.caller());
+        interpreter.exitCall();
+        frames--;
+
+        pushValue(frame.initializer() ? frame.self() : value);
+    }
+}
\ No newline at end of file
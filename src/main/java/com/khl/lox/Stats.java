@@ -0,0 +1,127 @@
+package com.khl.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Execution counters of the interpreter, reported with {@code --stats}.
+ *
+ * <p>
+ * Every counter is only updated behind a check of {@link #ENABLED}, which is a constant read from the system property
+ * {@code lox.stats} once, when this class is initialized. The JIT compiler folds the check away, so instrumented
+ * code runs exactly like uninstrumented code unless the counters were enabled before the first interpreter started,
+ * which {@link com.khl.lox.Lox} does for {@code --stats}.
+ * </p>
+ *
+ * <p>
+ * The counters are plain fields shared by the whole process, so increments made concurrently by tasks and parallel
+ * builtins may get lost, and the counts are approximate for scripts that use them.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+final class Stats {
+    static final boolean ENABLED = Boolean.getBoolean("lox.stats");
+
+    static long calls;
+    static long maxDepth;
+    static long frames;
+    static long boxedNumbers;
+    static long returns;
+    static long scanNanos;
+    static long parseNanos;
+    static long executeNanos;
+
+    /**
+     * Counts an AST node being evaluated or executed.
+     *
+     * @param node the node
+     */
+    static void node(Object node) {
+        NODES.get(node.getClass())[0]++;
+    }
+
+    /**
+     * Counts a variable being read or written.
+     *
+     * @param slot the location of the variable
+     */
+    static void access(Slot slot) {
+        ACCESSES[slot.kind.ordinal()]++;
+    }
+
+    /**
+     * Counts a call entered at a depth of recursion.
+     *
+     * @param depth the number of calls in progress, including the one entered
+     */
+    static void call(int depth) {
+        calls++;
+        if (depth > maxDepth) {
+            maxDepth = depth;
+        }
+    }
+
+    /**
+     * Prints every counter.
+     *
+     * @param stderr the stream to print to
+     */
+    static void report(PrintStream stderr) {
+        stderr.printf("stats: scan %.3f ms, parse %.3f ms, execute %.3f ms%n",
+                scanNanos / 1e6, parseNanos / 1e6, executeNanos / 1e6);
+
+        var nodes = new ArrayList<Map.Entry<String, Long>>();
+        var total = 0L;
+        for (var type : NODE_TYPES) {
+            var count = NODES.get(type)[0];
+            if (count > 0) {
+                nodes.add(Map.entry(type.getEnclosingClass().getSimpleName() + "." + type.getSimpleName(), count));
+                total += count;
+            }
+        }
+        nodes.sort(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()));
+
+        stderr.printf("stats: %d nodes evaluated%n", total);
+        for (var entry : nodes) {
+            stderr.printf("stats:   %-18s %d%n", entry.getKey(), entry.getValue());
+        }
+
+        stderr.printf("stats: %d variable accesses (%d local, %d captured, %d upvalue, %d global)%n",
+                ACCESSES[Slot.Kind.LOCAL.ordinal()] + ACCESSES[Slot.Kind.CELL.ordinal()]
+                        + ACCESSES[Slot.Kind.UPVALUE.ordinal()] + ACCESSES[Slot.Kind.GLOBAL.ordinal()],
+                ACCESSES[Slot.Kind.LOCAL.ordinal()], ACCESSES[Slot.Kind.CELL.ordinal()],
+                ACCESSES[Slot.Kind.UPVALUE.ordinal()], ACCESSES[Slot.Kind.GLOBAL.ordinal()]);
+        stderr.printf("stats: %d calls, %d frames, maximum depth %d%n", calls, frames, maxDepth);
+        stderr.printf("stats: %d numbers boxed, %d returns thrown%n", boxedNumbers, returns);
+    }
+
+    /**
+     * Every kind of statement and expression node.
+     */
+    private static final Class<?>[] NODE_TYPES;
+
+    static {
+        NODE_TYPES = Stream.concat(Arrays.stream(Stmt.class.getDeclaredClasses()),
+                        Arrays.stream(Expr.class.getDeclaredClasses()))
+                .filter(Class::isRecord)
+                .toArray(Class<?>[]::new);
+    }
+
+    private static final ClassValue<long[]> NODES = new ClassValue<>() {
+        @Override
+        protected long[] computeValue(Class<?> type) {
+            return new long[1];
+        }
+    };
+
+    private static final long[] ACCESSES = new long[Slot.Kind.values().length];
+
+    private Stats() {
+        // This is a utility class
+    }
+}
\ No newline at end of file
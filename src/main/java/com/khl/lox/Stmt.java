@@ -1,5 +1,6 @@
 package com.khl.lox;
 
+import java.nio.file.Path;
 import java.util.List;
 
 /**
@@ -13,12 +14,16 @@ public interface Stmt {
     interface Visitor {
         void visitBlock(Block stmt);
 
+        void visitClass(Class stmt);
+
         void visitExpression(Expression stmt);
 
         void visitFunction(Function stmt);
 
         void visitIf(If stmt);
 
+        void visitImport(Import stmt);
+
         void visitPrint(Print stmt);
 
         void visitReturn(Return stmt);
@@ -32,13 +37,25 @@ public interface Stmt {
     // Classes
     //
 
-    record Block(List<Stmt> body) implements Stmt {
+    /**
+     * A block, whose {@code cells} are filled in by the {@link com.khl.lox.Resolver} with the slots of the captured local
+     * functions that the block declares.
+     */
+    record Block(List<Stmt> body, List<Slot> cells) implements Stmt {
         @Override
         public void accept(Visitor visitor) {
             visitor.visitBlock(this);
         }
     }
 
+    record Class(Token name, Expr.Variable superclass, List<Function> methods, Slot slot, Slot superSlot)
+            implements Stmt {
+        @Override
+        public void accept(Visitor visitor) {
+            visitor.visitClass(this);
+        }
+    }
+
     record Expression(Expr expression) implements Stmt {
         @Override
         public void accept(Visitor visitor) {
@@ -46,7 +63,7 @@ public interface Stmt {
         }
     }
 
-    record Function(Token name, List<Token> parameters, List<Stmt> body) implements Stmt {
+    record Function(Token name, List<Token> parameters, List<Stmt> body, Slot slot, Layout layout) implements Stmt {
         @Override
         public void accept(Visitor visitor) {
             visitor.visitFunction(this);
@@ -60,6 +77,13 @@ public interface Stmt {
         }
     }
 
+    record Import(Token keyword, Token path, Path file) implements Stmt {
+        @Override
+        public void accept(Visitor visitor) {
+            visitor.visitImport(this);
+        }
+    }
+
     record Print(Expr value) implements Stmt {
         @Override
         public void accept(Visitor visitor) {
@@ -74,14 +98,14 @@ public interface Stmt {
         }
     }
 
-    record Var(Token name, Expr initializer) implements Stmt {
+    record Var(Token name, Expr initializer, Slot slot) implements Stmt {
         @Override
         public void accept(Visitor visitor) {
             visitor.visitVar(this);
         }
     }
 
-    record While(Expr condition, Stmt body) implements Stmt {
+    record While(Token keyword, Expr condition, Stmt body) implements Stmt {
         @Override
         public void accept(Visitor visitor) {
             visitor.visitWhile(this);
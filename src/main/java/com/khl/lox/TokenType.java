@@ -8,16 +8,17 @@ package com.khl.lox;
 public enum TokenType {
     // Special
 
-    EOF, ERROR,
+    EOF(""), ERROR,
 
     // Single character
 
-    LEFT_PAREN, RIGHT_PAREN, LEFT_BRACE, RIGHT_BRACE, COMMA, DOT, MINUS, PLUS,
-    SEMICOLON, SLASH, STAR,
+    LEFT_PAREN("("), RIGHT_PAREN(")"), LEFT_BRACE("{"), RIGHT_BRACE("}"), LEFT_BRACKET("["), RIGHT_BRACKET("]"),
+    COMMA(","), DOT("."), MINUS("-"), PLUS("+"), SEMICOLON(";"), SLASH("/"), STAR("*"),
 
     // Single or double characters
 
-    BANG, BANG_EQUAL, EQUAL, EQUAL_EQUAL, GREATER, GREATER_EQUAL, LESS, LESS_EQUAL,
+    BANG("!"), BANG_EQUAL("!="), EQUAL("="), EQUAL_EQUAL("=="), GREATER(">"), GREATER_EQUAL(">="), LESS("<"),
+    LESS_EQUAL("<="),
 
     // Literals
 
@@ -25,5 +26,27 @@ public enum TokenType {
 
     // Keywords
 
-    AND, CLASS, ELSE, FALSE, FOR, FUN, IF, NIL, OR, PRINT, RETURN, SUPER, THIS, TRUE, VAR, WHILE,
+    AND("and"), CLASS("class"), ELSE("else"), FALSE("false"), FOR("for"), FUN("fun"), IF("if"), IMPORT("import"),
+    NIL("nil"), OR("or"), PRINT("print"), RETURN("return"), SUPER("super"), THIS("this"), TRUE("true"), VAR("var"),
+    WHILE("while");
+
+    TokenType() {
+        this(null);
+    }
+
+    TokenType(String lexeme) {
+        this.lexeme = lexeme;
+    }
+
+    /**
+     * Returns the lexeme shared by every token of this type, or {@code null} if the lexeme of a token depends on the
+     * source code.
+     *
+     * @return the lexeme
+     */
+    public String lexeme() {
+        return lexeme;
+    }
+
+    private final String lexeme;
 }
\ No newline at end of file
@@ -0,0 +1,495 @@
+package com.khl.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A static pass that infers the types of expressions, so that operators whose operands are known to have the right
+ * types can skip their runtime checks.
+ *
+ * <p>
+ * The analysis is flow-sensitive: it follows the type of every local variable stored directly in a frame through
+ * assignments, branches and loops, joining the types where control flow merges. Everything else (globals, captured
+ * variables, parameters, properties, list elements and the results of calls) may be of any type. Once an operator
+ * that only accepts numbers has been evaluated, the local variables among its operands are known to be numbers, since
+ * evaluation would not have gotten past the operator otherwise.
+ * </p>
+ *
+ * <p>
+ * Operators whose operands are proven to have the right types are flagged in their {@link com.khl.lox.Operands}.
+ * Operators whose operands are proven to have the wrong types, so that evaluating them always fails, are reported as
+ * errors. The analysis runs after the {@link com.khl.lox.Resolver}, whose slots tell locals apart from other
+ * variables.
+ * </p>
+ *
+ * @author Kevin Lee
+ */
+class TypeInference implements Expr.Visitor<TypeInference.Type>, Stmt.Visitor {
+    /**
+     * The outcome of the analysis of a script.
+     *
+     * @param errors     the operators that always fail
+     * @param checks     the number of operators that check the types of their operands
+     * @param eliminated the number of those operators whose checks were found to be unnecessary
+     */
+    record Result(List<Parser.Error> errors, int checks, int eliminated) {
+        // This is a data class
+    }
+
+    /**
+     * Infers the types of a resolved script, flagging the operators whose operand checks are unnecessary.
+     *
+     * @param statements the AST statement nodes of the script
+     * @param layout     the frame layout of the script
+     * @return the outcome of the analysis
+     */
+    static Result infer(List<Stmt> statements, Layout layout) {
+        var inference = new TypeInference();
+        inference.locals = unknown(layout.size);
+        inference.size = layout.size;
+        inference.analyze(statements);
+
+        var errors = new ArrayList<Parser.Error>();
+        var eliminated = 0;
+        for (var site : inference.sites.entrySet()) {
+            var message = inference.failures.get(site.getKey());
+            if (message != null) {
+                errors.add(new Parser.Error(site.getValue(), message));
+            }
+            if (site.getKey().kind != Operands.Kind.UNKNOWN) {
+                eliminated++;
+            }
+        }
+
+        return new Result(errors, inference.sites.size(), eliminated);
+    }
+
+    enum Type {
+        NIL, BOOLEAN, NUMBER, STRING, ANY;
+
+        Type join(Type other) {
+            return this == other ? this : ANY;
+        }
+    }
+
+    // Operators are flagged every time they are analyzed, so the last analysis of an operator in a loop, which is the
+    // one done once the types of the loop have settled, is the one that counts
+
+    private final Map<Operands, Token> sites = new LinkedHashMap<>();
+    private final Map<Operands, String> failures = new HashMap<>();
+    private final Set<Stmt.Function> functions = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * The types of the local variables of the current frame, or {@code null} if the current code is unreachable.
+     */
+    private Type[] locals;
+
+    /**
+     * The number of local variables of the current frame.
+     */
+    private int size;
+
+    /**
+     * Whether the current code can run at all, since code that cannot does not have any errors.
+     */
+    private boolean reachable = true;
+
+    /**
+     * The number of assignments to local variables analyzed so far.
+     */
+    private int assignments;
+
+    private static Type[] unknown(int size) {
+        var types = new Type[size];
+        Arrays.fill(types, Type.ANY);
+        return types;
+    }
+
+    private static Type[] join(Type[] left, Type[] right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+
+        var types = new Type[left.length];
+        for (var i = 0; i < types.length; i++) {
+            types[i] = left[i].join(right[i]);
+        }
+        return types;
+    }
+
+    private static Type[] copy(Type[] types) {
+        return types == null ? null : types.clone();
+    }
+
+    private static Type typeOf(Object value) {
+        return switch (value) {
+            case null -> Type.NIL;
+            case Boolean bool -> Type.BOOLEAN;
+            case Double number -> Type.NUMBER;
+            case String string -> Type.STRING;
+            default -> Type.ANY;
+        };
+    }
+
+    private void analyze(List<Stmt> statements) {
+        for (var statement : statements) {
+            analyze(statement);
+        }
+    }
+
+    private void analyze(Stmt stmt) {
+        if (locals != null) {
+            stmt.accept(this);
+            return;
+        }
+
+        // Code after a return never runs, but the operators in it still get flagged as far as that is safe
+
+        var wasReachable = reachable;
+        reachable = false;
+        locals = unknown(size);
+        try {
+            stmt.accept(this);
+        } finally {
+            locals = null;
+            reachable = wasReachable;
+        }
+    }
+
+    private Type evaluate(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private void analyze(Stmt.Function function) {
+        // A function body does not depend on the code around it, since captured variables may be of any type
+        if (!functions.add(function)) {
+            return;
+        }
+
+        var enclosing = locals;
+        var enclosingSize = size;
+
+        locals = unknown(function.layout().size);
+        size = function.layout().size;
+        try {
+            analyze(function.body());
+        } finally {
+            locals = enclosing;
+            size = enclosingSize;
+        }
+    }
+
+    private void define(Slot slot, Type type) {
+        if (slot != null && slot.kind == Slot.Kind.LOCAL) {
+            locals[slot.index] = type;
+        }
+    }
+
+    /**
+     * Records that a local variable operand has the given type, now that the operator has accepted it.
+     */
+    private void refine(Expr operand, Type type) {
+        if (operand instanceof Expr.Variable variable) {
+            define(variable.slot(), type);
+        }
+    }
+
+    private void flag(Operands operands, Token operator, Operands.Kind kind, String failure) {
+        sites.putIfAbsent(operands, operator);
+        operands.kind = kind;
+
+        if (failure != null && reachable) {
+            failures.put(operands, failure);
+        } else {
+            failures.remove(operands);
+        }
+    }
+
+    //
+    // Stmt
+    //
+
+    @Override
+    public void visitBlock(Stmt.Block stmt) {
+        analyze(stmt.body());
+    }
+
+    @Override
+    public void visitClass(Stmt.Class stmt) {
+        if (stmt.superclass() != null) {
+            evaluate(stmt.superclass());
+        }
+
+        define(stmt.slot(), Type.ANY);
+        define(stmt.superSlot(), Type.ANY);
+
+        for (var method : stmt.methods()) {
+            analyze(method);
+        }
+    }
+
+    @Override
+    public void visitExpression(Stmt.Expression stmt) {
+        evaluate(stmt.expression());
+    }
+
+    @Override
+    public void visitFunction(Stmt.Function stmt) {
+        define(stmt.slot(), Type.ANY);
+        analyze(stmt);
+    }
+
+    @Override
+    public void visitIf(Stmt.If stmt) {
+        evaluate(stmt.condition());
+
+        var otherwise = copy(locals);
+        analyze(stmt.thenBranch());
+
+        var then = locals;
+        locals = otherwise;
+        if (stmt.elseBranch() != null) {
+            analyze(stmt.elseBranch());
+        }
+
+        locals = join(then, locals);
+    }
+
+    @Override
+    public void visitImport(Stmt.Import stmt) {
+        // Imports do not declare any locals
+    }
+
+    @Override
+    public void visitPrint(Stmt.Print stmt) {
+        evaluate(stmt.value());
+    }
+
+    @Override
+    public void visitReturn(Stmt.Return stmt) {
+        if (stmt.value() != null) {
+            evaluate(stmt.value());
+        }
+        locals = null;
+    }
+
+    @Override
+    public void visitVar(Stmt.Var stmt) {
+        var type = stmt.initializer() == null ? Type.NIL : evaluate(stmt.initializer());
+        define(stmt.slot(), type);
+    }
+
+    @Override
+    public void visitWhile(Stmt.While stmt) {
+        // The types at the start of the loop are widened until another iteration no longer changes them
+
+        var entry = locals;
+        var head = copy(entry);
+
+        while (true) {
+            locals = copy(head);
+            evaluate(stmt.condition());
+
+            var exit = copy(locals);
+            analyze(stmt.body());
+
+            var next = join(head, locals);
+            if (Arrays.equals(next, head)) {
+                locals = exit;
+                return;
+            }
+            head = next;
+        }
+    }
+
+    //
+    // Expr
+    //
+
+    @Override
+    public Type visitAssign(Expr.Assign expr) {
+        var type = evaluate(expr.value());
+        if (expr.slot().kind == Slot.Kind.LOCAL) {
+            locals[expr.slot().index] = type;
+            assignments++;
+        }
+        return type;
+    }
+
+    @Override
+    public Type visitBinary(Expr.Binary expr) {
+        var left = evaluate(expr.left());
+        var mark = assignments;
+        var right = evaluate(expr.right());
+
+        // The left operand is only known to be what the operator accepted if the right operand did not assign it
+
+        var leftOperand = assignments == mark ? expr.left() : null;
+        var operator = expr.operator();
+
+        switch (operator.type()) {
+            case BANG_EQUAL, EQUAL_EQUAL -> {
+                return Type.BOOLEAN;
+            }
+            case PLUS -> {
+                if (left == Type.NUMBER && right == Type.NUMBER) {
+                    flag(expr.operands(), operator, Operands.Kind.NUMBERS, null);
+                    return Type.NUMBER;
+                }
+                if (left == Type.STRING && right == Type.STRING) {
+                    flag(expr.operands(), operator, Operands.Kind.STRINGS, null);
+                    return Type.STRING;
+                }
+
+                var known = left != Type.ANY ? left : right;
+                var other = left != Type.ANY ? right : left;
+                if ((known != Type.NUMBER && known != Type.STRING && known != Type.ANY)
+                        || (other != Type.ANY && other != known)) {
+                    flag(expr.operands(), operator, Operands.Kind.UNKNOWN,
+                            "Operands must be two numbers or two strings");
+                    return Type.ANY;
+                }
+
+                // One operand is unknown, and the other one is whatever the known one is, if the operator succeeds
+
+                flag(expr.operands(), operator, Operands.Kind.UNKNOWN, null);
+                if (known != Type.ANY) {
+                    if (leftOperand != null) {
+                        refine(leftOperand, known);
+                    }
+                    refine(expr.right(), known);
+                }
+                return known;
+            }
+            default -> {
+                if ((left != Type.NUMBER && left != Type.ANY) || (right != Type.NUMBER && right != Type.ANY)) {
+                    flag(expr.operands(), operator, Operands.Kind.UNKNOWN, "Operands must be numbers");
+                } else if (left == Type.NUMBER && right == Type.NUMBER) {
+                    flag(expr.operands(), operator, Operands.Kind.NUMBERS, null);
+                } else {
+                    flag(expr.operands(), operator, Operands.Kind.UNKNOWN, null);
+                    if (leftOperand != null) {
+                        refine(leftOperand, Type.NUMBER);
+                    }
+                    refine(expr.right(), Type.NUMBER);
+                }
+
+                return switch (operator.type()) {
+                    case GREATER, GREATER_EQUAL, LESS, LESS_EQUAL -> Type.BOOLEAN;
+                    default -> Type.NUMBER;
+                };
+            }
+        }
+    }
+
+    @Override
+    public Type visitCall(Expr.Call expr) {
+        evaluate(expr.callee());
+        for (var argument : expr.arguments()) {
+            evaluate(argument);
+        }
+        return Type.ANY;
+    }
+
+    @Override
+    public Type visitGet(Expr.Get expr) {
+        evaluate(expr.object());
+        return Type.ANY;
+    }
+
+    @Override
+    public Type visitGrouping(Expr.Grouping expr) {
+        return evaluate(expr.expression());
+    }
+
+    @Override
+    public Type visitIndex(Expr.Index expr) {
+        evaluate(expr.object());
+        evaluate(expr.index());
+        return Type.ANY;
+    }
+
+    @Override
+    public Type visitListLiteral(Expr.ListLiteral expr) {
+        for (var element : expr.elements()) {
+            evaluate(element);
+        }
+        return Type.ANY;
+    }
+
+    @Override
+    public Type visitLiteral(Expr.Literal expr) {
+        return typeOf(expr.value());
+    }
+
+    @Override
+    public Type visitLogical(Expr.Logical expr) {
+        var left = evaluate(expr.left());
+
+        // The right operand may not be evaluated at all
+        var skipped = copy(locals);
+        var right = evaluate(expr.right());
+
+        locals = join(skipped, locals);
+        return left.join(right);
+    }
+
+    @Override
+    public Type visitSet(Expr.Set expr) {
+        evaluate(expr.object());
+        return evaluate(expr.value());
+    }
+
+    @Override
+    public Type visitSetIndex(Expr.SetIndex expr) {
+        evaluate(expr.object());
+        evaluate(expr.index());
+        return evaluate(expr.value());
+    }
+
+    @Override
+    public Type visitSuper(Expr.Super expr) {
+        return Type.ANY;
+    }
+
+    @Override
+    public Type visitThis(Expr.This expr) {
+        return Type.ANY;
+    }
+
+    @Override
+    public Type visitUnary(Expr.Unary expr) {
+        var right = evaluate(expr.right());
+        if (expr.operator().type() == TokenType.BANG) {
+            return Type.BOOLEAN;
+        }
+
+        if (right == Type.NUMBER) {
+            flag(expr.operands(), expr.operator(), Operands.Kind.NUMBERS, null);
+        } else if (right == Type.ANY) {
+            flag(expr.operands(), expr.operator(), Operands.Kind.UNKNOWN, null);
+            refine(expr.right(), Type.NUMBER);
+        } else {
+            flag(expr.operands(), expr.operator(), Operands.Kind.UNKNOWN, "Operand must be a number");
+        }
+        return Type.NUMBER;
+    }
+
+    @Override
+    public Type visitVariable(Expr.Variable expr) {
+        if (expr.slot().kind == Slot.Kind.LOCAL) {
+            return locals[expr.slot().index];
+        }
+        return Type.ANY;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,55 @@
+package com.khl.lox;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchRunnerTest {
+    @Test
+    void runsScriptsInSeparateSessions(@TempDir Path directory) throws IOException {
+        Files.writeString(directory.resolve("a.lox"), "var shared = 1; print shared;");
+        Files.writeString(directory.resolve("b.lox"), "print shared;");
+        var output = directory.resolve("out");
+
+        var report = new ByteArrayOutputStream();
+        var scripts = BatchRunner.collectScripts(directory);
+        var status = new BatchRunner(2, output, Limits.NONE).run(scripts,
+                new PrintStream(report, true, StandardCharsets.UTF_8));
+
+        assertEquals(List.of(directory.resolve("a.lox"), directory.resolve("b.lox")), scripts);
+        assertEquals(Session.EXIT_RUNTIME_ERROR, status);
+        assertEquals("1\n", Files.readString(output.resolve("0000-a.lox.out")));
+        assertEquals("", Files.readString(output.resolve("0000-a.lox.err")));
+        assertEquals("Undefined variable 'shared'.\n[line 1] in script\n",
+                Files.readString(output.resolve("0001-b.lox.err")));
+
+        var lines = report.toString(StandardCharsets.UTF_8).split("\n");
+        assertTrue(lines[0].startsWith("0\t") && lines[0].endsWith("a.lox"), lines[0]);
+        assertTrue(lines[1].startsWith("70\t") && lines[1].endsWith("b.lox"), lines[1]);
+        assertTrue(lines[2].startsWith("2 scripts, 1 failed, 2 jobs, "), lines[2]);
+    }
+
+    @Test
+    void collectsScriptsFromListFile(@TempDir Path directory) throws IOException {
+        var list = directory.resolve("scripts.txt");
+        Files.writeString(list, """
+                # smoke tests
+                first.lox
+
+                nested/second.lox
+                """);
+
+        assertEquals(List.of(directory.resolve("first.lox"), directory.resolve("nested/second.lox")),
+                BatchRunner.collectScripts(list));
+    }
+}
\ No newline at end of file
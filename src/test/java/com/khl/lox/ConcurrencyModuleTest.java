@@ -0,0 +1,68 @@
+package com.khl.lox;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConcurrencyModuleTest {
+    @Test
+    void raisesTaskErrorAtEveryAwait() {
+        var console = new Scripts.Console();
+        console.run("""
+                fun fail() { return nil + 1; }
+                var task = spawn(fail);
+                fun wait() { return await(task); }
+                """);
+
+        var first = console.run("wait();");
+        var second = console.run("wait();");
+
+        assertEquals(Session.EXIT_RUNTIME_ERROR, first.status());
+        assertEquals("Operands must be two numbers or two strings.\n[line 3] in wait()\n[line 1] in script\n",
+                first.stderr());
+        assertEquals(first.stderr(), second.stderr());
+    }
+
+    @Test
+    void awaitsResultOfTask() {
+        var run = Scripts.run("""
+                var base = 40;
+                fun answer() { return base + 2; }
+                var task = spawn(answer);
+                print await(task);
+                print await(task);
+                """);
+
+        assertEquals("42\n42\n", run.stdout());
+    }
+
+    @Test
+    void passesValuesThroughChannelsInOrder() {
+        var run = Scripts.run("""
+                var buffered = channel(2);
+                var rendezvous = channel(0);
+                fun produce() {
+                  for (var i = 1; i <= 100; i = i + 1) send(buffered, i);
+                  send(buffered, nil);
+                }
+                fun consume() {
+                  var sum = 0;
+                  var last = 0;
+                  for (var value = receive(buffered); value != nil; value = receive(buffered)) {
+                    if (value != last + 1) return "out of order";
+                    last = value;
+                    sum = sum + value;
+                  }
+                  send(rendezvous, sum);
+                  return "done";
+                }
+                spawn(produce);
+                var consumer = spawn(consume);
+                print receive(rendezvous);
+                print await(consumer);
+                """);
+
+        assertEquals("", run.stderr());
+        assertEquals("5050\ndone\n", run.stdout());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,77 @@
+package com.khl.lox;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DaemonTest {
+    @Test
+    void runsScriptsRelativeToClientDirectory(@TempDir Path directory) throws IOException, InterruptedException {
+        var socket = start(directory);
+        Files.writeString(directory.resolve("data.txt"), "from file");
+        Files.writeString(directory.resolve("main.lox"), "print readFile(\"data.txt\");");
+
+        var response = request(socket, "CWD %s\nRUN main.lox\n".formatted(directory));
+
+        assertEquals("1 from file\nx 0\n", response);
+    }
+
+    @Test
+    void evaluatesSourceInFreshSession(@TempDir Path directory) throws IOException, InterruptedException {
+        var socket = start(directory);
+        var define = "var x = 1; print x;";
+        var use = "print x;";
+
+        assertEquals("1 1\nx 0\n", request(socket, "EVAL %d\n%s".formatted(define.length(), define)));
+        assertEquals("2 Undefined variable 'x'.\n2 [line 1] in script\nx 70\n",
+                request(socket, "EVAL %d\n%s".formatted(use.length(), use)));
+    }
+
+    @Test
+    void rejectsUnknownRequest(@TempDir Path directory) throws IOException, InterruptedException {
+        var socket = start(directory);
+
+        assertEquals("2 Unknown request 'STOP'\nx 64\n", request(socket, "STOP\n"));
+    }
+
+    private static Path start(Path directory) throws InterruptedException {
+        var socket = directory.resolve("daemon.sock");
+        var daemon = Thread.ofPlatform().daemon().start(() -> {
+            try {
+                Daemon.unix(socket).serve(Limits.NONE);
+            } catch (IOException ioException) {
+                throw new IllegalStateException(ioException);
+            }
+        });
+
+        // The socket file appears before the daemon listens on it, so only a connection tells that it is ready
+        for (var i = 0; i < 500 && daemon.isAlive(); i++) {
+            try (var client = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+                client.connect(UnixDomainSocketAddress.of(socket));
+                break;
+            } catch (IOException notYet) {
+                Thread.sleep(10);
+            }
+        }
+        return socket;
+    }
+
+    private static String request(Path socket, String request) throws IOException {
+        try (var client = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            client.connect(UnixDomainSocketAddress.of(socket));
+            client.write(ByteBuffer.wrap(request.getBytes(StandardCharsets.UTF_8)));
+            return new String(Channels.newInputStream(client).readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
\ No newline at end of file
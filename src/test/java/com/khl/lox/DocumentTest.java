@@ -0,0 +1,86 @@
+package com.khl.lox;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class DocumentTest {
+    @Test
+    void reusesDeclarationsThatEditDoesNotTouch() {
+        var document = new Document("""
+                fun first() { return 1; }
+                fun second() { return 2; }
+                fun third() { return 3; }
+                """);
+        var before = document.result().statements();
+
+        var after = document.edit(document.source().indexOf("2"), 1, "20").statements();
+
+        assertSame(before.get(0), after.get(0));
+        assertNotSame(before.get(1), after.get(1));
+        assertSame(before.get(2), after.get(2));
+        assertEquals(describe(Parser.parse(document.source())), describe(document.result()));
+    }
+
+    @Test
+    void shiftsLinesAfterEditThatAddsLines() {
+        var document = new Document("var a = 1;\nvar b = ;\n");
+
+        var result = document.edit(0, 0, "// comment\n\n");
+
+        assertEquals(1, result.errors().size());
+        assertEquals(4, result.errors().get(0).token().line());
+    }
+
+    @Test
+    void parsesEditsLikeWholeSource() {
+        var pieces = new String[]{
+                "{", "}", "(", ")", ";", "\n", "\"", "//", " ", "else", "var x = 1;", "fun f() { return 2; }", "print",
+                "x", "1", ".5", "/", "*", "if", "@", "class A {}", "fun g(a) { return a + 1; }", "g = 1;", "\n}\n",
+        };
+        var random = new Random(45);
+        var source = """
+                var count = 0;
+                fun add(a, b) { return a + b; }
+                class Point { init(x) { this.x = x; } }
+                print add(count, Point(2).x);
+                """;
+        var document = new Document(source);
+
+        for (var i = 0; i < 2000; i++) {
+            var offset = random.nextInt(source.length() + 1);
+            var length = random.nextInt(4) == 0 ? Math.min(random.nextInt(20), source.length() - offset) : 0;
+            var text = random.nextInt(3) == 0 ? "" : pieces[random.nextInt(pieces.length)];
+            var edited = source.substring(0, offset) + text + source.substring(offset + length);
+
+            var result = document.edit(offset, length, text);
+
+            assertEquals(describe(Parser.parse(edited)), describe(result), edited);
+            source = edited;
+        }
+    }
+
+    /**
+     * Describes parser results by their errors, or by their statements and frame layout if there are none.
+     */
+    private static String describe(Parser.Result result) {
+        var text = new StringBuilder();
+        for (var error : result.errors()) {
+            text.append("%d %s %s%n".formatted(error.token().line(), error.token().lexeme(), error.message()));
+        }
+        if (!result.errors().isEmpty()) {
+            return text.toString();
+        }
+
+        text.append(result.layout().size).append('\n');
+        for (var statement : result.statements()) {
+            // Layouts and inline caches print their identity, which differs between any two parses
+            text.append(statement.toString().replaceAll("@[0-9a-f]+", "")).append('\n');
+        }
+        return text.toString();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,112 @@
+package com.khl.lox;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileModuleTest {
+    @Test
+    void readsLines(@TempDir Path directory) throws IOException {
+        var file = directory.resolve("in.txt");
+        Files.writeString(file, "alpha\r\nbeta\n\nlast");
+
+        var run = Scripts.run("""
+                var lines = readLines("%s");
+                for (var line = nextLine(lines); line != nil; line = nextLine(lines)) print "[" + line + "]";
+                """.formatted(file));
+
+        assertEquals("[alpha]\n[beta]\n[]\n[last]\n", run.stdout());
+    }
+
+    @Test
+    void failsReadingFileTruncatedByWriteFile(@TempDir Path directory) throws IOException {
+        var file = directory.resolve("big.txt");
+        Files.writeString(file, "line\n".repeat(100_000));
+
+        var run = Scripts.run("""
+                var lines = readLines("%1$s");
+                print nextLine(lines);
+                writeFile("%1$s", "x");
+                print nextLine(lines);
+                """.formatted(file));
+
+        assertEquals(Session.EXIT_RUNTIME_ERROR, run.status());
+        assertEquals("line\n", run.stdout());
+        assertTrue(run.stderr().startsWith("File changed while it was being read.\n"), run.stderr());
+    }
+
+    @Test
+    void failsReadingFileAppendedTo(@TempDir Path directory) throws IOException {
+        var file = directory.resolve("log.txt");
+        Files.writeString(file, "first\nsecond\n");
+
+        var run = Scripts.run("""
+                var lines = readLines("%1$s");
+                print nextLine(lines);
+                appendLine("%1$s", "third");
+                print nextLine(lines);
+                """.formatted(file));
+
+        assertEquals(Session.EXIT_RUNTIME_ERROR, run.status());
+        assertTrue(run.stderr().startsWith("File changed while it was being read.\n"), run.stderr());
+        assertEquals("first\nsecond\nthird\n", Files.readString(file));
+    }
+
+    @Test
+    void resolvesRelativePathsAgainstWorkingDirectory(@TempDir Path directory) throws IOException {
+        Files.writeString(directory.resolve("in.txt"), "text");
+        var stdout = new ByteArrayOutputStream();
+        var session = new Session(new Output(stdout, Output.Policy.LINE, false), new PrintStream(stdout), false,
+                false, false, Limits.NONE, directory);
+
+        var status = session.run("""
+                print readFile("in.txt");
+                appendLine("out.txt", "appended");
+                """);
+
+        assertEquals(Session.EXIT_OK, status);
+        assertEquals("text\n", stdout.toString());
+        assertEquals("appended\n", Files.readString(directory.resolve("out.txt")));
+    }
+
+    @Test
+    void readsWhatWasAppendedBeforehand(@TempDir Path directory) {
+        var file = directory.resolve("notes.txt");
+
+        var run = Scripts.run("""
+                writeFile("%1$s", "one\n");
+                appendLine("%1$s", "two");
+                appendLine("%1$s", "three");
+                print readFile("%1$s");
+                var lines = readLines("%1$s");
+                print nextLine(lines);
+                """.formatted(file));
+
+        assertEquals("", run.stderr());
+        assertEquals("one\ntwo\nthree\n\none\n", run.stdout());
+    }
+
+    @Test
+    void reportsFilesThatCannotBeRead(@TempDir Path directory) throws IOException {
+        var absent = directory.resolve("missing.txt");
+        var binary = directory.resolve("binary.dat");
+        Files.write(binary, new byte[] {(byte) 0xC3, (byte) 0x28});
+
+        var missing = Scripts.run("readFile(\"%s\");".formatted(absent));
+        var invalid = Scripts.run("readFile(\"%s\");".formatted(binary));
+
+        assertEquals(Session.EXIT_RUNTIME_ERROR, missing.status());
+        assertTrue(missing.stderr().startsWith("Cannot read '%s': No such file.\n".formatted(absent)),
+                missing.stderr());
+        assertTrue(invalid.stderr().startsWith("Cannot read '%s': Not valid UTF-8.\n".formatted(binary)),
+                invalid.stderr());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,121 @@
+package com.khl.lox;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InterpreterTest {
+    @Test
+    void reportsStackOverflowWithTraceback() {
+        var run = Scripts.run("""
+                fun f(n) { return f(n + 1) + 1; }
+                f(0);
+                """);
+
+        assertEquals(Session.EXIT_RUNTIME_ERROR, run.status());
+        assertTrue(run.stderr().startsWith("Stack overflow.\n[line 1] in f()\n"), run.stderr());
+        assertTrue(run.stderr().contains("[line 1] in f()\n[previous line repeated "), run.stderr());
+        assertTrue(run.stderr().endsWith("[line 2] in script\n"), run.stderr());
+    }
+
+    @Test
+    void runsNextStatementAfterStackOverflow() {
+        var console = new Scripts.Console();
+        var recursion = """
+                fun count(n) { if (n == 0) return 0; return count(n - 1) + 1; }
+                print count(100);
+                """;
+
+        assertEquals(Session.EXIT_OK, console.run(recursion).status());
+        assertEquals(Session.EXIT_RUNTIME_ERROR, console.run("fun f(n) { return f(n + 1) + 1; } f(0);").status());
+
+        var run = console.run(recursion);
+        assertEquals(Session.EXIT_OK, run.status());
+        assertEquals("100\n", run.stdout());
+        assertEquals("", run.stderr());
+    }
+
+    @Test
+    void limitsCallDepthThroughTasks() {
+        var stdout = new ByteArrayOutputStream();
+        var stderr = new ByteArrayOutputStream();
+        var session = new Session(new Output(stdout, Output.Policy.LINE, false),
+                new PrintStream(stderr, true, StandardCharsets.UTF_8), false, false, false,
+                Limits.NONE.with("--max-depth", "50"));
+
+        var status = session.run("""
+                fun f(n) {
+                  if (n == 100) return n;
+                  fun next() { return f(n + 1); }
+                  return await(spawn(next));
+                }
+                print f(0);
+                """);
+
+        assertEquals(Session.EXIT_RUNTIME_ERROR, status);
+        assertEquals("", stdout.toString(StandardCharsets.UTF_8));
+        assertTrue(stderr.toString(StandardCharsets.UTF_8).startsWith("Call depth limit of 50 exceeded."),
+                stderr.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void keepsLocalsOfCallersWhileFrameStackGrows() {
+        var source = """
+                fun f(n) {
+                  var a = n;
+                  var b = n * 2;
+                  {
+                    var c = a + b;
+                    if (n > 0) {
+                      var rest = f(n - 1);
+                      return c + rest + a - n;
+                    }
+                    return c;
+                  }
+                }
+                print f(300);
+                """;
+
+        assertEquals("135450\n", Scripts.run(source).stdout());
+        assertEquals("135450\n", new Scripts.Console(false, true).run(source).stdout());
+    }
+
+    @Test
+    void printsNumbersWithoutTrailingZero() {
+        var run = Scripts.run("""
+                print -0;
+                print 10000000;
+                print 0.1 + 0.2;
+                print -3;
+                print 123456789012;
+                print 0 / 0;
+                print -1 / 0;
+                print [1, -0, 2.5];
+                """);
+
+        assertEquals("-0\n1.0E7\n0.30000000000000004\n-3\n1.23456789012E11\nNaN\n-Infinity\n[1, -0, 2.5]\n",
+                run.stdout());
+    }
+
+    @Test
+    void formatsEveryNumberLikeDoubleToString() {
+        var random = new Random(40);
+        for (var i = 0; i < 100_000; i++) {
+            var number = switch (i % 3) {
+                case 0 -> (double) (random.nextLong() >> random.nextInt(64));
+                case 1 -> random.nextInt(2_000_000) / 100.0 - 10_000;
+                default -> Double.longBitsToDouble(random.nextLong());
+            };
+
+            var text = Double.toString(number);
+            var expected = text.endsWith(".0") ? text.substring(0, text.length() - 2) : text;
+            assertEquals(expected, Interpreter.stringify(number));
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,49 @@
+package com.khl.lox;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LimitsTest {
+    @Test
+    void parsesOptions() {
+        var limits = Limits.NONE.with("--max-steps", "10").with("--max-depth", "99999999999");
+
+        assertEquals(10, limits.steps());
+        assertEquals(Integer.MAX_VALUE, limits.depth());
+        assertEquals(Long.MAX_VALUE, limits.millis());
+        assertThrows(IllegalArgumentException.class, () -> Limits.NONE.with("--max-time", "0"));
+        assertThrows(IllegalArgumentException.class, () -> Limits.NONE.with("--max-time", "soon"));
+    }
+
+    @Test
+    void stopsInfiniteLoopAtStepLimit() {
+        var console = new Scripts.Console(false, false, Limits.NONE.with("--max-steps", "5000"));
+
+        var run = console.run("""
+                var i = 0;
+                while (true) i = i + 1;
+                """);
+
+        assertEquals(Session.EXIT_RUNTIME_ERROR, run.status());
+        assertEquals("Step limit of 5000 exceeded.\n[line 2] in script\n", run.stderr());
+        assertEquals("true\n", console.run("print i < %d;".formatted(5000 + Budget.SLICE)).stdout());
+    }
+
+    @Test
+    void stopsCallAtTimeLimitOnBothCallStacks() {
+        for (var heapStack : new boolean[]{false, true}) {
+            var console = new Scripts.Console(false, heapStack, Limits.NONE.with("--max-time", "100"));
+
+            var run = console.run("""
+                    fun spin() { var i = 0; while (true) i = i + 1; }
+                    spin();
+                    """);
+
+            assertEquals(Session.EXIT_RUNTIME_ERROR, run.status());
+            assertTrue(run.stderr().startsWith("Time limit of 100 ms exceeded.\n[line 1] in spin()\n"), run.stderr());
+        }
+    }
+}
\ No newline at end of file
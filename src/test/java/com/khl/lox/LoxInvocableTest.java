@@ -0,0 +1,67 @@
+package com.khl.lox;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LoxInvocableTest {
+    @Test
+    void passesArgumentsInOrderAtEveryArity() {
+        var run = Scripts.run("""
+                fun f0() { return "f0"; }
+                fun f1(a) { return a; }
+                fun f2(a, b) { return a + b; }
+                fun f3(a, b, c) { return a + b + c; }
+                fun f4(a, b, c, d) { return a + b + c + d; }
+                fun f5(a, b, c, d, e) { return a + b + c + d + e; }
+                print f0() + f1("a") + f2("a", "b") + f3("a", "b", "c");
+                print f4("a", "b", "c", "d") + f5("a", "b", "c", "d", "e");
+
+                class Point {
+                  init(x, y, z, w, v) { this.sum = x + y + z + w + v; }
+                  plus(a, b, c) { return this.sum + a + b + c; }
+                }
+                var point = Point(1, 2, 3, 4, 5);
+                var plus = point.plus;
+                print point.plus(10, 20, 30);
+                print plus(100, 200, 300);
+                """);
+
+        assertEquals("", run.stderr());
+        assertEquals("f0aababc\nabcdabcde\n75\n615\n", run.stdout());
+    }
+
+    @Test
+    void reportsWrongArgumentCount() {
+        var run = Scripts.run("""
+                fun f(a, b, c, d, e) {}
+                f(1, 2, 3, 4);
+                """);
+
+        assertEquals(Session.EXIT_RUNTIME_ERROR, run.status());
+        assertEquals("Expected 5 arguments but got 4.\n[line 2] in script\n", run.stderr());
+    }
+
+    @Test
+    void adaptsCallablesThatTakeArgumentList() {
+        var join = new LoxCallable() {
+            @Override
+            public int arity() {
+                return 5;
+            }
+
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                return String.join("", arguments.stream().map(String.class::cast).toList());
+            }
+        };
+        var invocable = LoxInvocable.adapt(join);
+
+        assertEquals(5, invocable.arity());
+        assertEquals("ab", invocable.call2(null, "a", "b"));
+        assertEquals("abcd", invocable.call4(null, "a", "b", "c", "d"));
+        assertEquals("abcde", invocable.callN(null, new Object[]{"a", "b", "c", "d", "e"}));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,41 @@
+package com.khl.lox;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LoxListTest {
+    @Test
+    void printsListContainingItself() {
+        var run = Scripts.run("var l = []; append(l, l); print l;");
+
+        assertEquals(Session.EXIT_OK, run.status());
+        assertEquals("[[...]]\n", run.stdout());
+    }
+
+    @Test
+    void printsListSharedWithoutCycle() {
+        var run = Scripts.run("var a = [1]; var l = [a, a]; print l;");
+
+        assertEquals("[[1], [1]]\n", run.stdout());
+    }
+
+    @Test
+    void keepsElementsWhenSwitchingFromNumbersToObjects() {
+        var list = new LoxList();
+        for (var i = 0; i < 100; i++) {
+            list.add((double) i);
+        }
+        list.set(1, "one");
+        list.add(null);
+
+        assertEquals(101, list.size());
+        assertEquals(0.0, list.get(0));
+        assertEquals("one", list.get(1));
+        assertEquals(99.0, list.get(99));
+        assertNull(list.removeLast());
+        assertEquals(99.0, list.removeLast());
+        assertEquals(99, list.size());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,45 @@
+package com.khl.lox;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoxMapTest {
+    @Test
+    void printsMapContainingItself() {
+        var run = Scripts.run("var m = map(); m[m] = 1; print m;");
+
+        assertEquals(Session.EXIT_OK, run.status());
+        assertEquals("{{...}: 1}\n", run.stdout());
+    }
+
+    @Test
+    void printsMapAndListContainingEachOther() {
+        var run = Scripts.run("var m = map(); var l = [m]; m[\"l\"] = l; print l;");
+
+        assertEquals("[{l: [...]}]\n", run.stdout());
+    }
+
+    @Test
+    void findsKeysAfterRemovalsAndResizes() {
+        var map = new LoxMap();
+        for (var i = 0; i < 1000; i++) {
+            map.put((double) i, "v" + i);
+        }
+        for (var i = 0; i < 1000; i += 2) {
+            map.remove((double) i);
+        }
+        map.put(null, "nil");
+        map.put("key", 1.0);
+        map.put("k" + "ey", 2.0);
+
+        assertEquals(502, map.size());
+        assertNull(map.get(10.0));
+        assertEquals("v11", map.get(11.0));
+        assertTrue(map.has(null));
+        assertEquals(2.0, map.get("key"));
+        assertEquals(502, map.keys().size());
+    }
+}
\ No newline at end of file
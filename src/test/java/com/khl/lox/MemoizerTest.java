@@ -0,0 +1,91 @@
+package com.khl.lox;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MemoizerTest {
+    @Test
+    void memoizesPureFunctionsOfWholeProgram() {
+        var console = new Scripts.Console(true, false);
+        var run = console.run("""
+                fun square(x) { return x * x; }
+                print square(3);
+                print square(3);
+                """);
+
+        assertEquals("9\n9\n", run.stdout());
+        assertEquals("memoize: <fn square>: 1 hits, 1 misses, 0 evictions\n", console.statistics());
+    }
+
+    @Test
+    void doesNotMemoizeFunctionsWhoseCalleeIsRedefinedByImporter(@TempDir Path directory) throws IOException {
+        Files.createDirectories(directory.resolve("mod"));
+        Files.writeString(directory.resolve("mod/m.lox"), """
+                fun g() { return 1; }
+                fun f() { return g(); }
+                """);
+
+        var run = new Scripts.Console(true, false).run("""
+                import "mod/m.lox";
+                fun g() { print "side effect"; return 2; }
+                f();
+                f();
+                """, directory);
+
+        assertEquals(Session.EXIT_OK, run.status());
+        assertEquals("side effect\nside effect\n", run.stdout());
+    }
+
+    @Test
+    void doesNotMemoizeLaterScriptsOfSession() {
+        var console = new Scripts.Console(true, false);
+        console.run("print 1;");
+        console.run("fun g() { return 1; } fun f() { return g(); }");
+        console.run("fun g() { print \"side effect\"; return 2; }");
+
+        var run = console.run("f(); f();");
+
+        assertEquals("side effect\nside effect\n", run.stdout());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedResults() {
+        // Printing keeps the function from also being memoized automatically
+        var console = new Scripts.Console(true, false);
+        var run = console.run("""
+                fun identity(x) { if (x == nil) print x; return x; }
+                var cached = memoize(identity);
+                for (var i = 0; i <= %d; i = i + 1) cached(i);
+                cached(%d);
+                cached(0);
+                """.formatted(Memoizer.CAPACITY, Memoizer.CAPACITY));
+
+        assertEquals(Session.EXIT_OK, run.status());
+        assertEquals("memoize: <fn identity>: 1 hits, %d misses, 2 evictions\n".formatted(Memoizer.CAPACITY + 2),
+                console.statistics());
+    }
+
+    @Test
+    void onlyCachesCallsWithValueArguments() {
+        var console = new Scripts.Console(true, false);
+        var run = console.run("""
+                fun size(list) { if (list == nil) print list; return len(list); }
+                var cached = memoize(size);
+                var list = [1];
+                print cached(list);
+                append(list, 2);
+                print cached(list);
+                print cached("abc");
+                print cached("abc");
+                """);
+
+        assertEquals("1\n2\n3\n3\n", run.stdout());
+        assertEquals("memoize: <fn size>: 1 hits, 1 misses, 0 evictions\n", console.statistics());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,73 @@
+package com.khl.lox;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ModuleLoaderTest {
+    @Test
+    void runsEveryModuleOnceThroughCyclicImports(@TempDir Path directory) throws IOException {
+        Files.createDirectories(directory.resolve("lib"));
+        Files.writeString(directory.resolve("lib/a.lox"), """
+                print "a";
+                import "b.lox";
+                fun greet() { return "hello " + name; }
+                """);
+        Files.writeString(directory.resolve("lib/b.lox"), """
+                print "b";
+                import "a.lox";
+                var name = "b";
+                """);
+
+        var run = new Scripts.Console().run("""
+                import "lib/a.lox";
+                import "lib/b.lox";
+                print greet();
+                """, directory);
+
+        assertEquals("", run.stderr());
+        assertEquals("a\nb\nhello b\n", run.stdout());
+    }
+
+    @Test
+    void reportsErrorsInModulesBeforeRunning(@TempDir Path directory) throws IOException {
+        Files.writeString(directory.resolve("bad.lox"), "var x = ;");
+
+        var run = new Scripts.Console().run("""
+                print "start";
+                import "bad.lox";
+                import "missing.lox";
+                """, directory);
+
+        assertEquals(Session.EXIT_COMPILE_ERROR, run.status());
+        assertEquals("", run.stdout());
+        assertEquals("""
+                [line 1] Error in '%s' at ';': Expect expression.
+                [line 3] Error at '"missing.lox"': Cannot read module '%s'.
+                """.formatted(directory.resolve("bad.lox").toRealPath(), directory.resolve("missing.lox")),
+                run.stderr());
+    }
+
+    @Test
+    void parsesModuleAgainOnlyOnceItChanges(@TempDir Path directory) throws IOException {
+        var file = directory.resolve("m.lox");
+        Files.writeString(file, "var x = 1;");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.parse("2020-01-01T00:00:00Z")));
+
+        var first = ModuleLoader.load(file);
+        assertSame(first, ModuleLoader.load(file));
+
+        Files.writeString(file, "var x = 2;");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.parse("2021-01-01T00:00:00Z")));
+        assertNotSame(first, ModuleLoader.load(file));
+    }
+}
\ No newline at end of file
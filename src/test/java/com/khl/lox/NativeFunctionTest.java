@@ -0,0 +1,28 @@
+package com.khl.lox;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NativeFunctionTest {
+    @Test
+    void turnsJavaExceptionsIntoNativeErrors() throws ReflectiveOperationException {
+        var handle = MethodHandles.lookup().findStatic(NativeFunctionTest.class, "fail",
+                MethodType.methodType(Object.class, Interpreter.class));
+        var function = new NativeFunction("fail", 0, false, handle);
+
+        var error = assertThrows(NativeError.class, () -> function.call0(null));
+
+        assertEquals("Index 3 out of bounds for length 2", error.getMessage());
+        assertTrue(error.getCause() instanceof IndexOutOfBoundsException, String.valueOf(error.getCause()));
+    }
+
+    private static Object fail(Interpreter interpreter) {
+        throw new IndexOutOfBoundsException("Index 3 out of bounds for length 2");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,44 @@
+package com.khl.lox;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NativeRegistryTest {
+    @Test
+    void bindsExportedFunctions() {
+        var append = NativeRegistry.lookup("append");
+
+        assertEquals("append", append.name());
+        assertEquals(2, append.arity());
+        assertNull(NativeRegistry.lookup("undefined"));
+        assertTrue(NativeRegistry.isPure("len"));
+        assertFalse(NativeRegistry.isPure("append"));
+    }
+
+    @Test
+    void convertsArgumentsAndResults() {
+        var run = Scripts.run("""
+                var list = [];
+                print append(list, "x");
+                print len(list);
+                print len("four");
+                """);
+
+        assertEquals("nil\n1\n4\n", run.stdout());
+    }
+
+    @Test
+    void reportsArgumentOfWrongType() {
+        var run = Scripts.run("""
+                fun f(i) {}
+                parallelFor(1.5, f);
+                """);
+
+        assertEquals(Session.EXIT_RUNTIME_ERROR, run.status());
+        assertEquals("Expected an integer as argument 1 to 'parallelFor'.\n[line 2] in script\n", run.stderr());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,74 @@
+package com.khl.lox;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OutputTest {
+    @Test
+    void flushesOutputBeforeReportingErrors() {
+        for (var async : new boolean[]{false, true}) {
+            var console = new ByteArrayOutputStream();
+            var session = new Session(new Output(console, Output.Policy.FULL, async),
+                    new PrintStream(console, true, StandardCharsets.UTF_8), false, false, false, Limits.NONE);
+
+            var status = session.run("""
+                    for (var i = 0; i < 3; i = i + 1) print i;
+                    print nil + 1;
+                    """);
+
+            assertEquals(Session.EXIT_RUNTIME_ERROR, status);
+            assertEquals("0\n1\n2\nOperands must be two numbers or two strings.\n[line 2] in script\n",
+                    console.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void writesBufferedLinesOnlyWhenPolicyAsks() {
+        var full = new ByteArrayOutputStream();
+        var line = new ByteArrayOutputStream();
+        var fullOutput = new Output(full, Output.Policy.FULL, false);
+        var lineOutput = new Output(line, Output.Policy.LINE, false);
+
+        fullOutput.println("first");
+        lineOutput.println("first");
+
+        assertEquals("", full.toString(StandardCharsets.UTF_8));
+        assertEquals("first\n", line.toString(StandardCharsets.UTF_8));
+
+        fullOutput.flush();
+        assertEquals("first\n", full.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void encodesTextInOrderAcrossBuffers() {
+        for (var async : new boolean[]{false, true}) {
+            var bytes = new ByteArrayOutputStream();
+            var output = new Output(bytes, Output.Policy.FULL, async);
+            var expected = new StringBuilder();
+
+            for (var i = 0; i < 20_000; i++) {
+                var value = i % 2 == 0 ? (Object) (double) i : "línea 🐟 " + i;
+                output.println(value);
+                expected.append(Interpreter.stringify(value)).append('\n');
+            }
+            output.flush();
+
+            assertEquals(expected.toString(), bytes.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void encodesOtherCharsets() {
+        var bytes = new ByteArrayOutputStream();
+        var output = new Output(bytes, StandardCharsets.ISO_8859_1, Output.Policy.LINE, false);
+
+        output.println("café");
+
+        assertEquals("café\n", bytes.toString(StandardCharsets.ISO_8859_1));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,49 @@
+package com.khl.lox;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ParallelModuleTest {
+    @Test
+    void mapsReducesAndLoopsOverLargeRanges() {
+        var run = Scripts.run("""
+                var list = [];
+                for (var i = 1; i <= 1000; i = i + 1) append(list, i);
+                fun square(x) { return x * x; }
+                fun add(a, b) { return a + b; }
+                var squares = parallelMap(list, square);
+                print len(squares);
+                print squares[0] + squares[999];
+                print parallelReduce(list, add, 0);
+
+                var slots = parallelMap(list, square);
+                fun mark(i) { slots[i] = -i; }
+                parallelFor(1000, mark);
+                print parallelReduce(slots, add, 0);
+                """);
+
+        assertEquals("", run.stderr());
+        assertEquals("1000\n1000001\n500500\n-499500\n", run.stdout());
+    }
+
+    @Test
+    void reportsErrorRaisedByCallback() {
+        var run = Scripts.run("""
+                fun fail(x) { return x + nil; }
+                parallelMap([1, 2, 3], fail);
+                """);
+
+        assertEquals(Session.EXIT_RUNTIME_ERROR, run.status());
+        assertEquals("Operands must be two numbers or two strings.\n[line 1] in fail()\n[line 2] in script\n",
+                run.stderr());
+    }
+
+    @Test
+    void rejectsCallbackOfWrongArity() {
+        var run = Scripts.run("fun add(a, b) { return a + b; } parallelMap([1], add);");
+
+        assertEquals("Expected a function of 1 argument as argument 2 to 'parallelMap'.\n[line 1] in script\n",
+                run.stderr());
+    }
+}
\ No newline at end of file
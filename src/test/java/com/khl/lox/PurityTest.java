@@ -0,0 +1,43 @@
+package com.khl.lox;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PurityTest {
+    @Test
+    void parsingDoesNotAnalyzePurity() {
+        var script = Parser.parse("fun f(x) { return x + 1; }");
+
+        assertEquals(List.of(), script.errors());
+        assertFalse(function(script, 0).layout().pure);
+    }
+
+    @Test
+    void findsFunctionsCallingPureNatives() {
+        var script = Parser.parse("""
+                fun size(x) { return len(x); }
+                fun grow(x) { append(x, 1); return x; }
+                """);
+        Purity.analyze(script.statements());
+
+        assertTrue(function(script, 0).layout().pure);
+        assertFalse(function(script, 1).layout().pure);
+    }
+
+    @Test
+    void knowsPureNativesFromTheirExports() {
+        assertTrue(NativeRegistry.isPure("len"));
+        assertFalse(NativeRegistry.isPure("append"));
+        assertFalse(NativeRegistry.isPure("clock"));
+        assertFalse(NativeRegistry.isPure("undefined"));
+    }
+
+    private static Stmt.Function function(Parser.Result script, int index) {
+        return (Stmt.Function) script.statements().get(index);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,99 @@
+package com.khl.lox;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ResolverTest {
+    @Test
+    void localFunctionsCallFunctionsDeclaredAfterThem() {
+        var run = Scripts.run("""
+                fun outer() {
+                  fun isEven(n) { if (n == 0) return true; return isOdd(n - 1); }
+                  fun isOdd(n) { if (n == 0) return false; return isEven(n - 1); }
+                  return isEven(10);
+                }
+                print outer();
+                {
+                  fun ping(n) { if (n == 0) return "ping"; return pong(n - 1); }
+                  fun pong(n) { if (n == 0) return "pong"; return ping(n - 1); }
+                  print ping(3);
+                }
+                """);
+
+        assertEquals("", run.stderr());
+        assertEquals("true\npong\n", run.stdout());
+    }
+
+    @Test
+    void localFunctionIsOnlyInScopeForOtherCodeOnceDeclared() {
+        var run = Scripts.run("""
+                var g = "global";
+                fun f() {
+                  print g;
+                  fun g() {}
+                  print g;
+                }
+                f();
+                """);
+
+        assertEquals("global\n<fn g>\n", run.stdout());
+    }
+
+    @Test
+    void eachIterationCreatesNewFunctions() {
+        var run = Scripts.run("""
+                var first;
+                var second;
+                for (var i = 0; i < 2; i = i + 1) {
+                  var value = i;
+                  fun get() { return read(); }
+                  fun read() { return value; }
+                  if (i == 0) first = get; else second = get;
+                }
+                print first();
+                print second();
+                """);
+
+        assertEquals("0\n1\n", run.stdout());
+    }
+
+    @Test
+    void capturesOnlyReferencedVariables() {
+        var result = Parser.parse("""
+                var global = 0;
+                fun outer(parameter) {
+                  var used = 1;
+                  var unused = 2;
+                  fun inner() { return used + global; }
+                  return inner;
+                }
+                """);
+        assertEquals(List.of(), result.errors());
+
+        var outer = (Stmt.Function) result.statements().get(1);
+        var used = (Stmt.Var) outer.body().get(0);
+        var unused = (Stmt.Var) outer.body().get(1);
+        var inner = (Stmt.Function) outer.body().get(2);
+        var sum = (Expr.Binary) ((Stmt.Return) inner.body().get(0)).value();
+
+        assertEquals(Slot.Kind.GLOBAL, ((Stmt.Var) result.statements().get(0)).slot().kind);
+        assertEquals(Slot.Kind.LOCAL, outer.layout().parameters[0].kind);
+        assertEquals(Slot.Kind.CELL, used.slot().kind);
+        assertEquals(Slot.Kind.LOCAL, unused.slot().kind);
+        assertEquals(1, inner.layout().captures.length);
+        assertEquals(used.slot().toString(), inner.layout().captures[0].toString());
+        assertEquals(Slot.Kind.UPVALUE, ((Expr.Variable) sum.left()).slot().kind);
+        assertEquals(Slot.Kind.GLOBAL, ((Expr.Variable) sum.right()).slot().kind);
+    }
+
+    @Test
+    void reportsReadingLocalVariableInItsOwnInitializer() {
+        var result = Parser.parse("fun f() { var a = a; }");
+
+        assertEquals(1, result.errors().size());
+        assertEquals("Can't read local variable in its own initializer", result.errors().get(0).message());
+    }
+}
\ No newline at end of file
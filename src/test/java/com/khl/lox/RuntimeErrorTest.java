@@ -0,0 +1,71 @@
+package com.khl.lox;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RuntimeErrorTest {
+    @Test
+    void collapsesRepeatedCallsAtSameLine() {
+        var run = Scripts.run("""
+                fun countdown(n) {
+                  if (n == 0) return nil + 1;
+                  return countdown(n - 1);
+                }
+                fun start() {
+                  return countdown(3);
+                }
+                start();
+                """);
+
+        assertEquals(Session.EXIT_RUNTIME_ERROR, run.status());
+        assertEquals("""
+                Operands must be two numbers or two strings.
+                [line 2] in countdown()
+                [line 3] in countdown()
+                [previous line repeated 2 more times]
+                [line 6] in start()
+                [line 8] in script
+                """, run.stderr());
+    }
+
+    @Test
+    void leavesOutCallsBeyondMaximumFrames() {
+        var run = Scripts.run("""
+                fun ping(n) {
+                  if (n == 0) return nil + 1;
+                  return pong(n - 1);
+                }
+                fun pong(n) {
+                  return ping(n - 1);
+                }
+                ping(100);
+                """);
+
+        var lines = run.stderr().lines().toList();
+        assertEquals(1 + RuntimeError.MAX_FRAMES + 2, lines.size());
+        assertEquals("[line 6] in pong()", lines.get(RuntimeError.MAX_FRAMES));
+        assertEquals("[%d more calls]".formatted(101 - RuntimeError.MAX_FRAMES),
+                lines.get(RuntimeError.MAX_FRAMES + 1));
+        assertEquals("[line 8] in script", lines.getLast());
+    }
+
+    @Test
+    void recordsFramesAsErrorUnwinds() {
+        var error = new RuntimeError(new Token(TokenType.PLUS, "+", null, 7), "Failure");
+        error.leave("inner");
+        error.call(new Token(TokenType.RIGHT_PAREN, ")", null, 3));
+        error.leave("outer");
+        error.call(new Token(TokenType.RIGHT_PAREN, ")", null, 3));
+        error.leave("outer");
+        error.call(new Token(TokenType.RIGHT_PAREN, ")", null, 12));
+
+        assertEquals(List.of(new RuntimeError.Frame("inner", 7, 0), new RuntimeError.Frame("outer", 3, 1)),
+                error.getTraceback());
+        assertEquals(0, error.getOmittedFrames());
+        assertEquals(12, error.getScriptLine());
+        assertEquals(7, error.getLine());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,88 @@
+package com.khl.lox;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ScannerTest {
+    @Test
+    void internsStringLiteralsAndIdentifiers() {
+        var first = Scanner.scanTokens("var tag = \"ready\";");
+        var second = Scanner.scanTokens("print tag == \"rea\" + \"dy\"; var other = \"ready\";");
+
+        assertSame(first.get(1).lexeme(), second.get(1).lexeme());
+        assertSame(first.get(3).literal(), second.get(10).literal());
+        assertEquals("ready", first.get(3).literal());
+    }
+
+    @Test
+    void comparesStringsBuiltAtRuntimeByValue() {
+        var run = Scripts.run("""
+                var tag = "ready";
+                print tag == "rea" + "dy";
+                print tag != "rea" + "d";
+                print "" == "" + "";
+                print nil == false;
+                print 1 == 1.0;
+                """);
+
+        assertEquals("true\ntrue\ntrue\nfalse\ntrue\n", run.stdout());
+    }
+
+    @Test
+    void recognizesEveryKeyword() {
+        for (var type : TokenType.values()) {
+            if (type.compareTo(TokenType.AND) >= 0) {
+                var token = Scanner.scanTokens(type.lexeme()).get(0);
+                assertEquals(type, token.type(), type.lexeme());
+                assertEquals(type.lexeme(), token.lexeme());
+            }
+        }
+    }
+
+    @Test
+    void scansWordsResemblingKeywordsAsIdentifiers() {
+        var words = "a an andy fo fort funny i ifs im importer n nil_ thi thisx tru truth fals th _for var2 While";
+
+        for (var token : Scanner.scanTokens(words)) {
+            if (token.type() != TokenType.EOF) {
+                assertEquals(TokenType.IDENTIFIER, token.type(), token.lexeme());
+            }
+        }
+        assertEquals(22, Scanner.scanTokens(words).size());
+    }
+
+    @Test
+    void parsesNumberLiteralsLikeDoubleParseDouble() {
+        var random = new Random(43);
+        for (var i = 0; i < 100_000; i++) {
+            var lexeme = new StringBuilder().append(random.nextInt(10));
+            for (var digits = random.nextInt(24); digits > 0; digits--) {
+                lexeme.append(random.nextInt(10));
+            }
+            if (random.nextBoolean()) {
+                lexeme.append('.').append(random.nextInt(10));
+                for (var digits = random.nextInt(20); digits > 0; digits--) {
+                    lexeme.append(random.nextInt(10));
+                }
+            }
+
+            var token = Scanner.scanTokens(lexeme.toString()).get(0);
+            assertEquals(lexeme.toString(), token.lexeme());
+            assertEquals(Double.parseDouble(lexeme.toString()), token.literal(), lexeme.toString());
+        }
+    }
+
+    @Test
+    void scansDotAfterNumberSeparately() {
+        var tokens = Scanner.scanTokens("007 1.");
+
+        assertEquals("007", tokens.get(0).lexeme());
+        assertEquals(7.0, tokens.get(0).literal());
+        assertEquals(1.0, tokens.get(1).literal());
+        assertEquals(TokenType.DOT, tokens.get(2).type());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,84 @@
+package com.khl.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Runs Lox source code in a session and captures what it prints.
+ *
+ * @author Kevin Lee
+ */
+final class Scripts {
+    /**
+     * The outcome of running a script.
+     *
+     * @param status the exit status reported by the session
+     * @param stdout the text the script printed
+     * @param stderr the errors reported
+     */
+    record Run(int status, String stdout, String stderr) {
+        // This is a data class
+    }
+
+    /**
+     * A session whose output is captured, for running several pieces of source code one after another like the REPL
+     * does.
+     */
+    static final class Console {
+        Console() {
+            this(false, false);
+        }
+
+        Console(boolean memoize, boolean heapStack) {
+            this(memoize, heapStack, Limits.NONE);
+        }
+
+        Console(boolean memoize, boolean heapStack, Limits limits) {
+            this.session = new Session(new Output(stdout, Output.Policy.LINE, false),
+                    new PrintStream(stderr, true, StandardCharsets.UTF_8), memoize, heapStack, false, limits);
+        }
+
+        Run run(String source) {
+            return run(source, Path.of("").toAbsolutePath());
+        }
+
+        Run run(String source, Path directory) {
+            stdout.reset();
+            stderr.reset();
+            var status = session.run(source, directory);
+            return new Run(status, stdout.toString(StandardCharsets.UTF_8), stderr.toString(StandardCharsets.UTF_8));
+        }
+
+        void save(Path snapshot) throws IOException {
+            session.save(snapshot);
+        }
+
+        void restore(Path snapshot) throws IOException {
+            session.restore(snapshot);
+        }
+
+        /**
+         * Returns the statistics that the session reports on exit.
+         */
+        String statistics() {
+            stderr.reset();
+            session.reportStatistics();
+            return stderr.toString(StandardCharsets.UTF_8);
+        }
+
+        private final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        private final Session session;
+    }
+
+    static Run run(String source) {
+        return new Console().run(source);
+    }
+
+    private Scripts() {
+        // This is a utility class
+    }
+}
\ No newline at end of file
@@ -0,0 +1,49 @@
+package com.khl.lox;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ShapeTest {
+    @Test
+    void sharesShapesOfFieldsAddedInSameOrder() {
+        var root = new Shape(null);
+        var xy = root.with("x").with("y");
+
+        assertSame(xy, root.with("x").with("y"));
+        assertNotSame(xy, root.with("y").with("x"));
+        assertEquals(2, xy.size());
+        assertEquals(1, xy.indexOf("y"));
+        assertEquals(-1, xy.indexOf("z"));
+        assertArrayEquals(new String[]{"x", "y"}, xy.names());
+    }
+
+    @Test
+    void accessesPropertiesOfInstancesWithDifferentShapesAtOneSite() {
+        var run = Scripts.run("""
+                class Base { describe() { return "method"; } }
+                class Point < Base {}
+                var a = Point();
+                a.x = 1;
+                a.y = 2;
+                var b = Point();
+                b.y = 20;
+                b.x = 10;
+                var c = Point();
+                c.describe = "field";
+                var points = [a, b, c];
+                for (var i = 0; i < 3; i = i + 1) {
+                  var point = points[i];
+                  if (i < 2) print point.x + point.y;
+                  if (i == 0) point.describe();
+                  print point.describe;
+                }
+                """);
+
+        assertEquals("", run.stderr());
+        assertEquals("3\n<fn describe>\n30\n<fn describe>\nfield\n", run.stdout());
+    }
+}
\ No newline at end of file
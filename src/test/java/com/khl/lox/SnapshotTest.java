@@ -0,0 +1,71 @@
+package com.khl.lox;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SnapshotTest {
+    @Test
+    void restoresGlobalsWithSharedState(@TempDir Path directory) throws IOException {
+        var snapshot = directory.resolve("globals.snapshot");
+        var original = new Scripts.Console();
+        original.run("""
+                var items = [1, "two", nil, true];
+                var index = map();
+                index["items"] = items;
+                fun counter() {
+                  var count = 0;
+                  fun next() { count = count + 1; return count; }
+                  return next;
+                }
+                var next = counter();
+                next();
+                class Shape { init(name) { this.name = name; } describe() { return "a " + this.name; } }
+                class Circle < Shape { describe() { return super.describe() + "!"; } }
+                var circle = Circle("circle");
+                circle.r = 2;
+                fun square(x) { return x * x; }
+                var fast = memoize(square);
+                """);
+        original.save(snapshot);
+
+        var restored = new Scripts.Console();
+        restored.restore(snapshot);
+        var run = restored.run("""
+                append(index["items"], 5);
+                print items;
+                print next();
+                print circle.describe();
+                print circle.r;
+                print Circle("ring").describe == nil;
+                print fast(3);
+                """);
+
+        assertEquals("", run.stderr());
+        assertEquals("[1, two, nil, true, 5]\n2\na circle!\n2\nfalse\n9\n", run.stdout());
+    }
+
+    @Test
+    void refusesToSaveValuesThatCannotBeRestored(@TempDir Path directory) {
+        var console = new Scripts.Console();
+        console.run("fun wait() {} var task = spawn(wait);");
+
+        assertThrows(IOException.class, () -> console.save(directory.resolve("tasks.snapshot")));
+    }
+
+    @Test
+    void rejectsFileThatIsNotSnapshot(@TempDir Path directory) throws IOException {
+        var file = directory.resolve("script.lox");
+        Files.writeString(file, "print 1;");
+
+        var error = assertThrows(IOException.class, () -> new Scripts.Console().restore(file));
+
+        assertEquals("Not a snapshot of this version of Lox", error.getMessage());
+    }
+}
\ No newline at end of file
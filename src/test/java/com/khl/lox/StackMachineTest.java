@@ -0,0 +1,60 @@
+package com.khl.lox;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StackMachineTest {
+    @Test
+    void recursesFarBeyondThreadStack() {
+        var run = new Scripts.Console(false, true).run("""
+                fun count(n) { if (n == 0) return 0; return count(n - 1) + 1; }
+                print count(200000);
+                """);
+
+        assertEquals("", run.stderr());
+        assertEquals("200000\n", run.stdout());
+    }
+
+    @Test
+    void reportsStackOverflowAtStackLimit() {
+        var console = new Scripts.Console(false, true, Limits.NONE.with("--max-stack", "100000"));
+
+        var run = console.run("""
+                fun f(n) { return f(n + 1) + 1; }
+                f(0);
+                """);
+
+        assertEquals(Session.EXIT_RUNTIME_ERROR, run.status());
+        assertTrue(run.stderr().startsWith("Stack overflow.\n[line 1] in f()\n[previous line repeated "), run.stderr());
+        assertTrue(run.stderr().endsWith("[line 2] in script\n"), run.stderr());
+    }
+
+    @Test
+    void runsLikeThreadStackInterpreter() {
+        var source = """
+                class Counter {
+                  init(start) { this.count = start; }
+                  next() { this.count = this.count + 1; return this.count; }
+                }
+                class Twice < Counter {
+                  next() { super.next(); return super.next(); }
+                }
+                fun makeAdder(n) { fun add(x) { return x + n; } return add; }
+                var counter = Twice(0);
+                var add = makeAdder(10);
+                for (var i = 0; i < 3; i = i + 1) {
+                  print add(counter.next());
+                }
+                fun fail(depth) { if (depth == 0) return nil.field; return fail(depth - 1); }
+                fail(3);
+                """;
+
+        var expected = Scripts.run(source);
+        var run = new Scripts.Console(false, true).run(source);
+
+        assertEquals("12\n14\n16\n", expected.stdout());
+        assertEquals(expected, run);
+    }
+}
\ No newline at end of file
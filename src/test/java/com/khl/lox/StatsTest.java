@@ -0,0 +1,39 @@
+package com.khl.lox;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatsTest {
+    @Test
+    void reportsCountersOnExit(@TempDir Path directory) throws IOException, InterruptedException {
+        // The counters are enabled once per process, so the script runs in a process of its own
+        var script = directory.resolve("script.lox");
+        Files.writeString(script, """
+                fun add(a, b) { return a + b; }
+                var total = 0;
+                for (var i = 0; i < 10; i = i + 1) total = add(total, i);
+                print total;
+                """);
+
+        var java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        var process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), Lox.class.getName(),
+                "--stats", script.toString()).start();
+        var stdout = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        var stderr = new String(process.getErrorStream().readAllBytes(), StandardCharsets.UTF_8);
+
+        assertEquals(Session.EXIT_OK, process.waitFor());
+        assertEquals("45\n", stdout);
+        assertTrue(stderr.startsWith("stats: scan "), stderr);
+        assertTrue(stderr.contains("stats:   Expr.Variable "), stderr);
+        assertTrue(stderr.contains("stats: 10 calls, "), stderr);
+        assertTrue(stderr.contains(", maximum depth 1\n"), stderr);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,101 @@
+package com.khl.lox;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TypeInferenceTest {
+    private static TypeInference.Result infer(String source) {
+        var result = Parser.parse(source);
+        assertEquals(List.of(), result.errors());
+        return TypeInference.infer(result.statements(), result.layout());
+    }
+
+    @Test
+    void eliminatesChecksOfLocalsKnownToBeNumbers() {
+        var result = infer("""
+                fun sum(n) {
+                  var total = 0;
+                  for (var i = 0; i < n; i = i + 1) total = total + i;
+                  return total;
+                }
+                """);
+
+        assertEquals(List.of(), result.errors());
+        assertEquals(3, result.checks());
+        assertEquals(2, result.eliminated());
+    }
+
+    @Test
+    void keepsChecksWhereBranchesDisagree() {
+        var result = infer("""
+                fun f(flag) {
+                  var x = 1;
+                  if (flag) x = "one";
+                  return x + 1;
+                }
+                """);
+
+        assertEquals(1, result.checks());
+        assertEquals(0, result.eliminated());
+    }
+
+    @Test
+    void learnsTypesFromOperatorsThatAccepted() {
+        var result = infer("""
+                fun f(a) {
+                  var x = a;
+                  var y = -x;
+                  return x * y;
+                }
+                """);
+
+        assertEquals(2, result.checks());
+        assertEquals(1, result.eliminated());
+    }
+
+    @Test
+    void reportsOperatorsThatAlwaysFail() {
+        var result = infer("""
+                fun f() {
+                  var s = "text";
+                  var n = 1;
+                  print -s;
+                  print s + n;
+                  return s < n;
+                }
+                """);
+
+        assertEquals(List.of("Operand must be a number", "Operands must be two numbers or two strings",
+                "Operands must be numbers"), result.errors().stream().map(Parser.Error::message).toList());
+    }
+
+    @Test
+    void ignoresOperatorsThatCannotRun() {
+        var result = infer("""
+                fun f() {
+                  var s = "text";
+                  return;
+                  print -s;
+                }
+                """);
+
+        assertEquals(List.of(), result.errors());
+    }
+
+    @Test
+    void reportsEliminatedChecksOnExit() {
+        var stderr = new ByteArrayOutputStream();
+        var session = new Session(new Output(new ByteArrayOutputStream(), Output.Policy.LINE, false),
+                new PrintStream(stderr, true, StandardCharsets.UTF_8), false, false, true, Limits.NONE);
+
+        assertEquals(Session.EXIT_OK, session.run("fun f() { var a = 1; return a + a; } print f();"));
+        session.reportStatistics();
+        assertEquals("types: 1 of 1 operand checks eliminated\n", stderr.toString(StandardCharsets.UTF_8));
+    }
+}
\ No newline at end of file